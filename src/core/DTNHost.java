@@ -9,7 +9,7 @@ import movement.Path;
 import routing.MessageRouter;
 import routing.RoutingInfo;
 import routing.community.Duration;
-import routing.util.TupleDe;
+import routing.KDC.Subscriber.InterestProfile;
 
 import java.util.*;
 
@@ -29,6 +29,8 @@ public class DTNHost implements Comparable<DTNHost> {
     private Path path;
     private double speed;
     private double nextTimeToMove;
+    /** how many times the host has looked for a new waypoint */
+    private long nrofWaypointChanges;
     private String name;
     private List<MessageListener> msgListeners;
     private List<MovementListener> movListeners;
@@ -53,9 +55,7 @@ public class DTNHost implements Comparable<DTNHost> {
 
     // crete variable for pubs-susb
     // kdc is key distributed center for key management of content publisher
-    private List<Double> socialProfile;
-    private List<Boolean> socialProfileOI;
-    private List<TupleDe<Integer, Integer>> numericAtribute; //min max atribute value of int
+    private InterestProfile interestProfile; // topics, weights and attribute ranges of a subscriber
 
     // crete variable for pubs-susb
     private boolean isPublisher = false;
@@ -110,36 +110,10 @@ public class DTNHost implements Comparable<DTNHost> {
             throw new IllegalArgumentException("Invalid GroupID: " + groupId);
         }
 
-        Random random = new Random();
-
-        this.socialProfile = new ArrayList<>();
-        this.socialProfileOI = new ArrayList<>();
-        this.numericAtribute = new ArrayList<>();
-
         // ✅ **Initialize subscriber attributes if the entity is a subscriber**
-        if (isSubscriber) {
-            int index = 0;
-
-            while (index < 5) {
-                // Randomly decide if numericAtribute should store a min-max range
-                if (random.nextBoolean()) {
-                    int min = random.nextInt(29) + 1; // Generate a random min value between 1 and 30 (1-29 + 1)
-                    int max = random.nextInt(30 - min) + min; // Generate max value between min and 30
-                    numericAtribute.add(new TupleDe<>(min, max));
-                    socialProfileOI.add(true);
-                    socialProfile.add(0.5); // Weight `true` = 0.5
-                } else {
-                    // Generate a valid range with 'min == max' to avoid (0, 0) and ensure the range has non-zero values.
-                    int min = random.nextInt(29) + 1; // Generate a random min value between 1 and 30 (1-29 + 1)
-                    int max = random.nextInt(30 - min) + min; // Generate max value between min and 30
-                    numericAtribute.add(new TupleDe<>(min, max)); // Both min and max are set to the same value
-                    socialProfileOI.add(false); // Treat this as part of the range
-                    socialProfile.add(0.5); // Weight `true` = 0.5
-                }
-
-                index++;
-            }
-        }
+        this.interestProfile = isSubscriber ?
+                InterestProfile.createRandom(new Random()) : InterestProfile.EMPTY;
+
         for (
                 NetworkInterface i : interf) {
             NetworkInterface ni = i.replicate();
@@ -294,6 +268,35 @@ public class DTNHost implements Comparable<DTNHost> {
         return this.path;
     }
 
+    /**
+     * Returns the waypoint the host is moving towards.
+     *
+     * @return The destination or null if the host has not had a waypoint yet
+     */
+    public Coord getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Returns the speed the host moves towards its destination with.
+     *
+     * @return The current speed
+     */
+    public double getSpeed() {
+        return this.speed;
+    }
+
+    /**
+     * Returns how many times the host has looked for a new waypoint. The
+     * host moves along a straight line with a constant speed for as long as
+     * this value stays the same (and the host stays active).
+     *
+     * @return The number of waypoint changes
+     */
+    public long getNrofWaypointChanges() {
+        return this.nrofWaypointChanges;
+    }
+
     /**
      * Sets the Node's location overriding any location set by movement model
      *
@@ -447,6 +450,39 @@ public class DTNHost implements Comparable<DTNHost> {
         this.router.update();
     }
 
+    /**
+     * Moves the node towards its current destination if that can be done
+     * without picking a new waypoint. Picking a waypoint may use the shared
+     * movement random number generator and informs the movement listeners,
+     * so it is left for {@link #move(double)}; apart from that the move only
+     * changes this host's own location. This allows moving hosts in
+     * parallel (see {@link World#PARALLELISM_S}).
+     *
+     * @param timeIncrement How long time the node moves
+     * @return true if the move was done (or the node does not move now),
+     * false if nothing was changed and {@link #move(double)} must be called
+     * instead
+     */
+    public boolean moveOnCurrentLeg(double timeIncrement) {
+        if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+            return true;
+        }
+        if (this.destination == null) {
+            return false;
+        }
+
+        double possibleMovement = timeIncrement * speed;
+        double distance = this.location.distance(this.destination);
+        if (possibleMovement >= distance) {
+            return false; // would pass the destination
+        }
+
+        double dx = (possibleMovement / distance) * (this.destination.getX() - this.location.getX());
+        double dy = (possibleMovement / distance) * (this.destination.getY() - this.location.getY());
+        this.location.translate(dx, dy);
+        return true;
+    }
+
     /**
      * Moves the node towards the next waypoint or waits if it is not time to
      * move yet
@@ -494,6 +530,7 @@ public class DTNHost implements Comparable<DTNHost> {
      * should wait
      */
     private boolean setNextWaypoint() {
+        this.nrofWaypointChanges++;
         if (path == null) {
             path = movement.getPath();
         }
@@ -705,34 +742,36 @@ public class DTNHost implements Comparable<DTNHost> {
         }
     }
 
-
-// ✅ **Retrieve the interest and attributes of a Subscriber**
-
     /**
-     * Retrieves the interest levels of the Subscriber.
+     * Adds a message to the buffer of this host and to the buffers of the
+     * hosts this host is currently connected to.
+     * <p>
+     * This is the addressed counterpart of {@link #addBufferToHost(Message)}:
+     * only the intended recipient and its current peers receive a copy of
+     * the message instead of every host of the scenario.
      *
-     * @return A list of interest weights assigned to topics.
+     * @param m The message to be added to the buffers.
      */
-    public List<Double> getSocialProfile() {
-        return this.socialProfile;
+    public void addBufferToRecipient(Message m) {
+        this.router.addToMessages(m, false);
+        for (NetworkInterface i : net) {
+            for (Connection con : i.getConnections()) {
+                con.getOtherNode(this).getRouter().addToMessages(m, false);
+            }
+        }
     }
 
-    /**
-     * Retrieves the topics the Subscriber is interested in.
-     *
-     * @return A list of boolean values representing topic interests.
-     */
-    public List<Boolean> getSocialProfileOI() {
-        return this.socialProfileOI;
-    }
+
+// ✅ **Retrieve the interest and attributes of a Subscriber**
 
     /**
-     * Retrieves the numeric attribute range of the Subscriber.
+     * Retrieves the interest profile of the Subscriber.
      *
-     * @return A list of TupleDe containing min-max values of the numeric attribute.
+     * @return The topics, interest weights and numeric attribute ranges of
+     * the subscriber (an empty profile for other roles).
      */
-    public List<TupleDe<Integer, Integer>> getNumericAtribute() {
-        return this.numericAtribute;
+    public InterestProfile getInterestProfile() {
+        return this.interestProfile;
     }
 
 
@@ -9,6 +9,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
+import report.Report;
 import ui.DTNSimTextUI;
 
 /**
@@ -20,6 +21,11 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** Number of batch runs to execute in parallel -setting id ({@value}).
+	 * If more than one, every run is executed in a {@link SimContext} of its
+	 * own and writes its reports to a subdirectory <code>runN</code> of the
+	 * report directory. Default = 1 (one run at a time) */
+	public static final String PARALLEL_RUNS_S = "Optimization.parallelRuns";
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -78,11 +84,21 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			int parallelRuns = getParallelRuns();
+			if (parallelRuns > 1 && nrofRuns[1] - nrofRuns[0] > 1) {
+				int nrofFailed = SimContext.runAll(confFiles, firstConfIndex,
+						nrofRuns[0], nrofRuns[1], parallelRuns);
+				if (nrofFailed > 0) {
+					print(nrofFailed + " run(s) failed");
+				}
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +109,51 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Runs one batch run with the settings files read again, and the reports
+	 * written to a subdirectory <code>runN</code> of the report directory
+	 * (where N is the run's number). Called in the class loader of a
+	 * {@link SimContext}; the static state of the simulator must not be in
+	 * use by other runs.
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file in confFiles
+	 * @param runIndex Index of the run
+	 */
+	public static void runInContext(String[] confFiles, int firstConfIndex,
+			int runIndex) {
+		initSettings(confFiles, firstConfIndex);
+		Settings.setRunIndex(runIndex);
+
+		String reportDir = new Settings().getSetting(
+				Report.REPORTDIR_SETTING);
+		if (!reportDir.endsWith("/")) {
+			reportDir += "/";
+		}
+		Settings.setSetting(Report.REPORTDIR_SETTING,
+				reportDir + "run" + (runIndex + 1));
+
+		resetForNextRun();
+		new DTNSimTextUI().start();
+		resetForNextRun(); // stops the background threads of the run
+	}
+
+	/**
+	 * Returns the number of batch runs to execute in parallel
+	 * @return The value of {@link #PARALLEL_RUNS_S} or 1 if it's not set
+	 */
+	private static int getParallelRuns() {
+		Settings s = new Settings();
+		if (!s.contains(PARALLEL_RUNS_S)) {
+			return 1;
+		}
+		int runs = s.getInt(PARALLEL_RUNS_S);
+		if (runs < 1) {
+			throw new SettingsError("Invalid value (" + runs + ") for " +
+					PARALLEL_RUNS_S);
+		}
+		return runs;
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -4,6 +4,9 @@
  */
 package core;
 
+import routing.util.TupleDe;
+
+import javax.crypto.SecretKey;
 import java.util.*;
 
 /**
@@ -45,6 +48,27 @@ public class Message implements Comparable<Message> {
 	/** Application ID of the application that created the message */
 	private String	appID;
 
+	/* Publish-subscribe header. These are read for every message on every
+	 * contact by the pub/sub routers, so they are plain fields instead of
+	 * generic properties. Like the properties, the referenced arrays and
+	 * maps are shared (not copied) when the message is replicated. The key
+	 * maps are copy-on-write: they are never modified after they have been
+	 * set, adding keys replaces the map of this message with a new one. */
+	/** true if the message carries a publication */
+	private boolean publication;
+	/** Topic of the publication */
+	private int topic;
+	/** Sub-topic (attribute) value of the publication */
+	private int subTopic;
+	/** Binary path of the key that encrypted the content */
+	private String keyPath;
+	/** Encrypted content (IV, data and tag) */
+	private byte[] ciphertext;
+	/** Encryption keys of the publishers as (binary path, key) */
+	private Map<DTNHost, TupleDe<String, SecretKey>> publisherKeys;
+	/** Authentication keys of the subscribers by binary path */
+	private Map<DTNHost, Map<String, SecretKey>> subscriberKeys;
+
 	static {
 		reset();
 		DTNSim.registerForReset(Message.class.getCanonicalName());
@@ -73,6 +97,9 @@ public class Message implements Comparable<Message> {
 		this.requestMsg = null;
 		this.properties = null;
 		this.appID = null;
+		this.publication = false;
+		this.publisherKeys = null;
+		this.subscriberKeys = null;
 
 		Message.nextUniqueId++;
 		addNodeOnPath(from);
@@ -169,6 +196,14 @@ public class Message implements Comparable<Message> {
 	}
 
 
+	/**
+	 * Returns the initial TTL (minutes) of the message
+	 * @return The initial TTL or {@link #INFINITE_TTL}
+	 */
+	public int getInitialTtl() {
+		return this.initTtl;
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -267,6 +302,13 @@ public class Message implements Comparable<Message> {
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
 		this.appID = m.appID;
+		this.publication = m.publication;
+		this.topic = m.topic;
+		this.subTopic = m.subTopic;
+		this.keyPath = m.keyPath;
+		this.ciphertext = m.ciphertext;
+		this.publisherKeys = m.publisherKeys;
+		this.subscriberKeys = m.subscriberKeys;
 
 		if (m.properties != null) {
 			Set<String> keys = m.properties.keySet();
@@ -373,6 +415,125 @@ public class Message implements Comparable<Message> {
 
 
 
+	/**
+	 * Sets the publication this message carries.
+	 * @param topic Topic of the publication
+	 * @param subTopic Sub-topic (attribute) value of the publication
+	 * @param keyPath Binary path of the key that encrypted the content
+	 * @param ciphertext The encrypted content
+	 */
+	public void setPublication(int topic, int subTopic, String keyPath,
+			byte[] ciphertext) {
+		this.publication = true;
+		this.topic = topic;
+		this.subTopic = subTopic;
+		this.keyPath = keyPath;
+		this.ciphertext = ciphertext;
+	}
+
+	/**
+	 * Returns true if this message carries a publication
+	 * @return true if {@link #setPublication} has been called
+	 */
+	public boolean isPublication() {
+		return this.publication;
+	}
+
+	/**
+	 * Returns the topic of the publication
+	 * @return the topic (only valid if {@link #isPublication()})
+	 */
+	public int getTopic() {
+		return this.topic;
+	}
+
+	/**
+	 * Returns the sub-topic value of the publication
+	 * @return the sub-topic (only valid if {@link #isPublication()})
+	 */
+	public int getSubTopic() {
+		return this.subTopic;
+	}
+
+	/**
+	 * Returns the binary path of the key that encrypted the publication
+	 * @return the key path or null if this is not a publication
+	 */
+	public String getKeyPath() {
+		return this.keyPath;
+	}
+
+	/**
+	 * Returns the encrypted publication content. The array is shared by
+	 * all replicates and must not be modified.
+	 * @return the ciphertext or null if this is not a publication
+	 */
+	public byte[] getCiphertext() {
+		return this.ciphertext;
+	}
+
+	/**
+	 * Adds publisher encryption keys to this message. Keys of publishers
+	 * that already have a key are replaced. The keys are copied, so later
+	 * changes to the given map do not affect this message.
+	 * @param keys Keys by publisher as (binary path, key)
+	 */
+	public void addPublisherKeys(Map<DTNHost, TupleDe<String, SecretKey>> keys) {
+		Map<DTNHost, TupleDe<String, SecretKey>> copy =
+			this.publisherKeys == null ?
+			new HashMap<DTNHost, TupleDe<String, SecretKey>>() :
+			new HashMap<DTNHost, TupleDe<String, SecretKey>>(this.publisherKeys);
+		copy.putAll(keys);
+		this.publisherKeys = copy; // replicas keep the old map
+	}
+
+	/**
+	 * Returns the publisher encryption keys carried by this message
+	 * @return the keys (read-only; shared with the replicas) or null if
+	 * the message carries none
+	 */
+	public Map<DTNHost, TupleDe<String, SecretKey>> getPublisherKeys() {
+		return this.publisherKeys == null ? null :
+			Collections.unmodifiableMap(this.publisherKeys);
+	}
+
+	/**
+	 * Adds subscriber authentication keys to this message. Keys of
+	 * subscribers that already have keys are replaced. The keys are copied,
+	 * so later changes to the given maps do not affect this message.
+	 * @param keys Keys by subscriber, each indexed by binary path
+	 */
+	public void addSubscriberKeys(Map<DTNHost, Map<String, SecretKey>> keys) {
+		Map<DTNHost, Map<String, SecretKey>> copy =
+			this.subscriberKeys == null ?
+			new HashMap<DTNHost, Map<String, SecretKey>>() :
+			new HashMap<DTNHost, Map<String, SecretKey>>(this.subscriberKeys);
+		for (Map.Entry<DTNHost, Map<String, SecretKey>> e : keys.entrySet()) {
+			copy.put(e.getKey(), Collections.unmodifiableMap(
+					new HashMap<String, SecretKey>(e.getValue())));
+		}
+		this.subscriberKeys = copy; // replicas keep the old map
+	}
+
+	/**
+	 * Returns the subscriber authentication keys carried by this message
+	 * @return the keys (read-only; shared with the replicas) or null if
+	 * the message carries none
+	 */
+	public Map<DTNHost, Map<String, SecretKey>> getSubscriberKeys() {
+		return this.subscriberKeys == null ? null :
+			Collections.unmodifiableMap(this.subscriberKeys);
+	}
+
+	/**
+	 * Returns true if any of the publish-subscribe header fields is set
+	 * @return true if the message carries a publication or keys
+	 */
+	public boolean hasPubSubHeader() {
+		return this.publication || this.publisherKeys != null ||
+				this.subscriberKeys != null;
+	}
+
 	/**
 	 * Returns a replicate of this message (identical except for the unique id)
 	 * @return A replicate of the message
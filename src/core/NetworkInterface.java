@@ -4,8 +4,10 @@
  */
 package core;
 
+import interfaces.ArrayConnectivityGrid;
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.KineticConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +38,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_DOWN = 2;
 	private static int nextAddress = 0;
 	private static Random rng;
+	/** the connectivity optimizer the interfaces use
+	 * (see {@link World#CON_OPTIMIZER_S}) */
+	private static String optimizerType;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -45,6 +50,13 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double transmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** visitor that tries to connect to the interfaces it visits */
+	protected final ConnectivityOptimizer.InterfaceVisitor connector =
+		new ConnectivityOptimizer.InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				connect(ni);
+			}
+		};
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -61,6 +73,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static void reset() {
 		nextAddress = 0;
 		rng = new Random(0);
+
+		Settings s = new Settings(World.SETTINGS_NS);
+		optimizerType = s.contains(World.CON_OPTIMIZER_S) ?
+				s.getSetting(World.CON_OPTIMIZER_S) : World.CON_GRID;
+		if (!optimizerType.equals(World.CON_GRID) &&
+				!optimizerType.equals(World.CON_ARRAY_GRID) &&
+				!optimizerType.equals(World.CON_KINETIC)) {
+			throw new SettingsError("Unknown connectivity optimizer '" +
+					optimizerType + "' for setting " + World.SETTINGS_NS +
+					"." + World.CON_OPTIMIZER_S);
+		}
 	}
 	
 	/**
@@ -124,8 +147,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
-				this.interfacetype.hashCode(), transmitRange);
+		if (optimizerType.equals(World.CON_ARRAY_GRID)) {
+			optimizer = ArrayConnectivityGrid.ArrayConnectivityGridFactory(
+					this.interfacetype.hashCode(), transmitRange);
+		} else if (optimizerType.equals(World.CON_KINETIC)) {
+			optimizer = KineticConnectivityOptimizer.
+				KineticConnectivityOptimizerFactory(
+						this.interfacetype.hashCode());
+		} else {
+			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+					this.interfacetype.hashCode(), transmitRange);
+		}
 		optimizer.addInterface(this);		
 	}
 
@@ -347,6 +379,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double)newValue;	
+			ConnectivityOptimizer.rangeChanged();
 		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
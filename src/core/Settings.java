@@ -270,6 +270,17 @@ public class Settings {
         }
     }
 
+    /**
+     * Sets the value of a setting, overriding any value read from the
+     * settings files
+     *
+     * @param name  Full name of the setting (e.g. "Report.reportDir")
+     * @param value The new value
+     */
+    public static void setSetting(String name, String value) {
+        props.setProperty(name, value);
+    }
+
     /**
      * Writes the given setting string to the settings output (if any)
      *
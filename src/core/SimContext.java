@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <P>
+ * Context of one simulation run that is isolated from the other runs of the
+ * same JVM. The simulator keeps its state in static fields (the clock, the
+ * scenario, address and ID counters, connectivity optimizers, routing
+ * bookkeeping etc.), so a context loads the simulator classes with a class
+ * loader of its own; all static state the run creates belongs to the
+ * context and is dropped with it. This way batch runs can be executed in
+ * parallel (see {@link #runAll(String[], int, int, int, int)}).
+ * </P>
+ * <P>
+ * Classes listed in {@link #SHARED_CLASSES} are loaded only once and are
+ * shared by all contexts. They must not refer to other simulator classes
+ * and may only hold data that the runs never modify (like the parsed maps of
+ * {@link movement.map.MapCache}).
+ * </P>
+ */
+public class SimContext {
+	/** names of the classes that are shared by all contexts */
+	public static final String[] SHARED_CLASSES = {"movement.map.MapCache"};
+	/** name of the method of {@link DTNSim} that runs a simulation */
+	private static final String RUN_METHOD_NAME = "runInContext";
+
+	private final String[] confFiles;
+	private final int firstConfIndex;
+	private final int runIndex;
+
+	/**
+	 * Creates a context for a run
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file in confFiles
+	 * @param runIndex Index of the run (see {@link Settings#setRunIndex(int)})
+	 */
+	public SimContext(String[] confFiles, int firstConfIndex, int runIndex) {
+		this.confFiles = confFiles;
+		this.firstConfIndex = firstConfIndex;
+		this.runIndex = runIndex;
+	}
+
+	/**
+	 * Runs the simulation in this context. The settings files are read again
+	 * by the context's own classes and the reports are written to a
+	 * directory of their own (see {@link DTNSim#runInContext}).
+	 * @throws SimError if the simulator classes can't be loaded
+	 */
+	public void run() {
+		Thread thread = Thread.currentThread();
+		ClassLoader oldLoader = thread.getContextClassLoader();
+		ContextClassLoader loader = new ContextClassLoader();
+
+		try {
+			thread.setContextClassLoader(loader);
+			Class<?> sim = Class.forName(DTNSim.class.getName(), true, loader);
+			Method m = sim.getMethod(RUN_METHOD_NAME, String[].class,
+					int.class, int.class);
+			m.invoke(null, confFiles, firstConfIndex, runIndex);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError("Run " + (runIndex + 1) + " failed: " + cause);
+		} catch (Exception e) {
+			throw new SimError("Can't load the simulator for run " +
+					(runIndex + 1) + ": " + e);
+		} finally {
+			thread.setContextClassLoader(oldLoader);
+			try {
+				loader.close();
+			} catch (IOException e) {
+				// nothing to do; the loader is dropped anyway
+			}
+		}
+	}
+
+	/**
+	 * Executes batch runs in parallel, each in a context of its own
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file in confFiles
+	 * @param firstRun Index of the first run
+	 * @param endRun Index after the last run
+	 * @param nrofThreads Maximum number of runs executed at the same time
+	 * @return The number of runs that failed
+	 */
+	public static int runAll(final String[] confFiles,
+			final int firstConfIndex, int firstRun, final int endRun,
+			int nrofThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads,
+				new ThreadFactory() {
+			private int nrofThreads = 0;
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "Run thread " + (++nrofThreads));
+			}
+		});
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+
+		for (int i = firstRun; i < endRun; i++) {
+			final int runIndex = i;
+			runs.add(executor.submit(new Runnable() {
+				public void run() {
+					System.out.println("Run " + (runIndex + 1) + "/" +
+							endRun + " started");
+					new SimContext(confFiles, firstConfIndex, runIndex).run();
+				}
+			}));
+		}
+		executor.shutdown();
+
+		int nrofFailed = 0;
+		for (int i = 0; i < runs.size(); i++) {
+			try {
+				runs.get(i).get();
+			} catch (ExecutionException e) {
+				nrofFailed++;
+				System.err.println("Run " + (firstRun + i + 1) + " failed:");
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				throw new SimError("Interrupted while waiting for the runs");
+			}
+		}
+		return nrofFailed;
+	}
+
+	/**
+	 * Returns true if the class is shared by all contexts
+	 * @param name Binary name of the class
+	 * @return True if the class is (or is nested in) a shared class
+	 */
+	private static boolean isShared(String name) {
+		for (String shared : SHARED_CLASSES) {
+			if (name.equals(shared) || name.startsWith(shared + "$")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the locations of the class path
+	 * @return The locations
+	 */
+	private static URL[] getClassPath() {
+		String[] paths = System.getProperty("java.class.path").split(
+				File.pathSeparator);
+		List<URL> urls = new ArrayList<URL>();
+		for (String path : paths) {
+			if (path.length() == 0) {
+				continue;
+			}
+			try {
+				urls.add(new File(path).toURI().toURL());
+			} catch (MalformedURLException e) {
+				throw new SimError("Invalid class path entry " + path);
+			}
+		}
+		return urls.toArray(new URL[urls.size()]);
+	}
+
+	/**
+	 * Class loader that loads the simulator (and library) classes from the
+	 * class path again, except for the shared classes which are loaded by
+	 * the loader of this class
+	 */
+	private static class ContextClassLoader extends URLClassLoader {
+		private ContextClassLoader() {
+			super(getClassPath(),
+					ClassLoader.getSystemClassLoader().getParent());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (isShared(name)) {
+				return SimContext.class.getClassLoader().loadClass(name);
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+}
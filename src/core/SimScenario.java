@@ -15,6 +15,7 @@ import movement.MapBasedMovement;
 import movement.MovementModel;
 import movement.map.SimMap;
 import routing.MessageRouter;
+import routing.KDC.RoleDirectory;
 
 /**
  * A simulation scenario used for getting and storing the settings of a
@@ -108,6 +109,8 @@ public class SimScenario implements Serializable {
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
+	/** Publish-subscribe roles of the hosts */
+	private RoleDirectory roleDirectory;
 
 	/** Global connection event listeners */
 	private List<ConnectionListener> connectionListeners;
@@ -155,6 +158,8 @@ public class SimScenario implements Serializable {
 		this.updateListeners = new ArrayList<UpdateListener>();
 		this.appListeners = new ArrayList<ApplicationListener>();
 		this.eqHandler = new EventQueueHandler();
+		this.roleDirectory = new RoleDirectory();
+		this.connectionListeners.add(roleDirectory);
 
 		/* TODO: check size from movement models */
 		s.setNameSpace(MovementModel.MOVEMENT_MODEL_NS);
@@ -405,6 +410,7 @@ public class SimScenario implements Serializable {
 						this.movementListeners,	gid, mmNetInterfaces, comBus, 
 						mmProto, mRouterProto);
 				hosts.add(host);
+				roleDirectory.addHost(host);
 
 			}
 		}
@@ -418,6 +424,14 @@ public class SimScenario implements Serializable {
 		return this.hosts;
 	}
 	
+	/**
+	 * Returns the publish-subscribe role directory of this scenario
+	 * @return the role directory
+	 */
+	public RoleDirectory getRoleDirectory() {
+		return this.roleDirectory;
+	}
+
 	/**
 	 * Returns the World object of this scenario
 	 * @return the World object
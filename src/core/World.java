@@ -5,14 +5,21 @@
 package core;
 
 import input.EventQueue;
+import input.EventScheduler;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,11 +44,67 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Number of threads used for moving the hosts and searching their
+	 * neighbors -setting id ({@value}). Hosts that continue along their
+	 * current path are moved in parallel; hosts that need a new waypoint are
+	 * moved afterwards by the simulation thread in host order. With the
+	 * {@link #CON_ARRAY_GRID} optimizer the neighbors of the interfaces are
+	 * searched in parallel, one task per block of grid cells, after every
+	 * move. The interfaces then connect and disconnect, and the routers are
+	 * updated, by the simulation thread in the (possibly randomized) update
+	 * order, so the results are identical to a sequential run.
+	 * Default is {@link #DEF_PARALLELISM} (no parallelism).
+	 */
+	public static final String PARALLELISM_S = "parallelism";
+	/**
+	 * Should external events be processed in batches -setting id
+	 * ({@value}). Boolean (true/false) variable. If true, all events of the
+	 * same time instant are processed first and only then the hosts the
+	 * events acted on (and the hosts connected to them) are updated once.
+	 * If false, all hosts are updated after every event. Events that
+	 * don't tell which hosts they affect still cause an update of all
+	 * hosts. Default is {@link #DEF_BATCH_EVENTS}.
+	 * @see input.ExternalEvent#getHostAddresses()
+	 */
+	public static final String BATCH_EVENTS_S = "batchEvents";
+	/**
+	 * Connectivity optimizer -setting id ({@value}). Name of the class in
+	 * the <code>interfaces</code> package that finds the interfaces near
+	 * each other: {@link #CON_GRID} (default), {@link #CON_ARRAY_GRID} or
+	 * {@link #CON_KINETIC}.
+	 * The array grid rebuilds all its cells once per movement step and the
+	 * kinetic optimizer only offers the pairs whose predicted range windows
+	 * are open. Both offer the interfaces in a different order, so the
+	 * results are not identical to the default grid's.
+	 * @see interfaces.ConnectivityGrid
+	 * @see interfaces.ArrayConnectivityGrid
+	 * @see interfaces.KineticConnectivityOptimizer
+	 */
+	public static final String CON_OPTIMIZER_S = "connectivityOptimizer";
+	/** {@link #CON_OPTIMIZER_S} value of the default grid ({@value}) */
+	public static final String CON_GRID = "ConnectivityGrid";
+	/** {@link #CON_OPTIMIZER_S} value of the array grid ({@value}) */
+	public static final String CON_ARRAY_GRID = "ArrayConnectivityGrid";
+	/** {@link #CON_OPTIMIZER_S} value of the kinetic optimizer ({@value}) */
+	public static final String CON_KINETIC = "KineticConnectivityOptimizer";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** default value for the number of movement threads ({@value}) */
+	public static final int DEF_PARALLELISM = 1;
+	/** should external events be processed in batches -setting's default
+	 * value ({@value}) */
+	public static final boolean DEF_BATCH_EVENTS = false;
+	/** smallest number of hosts per movement task */
+	private static final int MIN_HOSTS_PER_TASK = 64;
+
+	/** threads shared by all worlds that move hosts and search neighbors
+	 * in parallel */
+	private static ExecutorService moveExecutor;
+	private static int moveExecutorSize;
 
 	private int sizeX;
 	private int sizeY;
@@ -49,7 +112,6 @@ public class World {
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
@@ -61,9 +123,28 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** id of {@link #scheduledUpdates} in the scheduler */
+	private int scheduledUpdatesId;
+	/** the scheduled updates and the external event queues */
+	private EventScheduler scheduler;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** number of threads that move the hosts (1 = no parallelism) */
+	private int parallelism;
+	/** movement tasks of the parallel mode (null in sequential mode) */
+	private List<Callable<Void>> moveTasks;
+	/** time increment of the ongoing parallel move */
+	private double moveIncrement;
+	/** which hosts need a new waypoint (by host index) */
+	private boolean[] moveDeferred;
+
+	/** are external events processed in batches */
+	private boolean batchEvents;
+	/** hosts to update after the current event batch (by address) */
+	private boolean[] touched;
+	/** the hosts whose flag is set in {@link #touched} */
+	private ArrayList<DTNHost> touchedHosts;
 
 	/**
 	 * Constructor.
@@ -83,6 +164,14 @@ public class World {
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;		
 
+		/* scheduled updates come first of the events at the same time,
+		 * then the external events in the order of their queues */
+		this.scheduler = new EventScheduler();
+		this.scheduledUpdatesId = scheduler.addQueue(scheduledUpdates);
+		for (EventQueue eq : eventQueues) {
+			scheduler.addQueue(eq);
+		}
+
 		setNextEventQueue();
 		initSettings();
 	}
@@ -117,6 +206,84 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		if (s.contains(PARALLELISM_S)) {
+			parallelism = s.getInt(PARALLELISM_S);
+		}
+		else {
+			parallelism = DEF_PARALLELISM;
+		}
+		if (parallelism < 1) {
+			throw new SettingsError("Invalid value (" + parallelism +
+					") for " + SETTINGS_NS + "." + PARALLELISM_S);
+		}
+		initMoveTasks();
+		ConnectivityOptimizer.setExecutor(parallelism > 1 ?
+				getMoveExecutor(parallelism) : null, parallelism);
+
+		if (s.contains(BATCH_EVENTS_S)) {
+			batchEvents = s.getBoolean(BATCH_EVENTS_S);
+		}
+		else {
+			batchEvents = DEF_BATCH_EVENTS;
+		}
+		if (batchEvents) {
+			this.touched = new boolean[hosts.size()];
+			this.touchedHosts = new ArrayList<DTNHost>();
+		}
+	}
+
+	/**
+	 * Splits the hosts into contiguous chunks, one movement task each.
+	 * Leaves the tasks undefined if there are not enough hosts to make
+	 * parallel moving worthwhile.
+	 */
+	private void initMoveTasks() {
+		int n = hosts.size();
+		int nrofTasks = Math.min(parallelism, n / MIN_HOSTS_PER_TASK);
+		if (nrofTasks < 2) {
+			this.moveTasks = null;
+			return;
+		}
+
+		this.moveDeferred = new boolean[n];
+		this.moveTasks = new ArrayList<Callable<Void>>(nrofTasks);
+		for (int t = 0; t < nrofTasks; t++) {
+			final int from = (int)((long)n * t / nrofTasks);
+			final int to = (int)((long)n * (t + 1) / nrofTasks);
+			this.moveTasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int i = from; i < to; i++) {
+						moveDeferred[i] =
+							!hosts.get(i).moveOnCurrentLeg(moveIncrement);
+					}
+					return null;
+				}
+			});
+		}
+		getMoveExecutor(parallelism);
+	}
+
+	/**
+	 * Returns the shared executor of the parallel phases, (re)creating it if it
+	 * does not have the requested number of threads. The threads are
+	 * daemons so that they don't keep the VM alive after the simulation.
+	 * @param threads Number of threads
+	 * @return The executor
+	 */
+	private static synchronized ExecutorService getMoveExecutor(int threads) {
+		if (moveExecutor == null || moveExecutorSize != threads) {
+			if (moveExecutor != null) {
+				moveExecutor.shutdown();
+			}
+			moveExecutor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "World-move");
+				thread.setDaemon(true);
+				return thread;
+			});
+			moveExecutorSize = threads;
+		}
+		return moveExecutor;
 	}
 
 	/**
@@ -142,23 +309,13 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * Goes through all event Queues and sets the time of the next event.
+	 * Between the calls, only the queues events are taken from (and the
+	 * scheduled updates) are checked again.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.scheduler.refresh();
+		this.nextQueueEventTime = this.scheduler.nextEventsTime();
 	}
 
 	/** 
@@ -174,10 +331,14 @@ public class World {
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			if (this.batchEvents) {
+				processEventBatch();
+				continue;
+			}
+			ExternalEvent ee = this.scheduler.nextEvent();
 			ee.processEvent(this);
 			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			this.nextQueueEventTime = this.scheduler.nextEventsTime();
 		}
 
 		moveHosts(this.updateInterval);
@@ -219,17 +380,125 @@ public class World {
 		}
 	}
 
+	/**
+	 * Processes all external events of the current time instant and then
+	 * updates the hosts the events acted on, and the hosts connected to
+	 * them, once. If some event does not tell which hosts it affects, all
+	 * hosts are updated instead.
+	 */
+	private void processEventBatch() {
+		double batchTime = this.nextQueueEventTime;
+		boolean updateAll = false;
+
+		do {
+			ExternalEvent ee = this.scheduler.nextEvent();
+			ee.processEvent(this);
+			int[] addresses = ee.getHostAddresses();
+			if (addresses == null) {
+				updateAll = true;
+			}
+			else if (!updateAll) {
+				for (int address : addresses) {
+					touch(getNodeByAddress(address));
+				}
+			}
+			this.nextQueueEventTime = this.scheduler.nextEventsTime();
+		} while (this.nextQueueEventTime == batchTime);
+
+		if (updateAll) {
+			clearTouched();
+			updateHosts();
+			return;
+		}
+
+		/* connections may have changed during the batch; add the current
+		 * neighbors of the affected hosts */
+		for (int i=0, n = touchedHosts.size(); i < n; i++) {
+			DTNHost host = touchedHosts.get(i);
+			for (Connection c : host.getConnections()) {
+				touch(c.getOtherNode(host));
+			}
+		}
+
+		if (this.updateOrder != null) {
+			Collections.sort(touchedHosts);
+			Collections.shuffle(touchedHosts,
+					new Random(SimClock.getIntTime()));
+		}
+		for (int i=0, n = touchedHosts.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			touchedHosts.get(i).update(simulateConnections);
+		}
+		clearTouched();
+	}
+
+	/**
+	 * Marks a host to be updated after the current event batch.
+	 * @param host The host
+	 */
+	private void touch(DTNHost host) {
+		if (!touched[host.getAddress()]) {
+			touched[host.getAddress()] = true;
+			touchedHosts.add(host);
+		}
+	}
+
+	/**
+	 * Clears the hosts marked for update.
+	 */
+	private void clearTouched() {
+		for (DTNHost host : touchedHosts) {
+			touched[host.getAddress()] = false;
+		}
+		touchedHosts.clear();
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		ConnectivityOptimizer.hostsMoved();
+		if (this.moveTasks != null) {
+			moveHostsParallel(timeIncrement);
+			return;
+		}
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
 
+	/**
+	 * Moves all hosts using the movement threads. Hosts that need a new
+	 * waypoint are moved by this thread afterwards, in host order, so that
+	 * the movement models draw their random numbers and inform the
+	 * movement listeners in the same order as in sequential moving.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsParallel(double timeIncrement) {
+		this.moveIncrement = timeIncrement;
+		try {
+			for (Future<Void> f :
+					getMoveExecutor(parallelism).invokeAll(moveTasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while moving hosts");
+		} catch (ExecutionException e) {
+			throw new SimError("Error while moving hosts", e);
+		}
+
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			if (moveDeferred[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -286,5 +555,6 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		scheduler.queueChanged(scheduledUpdatesId);
 	}
 }
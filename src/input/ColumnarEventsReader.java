@@ -0,0 +1,463 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a binary columnar file that is memory mapped.
+ * Can also convert standard-format event files (see
+ * {@link StandardEventsReader}) to columnar files:
+ * <TT>java input.ColumnarEventsReader &lt;textFile&gt; &lt;columnarFile&gt;</TT>
+ * </P>
+ * <P>
+ * File layout (big endian): magic number, version, number of events
+ * (<I>n</I>) and number of strings in the id dictionary (<I>d</I>), followed
+ * by the columns <I>time</I> (n doubles), <I>type</I> (n bytes, padded to a
+ * multiple of four), <I>from</I>, <I>to</I>, <I>id</I>, <I>size</I> and
+ * <I>response size</I> (n ints each), and the dictionary: d+1 offsets
+ * (ints, string i is between offsets i and i+1) and the UTF-8 encoded
+ * strings. The id column holds the dictionary index of the message id (or
+ * of the interface id of a connection event, -1 for none). The counts of
+ * the header and the string offsets are checked against the size of the
+ * file when it is opened.
+ * </P>
+ * <P>
+ * Reading an event does not parse anything; only the event objects and
+ * the strings of the dictionary (decoded once, when first needed) are
+ * allocated.
+ * </P>
+ */
+public class ColumnarEventsReader implements ExternalEventsReader {
+	/** Extension of columnar external events files ({@value}) */
+	public static final String COLUMNAR_EXT = ".colee";
+	/** Magic number of columnar external events files ("ONEC") */
+	public static final int MAGIC = 0x4F4E4543;
+	/** Version of the file format */
+	public static final int VERSION = 1;
+
+	/** event types of the type column */
+	private static final byte CREATE = 0;
+	private static final byte SEND = 1;
+	private static final byte DELIVERED = 2;
+	private static final byte ABORT = 3;
+	private static final byte DROP = 4;
+	private static final byte REMOVE = 5;
+	private static final byte CONNECTION_UP = 6;
+	private static final byte CONNECTION_DOWN = 7;
+
+	private static final int HEADER_SIZE = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private RandomAccessFile file;
+	/** absolute path of the file (for error messages) */
+	private String path;
+	private ByteBuffer buffer;
+	private int nrofEvents;
+	private int nextEvent;
+
+	/** start offsets of the columns */
+	private int timeStart;
+	private int typeStart;
+	private int fromStart;
+	private int toStart;
+	private int idStart;
+	private int sizeStart;
+	private int respSizeStart;
+	private int dictionaryStart;
+	private int stringsStart;
+	/** the dictionary strings decoded so far */
+	private String[] strings;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 * @throws SimError if the file is not a valid columnar events file
+	 */
+	public ColumnarEventsReader(File eventsFile) {
+		this.path = eventsFile.getAbsolutePath();
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new SimError("Columnar event file " + eventsFile +
+						" is larger than 2GB");
+			}
+			MappedByteBuffer mapped = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.buffer = mapped;
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			close();
+			throw new SimError("Invalid columnar external events file: " +
+					path);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			close();
+			throw new SimError("Unsupported version " + buffer.getInt(4) +
+					" of columnar external events file " + path);
+		}
+		this.nrofEvents = buffer.getInt(8);
+		int nrofStrings = buffer.getInt(12);
+		if (nrofEvents < 0 || nrofStrings < 0) {
+			close();
+			throw new SimError("Invalid number of events (" + nrofEvents +
+					") or strings (" + nrofStrings + ") in columnar " +
+					"external events file " + path);
+		}
+		long n = nrofEvents;
+
+		// the columns must fit in the file (checked with longs so that huge
+		// counts can't overflow)
+		long dictStart = HEADER_SIZE + 8 * n + paddedLength(nrofEvents) +
+			5 * 4 * n;
+		long strStart = dictStart + 4 * ((long)nrofStrings + 1);
+		if (strStart > buffer.capacity()) {
+			close();
+			throw new SimError("Columnar external events file " + path +
+					" is truncated: the header defines " + nrofEvents +
+					" events and " + nrofStrings + " strings (" + strStart +
+					" bytes without the strings) but the file has only " +
+					buffer.capacity() + " bytes");
+		}
+
+		this.timeStart = HEADER_SIZE;
+		this.typeStart = timeStart + 8 * nrofEvents;
+		this.fromStart = typeStart + (int)paddedLength(nrofEvents);
+		this.toStart = fromStart + 4 * nrofEvents;
+		this.idStart = toStart + 4 * nrofEvents;
+		this.sizeStart = idStart + 4 * nrofEvents;
+		this.respSizeStart = sizeStart + 4 * nrofEvents;
+		this.dictionaryStart = (int)dictStart;
+		this.stringsStart = (int)strStart;
+
+		// the string offsets must be in order and within the file
+		int previous = 0;
+		for (int i = 0; i <= nrofStrings; i++) {
+			int offset = buffer.getInt(dictionaryStart + 4 * i);
+			if (offset < previous ||
+					offset > buffer.capacity() - stringsStart) {
+				close();
+				throw new SimError("Invalid offset " + offset + " of " +
+						"dictionary string " + i + " in columnar external " +
+						"events file " + path);
+			}
+			previous = offset;
+		}
+		this.strings = new String[nrofStrings];
+	}
+
+	/**
+	 * Returns the length of a byte column padded to a multiple of four
+	 */
+	private static long paddedLength(int n) {
+		return (n + 3L) & ~3L;
+	}
+
+	/**
+	 * Read events from the file
+	 * @param nrof Maximum number of events to read
+	 * @return Events in a List (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		int n = Math.max(0, Math.min(nrof, nrofEvents - nextEvent));
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(n);
+		for (int end = nextEvent + n; nextEvent < end; nextEvent++) {
+			events.add(readEvent(nextEvent));
+		}
+		return events;
+	}
+
+	private ExternalEvent readEvent(int i) {
+		double time = buffer.getDouble(timeStart + 8 * i);
+		byte type = buffer.get(typeStart + i);
+		int from = buffer.getInt(fromStart + 4 * i);
+		int to = buffer.getInt(toStart + 4 * i);
+		String id = getString(buffer.getInt(idStart + 4 * i));
+
+		switch (type) {
+		case CREATE:
+			return new MessageCreateEvent(from, to, id,
+					buffer.getInt(sizeStart + 4 * i),
+					buffer.getInt(respSizeStart + 4 * i), time);
+		case SEND:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.ABORTED);
+		case DROP:
+			return new MessageDeleteEvent(from, id, time, true);
+		case REMOVE:
+			return new MessageDeleteEvent(from, id, time, false);
+		case CONNECTION_UP:
+			return new ConnectionEvent(from, to, id, true, time);
+		case CONNECTION_DOWN:
+			return new ConnectionEvent(from, to, id, false, time);
+		default:
+			throw new SimError("Unknown event type " + type + " of event " +
+					(i + 1) + " in columnar external events file " + path);
+		}
+	}
+
+	/**
+	 * Returns a string of the dictionary
+	 * @param index Index of the string or -1 for none
+	 * @return The string or null if the index was -1
+	 */
+	private String getString(int index) {
+		if (index < 0) {
+			return null;
+		}
+		if (index >= strings.length) {
+			throw new SimError("Invalid string index " + index + " in " +
+					"columnar external events file " + path);
+		}
+		String s = strings[index];
+		if (s == null) {
+			int start = buffer.getInt(dictionaryStart + 4 * index);
+			int end = buffer.getInt(dictionaryStart + 4 * (index + 1));
+			byte[] bytes = new byte[end - start];
+			for (int k = 0; k < bytes.length; k++) {
+				bytes[k] = buffer.get(stringsStart + start + k);
+			}
+			s = new String(bytes, UTF8);
+			strings[index] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Checks if the given file is a columnar external events file
+	 * @param file The file to check
+	 * @return True if the file is a columnar ee file, false if not
+	 */
+	public static boolean isColumnarEeFile(File file) {
+		if (!file.getName().endsWith(COLUMNAR_EXT)) {
+			return false;
+		}
+
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r");
+			return in.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// only reading, nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts a standard-format external events file to a columnar file.
+	 * The events are read in chunks but all of them are held in memory (as
+	 * primitive columns) before writing.
+	 * @param textFile The standard-format file
+	 * @param columnarFile The columnar file to write
+	 * @return The number of events converted
+	 * @throws IOException if writing the file fails
+	 */
+	public static int convert(File textFile, File columnarFile)
+			throws IOException {
+		StandardEventsReader reader = new StandardEventsReader(textFile);
+		Columns c = new Columns();
+		try {
+			List<ExternalEvent> events;
+			while ((events = reader.readEvents(
+					ExternalEventsQueue.DEFAULT_NROF_PRELOAD)).size() > 0) {
+				for (ExternalEvent ee : events) {
+					c.add(ee);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		c.write(columnarFile);
+		return c.size;
+	}
+
+	/**
+	 * Converts a standard-format external events file to a columnar file.
+	 * @param args The text file and the columnar file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java " +
+					ColumnarEventsReader.class.getName() +
+					" <textFile> <columnarFile>");
+			System.exit(1);
+		}
+		String out = args[1];
+		if (!out.endsWith(COLUMNAR_EXT)) {
+			out += COLUMNAR_EXT;
+		}
+		int n = convert(new File(args[0]), new File(out));
+		System.out.println("Converted " + n + " events to " + out);
+	}
+
+	public void close() {
+		try {
+			this.file.close();
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+
+	/**
+	 * Growable columns of events being converted
+	 */
+	private static class Columns {
+		private double[] times = new double[1024];
+		private byte[] types = new byte[1024];
+		private int[] froms = new int[1024];
+		private int[] tos = new int[1024];
+		private int[] ids = new int[1024];
+		private int[] sizes = new int[1024];
+		private int[] respSizes = new int[1024];
+		private int size;
+		private Map<String, Integer> dictionary =
+			new HashMap<String, Integer>();
+		private List<String> strings = new ArrayList<String>();
+
+		private void add(ExternalEvent ee) {
+			if (size == times.length) {
+				int n = 2 * size;
+				times = Arrays.copyOf(times, n);
+				types = Arrays.copyOf(types, n);
+				froms = Arrays.copyOf(froms, n);
+				tos = Arrays.copyOf(tos, n);
+				ids = Arrays.copyOf(ids, n);
+				sizes = Arrays.copyOf(sizes, n);
+				respSizes = Arrays.copyOf(respSizes, n);
+			}
+			times[size] = ee.getTime();
+
+			if (ee instanceof ConnectionEvent) {
+				ConnectionEvent ce = (ConnectionEvent)ee;
+				types[size] = ce.isUp ? CONNECTION_UP : CONNECTION_DOWN;
+				froms[size] = ce.fromAddr;
+				tos[size] = ce.toAddr;
+				ids[size] = indexOf(ce.interfaceId);
+			}
+			else if (ee instanceof MessageEvent) {
+				MessageEvent me = (MessageEvent)ee;
+				froms[size] = me.fromAddr;
+				tos[size] = me.toAddr;
+				ids[size] = indexOf(me.id);
+				if (ee instanceof MessageCreateEvent) {
+					types[size] = CREATE;
+					sizes[size] = ((MessageCreateEvent)ee).getSize();
+					respSizes[size] =
+						((MessageCreateEvent)ee).getResponseSize();
+				}
+				else if (ee instanceof MessageRelayEvent) {
+					int stage = ((MessageRelayEvent)ee).getStage();
+					types[size] = stage == MessageRelayEvent.SENDING ? SEND :
+						(stage == MessageRelayEvent.TRANSFERRED ? DELIVERED :
+							ABORT);
+				}
+				else if (ee instanceof MessageDeleteEvent) {
+					types[size] = ((MessageDeleteEvent)ee).isDrop() ? DROP :
+						REMOVE;
+				}
+				else {
+					throw new SimError("Can't convert event " + ee);
+				}
+			}
+			else {
+				throw new SimError("Can't convert event " + ee);
+			}
+			size++;
+		}
+
+		private int indexOf(String s) {
+			if (s == null) {
+				return -1;
+			}
+			Integer index = dictionary.get(s);
+			if (index == null) {
+				index = strings.size();
+				dictionary.put(s, index);
+				strings.add(s);
+			}
+			return index;
+		}
+
+		private void write(File f) throws IOException {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(size);
+				out.writeInt(strings.size());
+				for (int i = 0; i < size; i++) {
+					out.writeDouble(times[i]);
+				}
+				out.write(types, 0, size);
+				for (int i = size; i < paddedLength(size); i++) {
+					out.writeByte(0);
+				}
+				writeInts(out, froms);
+				writeInts(out, tos);
+				writeInts(out, ids);
+				writeInts(out, sizes);
+				writeInts(out, respSizes);
+
+				List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+				int offset = 0;
+				out.writeInt(0);
+				for (String s : strings) {
+					byte[] bytes = s.getBytes(UTF8);
+					encoded.add(bytes);
+					offset += bytes.length;
+					out.writeInt(offset);
+				}
+				for (byte[] bytes : encoded) {
+					out.write(bytes);
+				}
+			} finally {
+				out.close();
+			}
+		}
+
+		private void writeInts(DataOutputStream out, int[] column)
+				throws IOException {
+			for (int i = 0; i < size; i++) {
+				out.writeInt(column[i]);
+			}
+		}
+	}
+}
@@ -46,6 +46,19 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 	
+	@Override
+	public int[] getHostAddresses() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+
+	/**
+	 * Returns true if this is a "connection up" event
+	 * @return True for a "connection up", false for a "connection down"
+	 */
+	public boolean isUp() {
+		return this.isUp;
+	}
+
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " + 
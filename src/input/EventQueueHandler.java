@@ -48,6 +48,10 @@ public class EventQueueHandler  {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** read external events in a background thread -setting id 
+	 * ({@value}). Boolean valued; default = true 
+	 * @see ExternalEventsQueue#PREFETCH_SETTING */
+	public static final String PREFETCH_SETTING = "prefetch";
 	
 	private List<EventQueue> queues;
 	
@@ -65,13 +69,17 @@ public class EventQueueHandler  {
 
 			if (s.contains(PATH_SETTING)) { // external events file
 				int preload = 0;
+				boolean prefetch = ExternalEventsQueue.DEFAULT_PREFETCH;
 				String path = "";
 				if (s.contains(PRELOAD_SETTING)) {
 					preload = s.getInt(PRELOAD_SETTING);
 				}
+				if (s.contains(PREFETCH_SETTING)) {
+					prefetch = s.getBoolean(PREFETCH_SETTING);
+				}
 				path = s.getSetting(PATH_SETTING);
 
-				queues.add(new ExternalEventsQueue(path, preload));
+				queues.add(new ExternalEventsQueue(path, preload, prefetch));
 			}
 			else if (s.contains(CLASS_SETTING)) { // event generator class
 				String className = CLASS_PACKAGE + "." + 
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event queue that merges other event queues. The queues are kept in an
+ * indexed min-heap keyed on their next event's time and the order they were
+ * added in, so the next event is found in constant time and taking it costs
+ * logarithmic time in the number of queues. Of queues with events at the
+ * same time, the one that was added first gives its event first.
+ * <P>
+ * The next event times of the queues are read when they are added, after
+ * an event is taken from them and when {@link #queueChanged(int)} or
+ * {@link #refresh()} is called. A queue whose next event time changes in
+ * some other way (e.g. a queue that is filled from another thread) is only
+ * noticed on the next refresh.
+ * </P>
+ */
+public class EventScheduler implements EventQueue {
+	private List<EventQueue> queues;
+	/** next event time of each queue (by id) */
+	private double[] times;
+	/** the heap of queue ids */
+	private int[] heap;
+	/** index of each queue (by id) in the heap */
+	private int[] position;
+
+	/**
+	 * Constructor. Creates a scheduler without queues.
+	 */
+	public EventScheduler() {
+		this.queues = new ArrayList<EventQueue>();
+		this.times = new double[8];
+		this.heap = new int[8];
+		this.position = new int[8];
+	}
+
+	/**
+	 * Adds a queue to the scheduler
+	 * @param eq The queue
+	 * @return The id of the queue (the number of queues added before it)
+	 */
+	public int addQueue(EventQueue eq) {
+		int id = queues.size();
+		if (id == heap.length) {
+			times = Arrays.copyOf(times, 2 * id);
+			heap = Arrays.copyOf(heap, 2 * id);
+			position = Arrays.copyOf(position, 2 * id);
+		}
+		queues.add(eq);
+		times[id] = eq.nextEventsTime();
+		heap[id] = id;
+		position[id] = id;
+		siftUp(id);
+		return id;
+	}
+
+	/**
+	 * Returns the queue that has the next event or null if there are no
+	 * queues
+	 * @return The queue
+	 */
+	public EventQueue nextQueue() {
+		return queues.isEmpty() ? null : queues.get(heap[0]);
+	}
+
+	/**
+	 * Returns the next event of the queue that has the next event or
+	 * ExternalEvent with time of Double.MAX_VALUE if there are no queues
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (queues.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		int id = heap[0];
+		ExternalEvent ee = queues.get(id).nextEvent();
+		queueChanged(id);
+		return ee;
+	}
+
+	/**
+	 * Returns the next event's time or Double.MAX_VALUE if there are no
+	 * events left in any queue
+	 * @return Next event's time
+	 */
+	public double nextEventsTime() {
+		return queues.isEmpty() ? Double.MAX_VALUE : times[heap[0]];
+	}
+
+	/**
+	 * Reads the next event time of a queue again. Must be called when
+	 * events have been added to the queue.
+	 * @param id The id of the queue
+	 */
+	public void queueChanged(int id) {
+		double time = queues.get(id).nextEventsTime();
+		double old = times[id];
+		times[id] = time;
+		if (time < old) {
+			siftUp(position[id]);
+		}
+		else if (time > old) {
+			siftDown(position[id]);
+		}
+	}
+
+	/**
+	 * Reads the next event times of all queues again
+	 */
+	public void refresh() {
+		int n = queues.size();
+		for (int id = 0; id < n; id++) {
+			times[id] = queues.get(id).nextEventsTime();
+		}
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Returns true if the queue in heap index i must come before the queue
+	 * in heap index j
+	 */
+	private boolean before(int i, int j) {
+		int a = heap[i];
+		int b = heap[j];
+		return times[a] < times[b] || (times[a] == times[b] && a < b);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		int n = queues.size();
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && before(child + 1, child)) {
+				child++;
+			}
+			if (!before(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int a = heap[i];
+		heap[i] = heap[j];
+		heap[j] = a;
+		position[heap[i]] = i;
+		position[heap[j]] = j;
+	}
+
+	public String toString() {
+		return "EventScheduler of " + queues.size() + " queues, next @ " +
+			nextEventsTime();
+	}
+}
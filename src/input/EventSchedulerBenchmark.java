@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmark of the {@link EventScheduler}. Takes the events of
+ * synthetic event queues (and scheduled updates) in time order once with
+ * the scheduler and once by scanning all queues after every event, as the
+ * World did before, checks that the order is the same and prints the times.
+ * <P>
+ * Usage: <code>java input.EventSchedulerBenchmark [nrofEvents
+ * [nrofQueues]]</code> (defaults 1000000 and 64)
+ * </P>
+ */
+public class EventSchedulerBenchmark {
+	/** one update is scheduled per this many events */
+	private static final int UPDATE_EVERY = 10;
+
+	/**
+	 * Event queue whose events come at random intervals, rounded to tenths
+	 * of a second so that different queues often have events at the same
+	 * time
+	 */
+	private static class SyntheticQueue implements EventQueue {
+		private final int index;
+		private final Random rng;
+		private double next;
+
+		private SyntheticQueue(int index) {
+			this.index = index;
+			this.rng = new Random(index);
+			this.next = interval();
+		}
+
+		private double interval() {
+			return Math.round(rng.nextDouble() * 1000) / 10.0;
+		}
+
+		public ExternalEvent nextEvent() {
+			ExternalEvent ee = new ExternalEvent(next);
+			next += interval();
+			return ee;
+		}
+
+		public double nextEventsTime() {
+			return next;
+		}
+	}
+
+	public static void main(String[] args) {
+		int nrofEvents = args.length > 0 ? Integer.parseInt(args[0]) :
+			1000000;
+		int nrofQueues = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+		for (int round = 1; round <= 3; round++) {
+			long start = System.nanoTime();
+			long scanned = runScan(nrofEvents, nrofQueues);
+			long scanTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long scheduled = runScheduler(nrofEvents, nrofQueues);
+			long schedulerTime = System.nanoTime() - start;
+
+			if (scanned != scheduled) {
+				System.err.println("Event orders differ!");
+				System.exit(1);
+			}
+			System.out.printf("round %d: %d events from %d queues: " +
+					"scan %.1f ms, scheduler %.1f ms%n", round, nrofEvents,
+					nrofQueues, scanTime / 1e6, schedulerTime / 1e6);
+		}
+	}
+
+	private static List<EventQueue> createQueues(int nrofQueues) {
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		for (int i = 0; i < nrofQueues; i++) {
+			queues.add(new SyntheticQueue(i));
+		}
+		return queues;
+	}
+
+	/**
+	 * Takes the events by scanning all queues for the next event
+	 * @return Checksum of the order the queues gave their events in
+	 */
+	private static long runScan(int nrofEvents, int nrofQueues) {
+		ScheduledUpdatesQueue updates = new ScheduledUpdatesQueue();
+		List<EventQueue> queues = createQueues(nrofQueues);
+		long checksum = 0;
+
+		for (int i = 0; i < nrofEvents; i++) {
+			EventQueue next = updates;
+			int nextIndex = -1;
+			double earliest = next.nextEventsTime();
+			for (int j = 0, n = queues.size(); j < n; j++) {
+				EventQueue eq = queues.get(j);
+				if (eq.nextEventsTime() < earliest) {
+					next = eq;
+					nextIndex = j;
+					earliest = eq.nextEventsTime();
+				}
+			}
+			ExternalEvent ee = next.nextEvent();
+			checksum = 31 * checksum + nextIndex;
+			if (i % UPDATE_EVERY == 0) {
+				updates.addUpdate(ee.getTime() + 1.5);
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Takes the events with the scheduler
+	 * @return Checksum of the order the queues gave their events in
+	 */
+	private static long runScheduler(int nrofEvents, int nrofQueues) {
+		ScheduledUpdatesQueue updates = new ScheduledUpdatesQueue();
+		List<EventQueue> queues = createQueues(nrofQueues);
+		EventScheduler scheduler = new EventScheduler();
+		int updatesId = scheduler.addQueue(updates);
+		for (EventQueue eq : queues) {
+			scheduler.addQueue(eq);
+		}
+		long checksum = 0;
+
+		for (int i = 0; i < nrofEvents; i++) {
+			EventQueue next = scheduler.nextQueue();
+			int nextIndex = next == updates ? -1 :
+				((SyntheticQueue)next).index;
+			ExternalEvent ee = scheduler.nextEvent();
+			checksum = 31 * checksum + nextIndex;
+			if (i % UPDATE_EVERY == 0) {
+				updates.addUpdate(ee.getTime() + 1.5);
+				scheduler.queueChanged(updatesId);
+			}
+		}
+		return checksum;
+	}
+}
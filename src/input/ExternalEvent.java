@@ -29,6 +29,17 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns the addresses of the hosts this event acts on. Used by
+	 * batched event processing (see {@link World#BATCH_EVENTS_S}) to update
+	 * only the affected hosts after the events of a time instant.
+	 * @return The host addresses or null if the event may affect any host
+	 * (all hosts are updated then)
+	 */
+	public int[] getHostAddresses() {
+		return null;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
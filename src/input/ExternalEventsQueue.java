@@ -12,7 +12,9 @@ import core.Settings;
 
 /**
  * Queue of external events. This class also takes care of buffering
- * the events and preloading only a proper amount of them.
+ * the events and preloading only a proper amount of them. By default the
+ * next preload is read in a background thread while the events of the
+ * current one are processed (see {@link Prefetcher}).
  */
 public class ExternalEventsQueue implements EventQueue {
 	/** ExternalEvents namespace ({@value})*/
@@ -21,14 +23,21 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** read events in a background thread -setting id ({@value}). Boolean
+	 * valued; default = {@value #DEFAULT_PREFETCH} */
+	public static final String PREFETCH_SETTING = "prefetch";
 	
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
+	/** default value of {@link #PREFETCH_SETTING} */
+	public static final boolean DEFAULT_PREFETCH = true;
 	
 	private File eventsFile;
 	private ExternalEventsReader reader;
 	private int nextEventIndex;
-	private int nrofPreload;
+	private volatile int nrofPreload;
+	/** reader of the next preloads (null if they are read when needed) */
+	private Prefetcher<List<ExternalEvent>> prefetcher;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
 	
@@ -36,19 +45,34 @@ public class ExternalEventsQueue implements EventQueue {
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file and if it ends with
+	 * {@link ColumnarEventsReader#COLUMNAR_EXT}, a columnar file.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
+	 * @see ColumnarEventsReader#convert(File, File)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, DEFAULT_PREFETCH);
+	}
+	
+	/**
+	 * Creates a new Queue from a file
+	 * @param filePath Path to the file where the events are read from
+	 * (see {@link #ExternalEventsQueue(String, int)})
+	 * @param nrofPreload How many events to preload
+	 * @param prefetch If true, the events are read in a background thread
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload, 
+			boolean prefetch) {
 		setNrofPreload(nrofPreload);
-		init(filePath);
+		init(filePath, prefetch);
 	}
 	
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PREFETCH_SETTING} and {@link #PATH_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,8 +82,12 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		boolean prefetch = DEFAULT_PREFETCH;
+		if (s.contains(PREFETCH_SETTING)) {
+			prefetch = s.getBoolean(PREFETCH_SETTING);
+		}
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
-        init(eeFilePath);
+        init(eeFilePath, prefetch);
     }
 
 	/**
@@ -74,16 +102,35 @@ public class ExternalEventsQueue implements EventQueue {
 		this.nrofPreload = nrof;
 	}
 	
-	private void init(String eeFilePath) {
+	private void init(String eeFilePath, boolean prefetch) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ColumnarEventsReader.isColumnarEeFile(eventsFile)) {
+			this.reader = new ColumnarEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 		
+		if (prefetch) {
+			this.prefetcher = new Prefetcher<List<ExternalEvent>>(
+					"Prefetcher of " + eventsFile) {
+				protected List<ExternalEvent> read() {
+					List<ExternalEvent> events = 
+						reader.readEvents(nrofPreload);
+					return events.size() > 0 ? events : null;
+				}
+				
+				protected void closeInput() {
+					reader.close();
+				}
+			};
+			this.prefetcher.start();
+		}
+		
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
@@ -150,6 +197,15 @@ public class ExternalEventsQueue implements EventQueue {
 			return new ArrayList<ExternalEvent>(0);
 		}
 		
+		if (prefetcher != null) {
+			List<ExternalEvent> events = prefetcher.next();
+			if (events == null) {
+				allEventsRead = true;
+				return new ArrayList<ExternalEvent>(0);
+			}
+			return events;
+		}
+		
 		List<ExternalEvent> events = reader.readEvents(nrof);
 		
 		if (nrof > 0 && events.size() == 0) {
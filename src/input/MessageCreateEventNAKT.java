@@ -66,6 +66,20 @@ public class MessageCreateEventNAKT extends MessageEvent {
         }
         from.createNewMessage(m);
     }
+
+    /**
+     * Returns null: besides the creator, the registration, subscription and
+     * key messages of this event go to the brokers, KDCs, publishers and
+     * subscribers that are connected when the event is processed, so every
+     * host is updated after it.
+     *
+     * @return null
+     */
+    @Override
+    public int[] getHostAddresses() {
+        return null;
+    }
+
     @Override
     public String toString() {
         return super.toString() + " [" + fromAddr + "->" + toAddr + "] " +
@@ -51,6 +51,14 @@ public class MessageDeleteEvent extends MessageEvent {
 		}
 	}
 
+	/**
+	 * Returns true if the delete is caused by a drop
+	 * @return true for a drop, false for a remove
+	 */
+	boolean isDrop() {
+		return this.drop;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + " [" + fromAddr + "] DELETE";
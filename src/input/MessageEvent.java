@@ -29,6 +29,11 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 	
+	@Override
+	public int[] getHostAddresses() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+
 	@Override
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
@@ -61,6 +61,14 @@ public class MessageRelayEvent extends MessageEvent {
 		}
 	}
 	
+	/**
+	 * Returns the stage of the event
+	 * @return {@link #SENDING}, {@link #TRANSFERRED} or {@link #ABORTED}
+	 */
+	int getStage() {
+		return this.stage;
+	}
+	
 	@Override
 	public String toString() {
 		return super.toString() + " [" + fromAddr + "->" + toAddr + "] " + 
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.DTNSim;
+import core.SimError;
+
+/**
+ * Reads chunks of input in a background thread ahead of their use. While
+ * the simulation uses one chunk, the next one is read; the thread waits
+ * when one chunk is ready and not yet taken, so at most two chunks are held
+ * in addition to the one in use. The chunks are given out in the order they
+ * were read. An exception thrown while reading is thrown again by
+ * {@link #next()} when the chunk would have been taken.
+ * <P>
+ * All prefetchers are stopped when the simulator is reset for the next
+ * run.
+ * </P>
+ * @param <T> Type of the chunks
+ */
+public abstract class Prefetcher<T> {
+	/** marks the end of the input in the queue */
+	private static final Object END = new Object();
+
+	private static List<Prefetcher<?>> running;
+
+	private final BlockingQueue<Object> ready;
+	private final Thread thread;
+	private volatile boolean closed;
+	/** has the end of the input (or an error) been taken */
+	private boolean ended;
+
+	static {
+		DTNSim.registerForReset(Prefetcher.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Stops all prefetchers
+	 */
+	public static synchronized void reset() {
+		if (running != null) {
+			for (Prefetcher<?> p : running) {
+				p.close();
+			}
+		}
+		running = new ArrayList<Prefetcher<?>>();
+	}
+
+	/**
+	 * Constructor. The reading is started with {@link #start()}.
+	 * @param name Name of the reading thread
+	 */
+	public Prefetcher(String name) {
+		this.ready = new ArrayBlockingQueue<Object>(1);
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				readAll();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Reads the next chunk. Called in the reading thread.
+	 * @return The chunk or null if there is no more input
+	 */
+	protected abstract T read();
+
+	/**
+	 * Closes the input. Called in the reading thread when the reading is
+	 * over. This version does nothing.
+	 */
+	protected void closeInput() {
+	}
+
+	/**
+	 * Starts reading in the background
+	 */
+	public void start() {
+		synchronized (Prefetcher.class) {
+			running.add(this);
+		}
+		thread.start();
+	}
+
+	/**
+	 * Returns the next chunk, waiting for it to be read if needed
+	 * @return The chunk or null if there is no more input
+	 * @throws SimError if the thread is interrupted while waiting
+	 */
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (ended) {
+			return null;
+		}
+
+		Object o;
+		try {
+			o = ready.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while waiting for " +
+					thread.getName());
+		}
+
+		if (o == END) {
+			ended = true;
+			return null;
+		}
+		if (o instanceof Failure) {
+			ended = true;
+			Throwable t = ((Failure)o).cause;
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+			throw (RuntimeException)t;
+		}
+		return (T)o;
+	}
+
+	/**
+	 * Stops the reading. Chunks that have not been taken are discarded.
+	 */
+	public void close() {
+		closed = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * Reads the chunks until the input ends or the prefetcher is closed
+	 */
+	private void readAll() {
+		try {
+			while (!closed) {
+				T chunk;
+				try {
+					chunk = read();
+				} catch (RuntimeException e) {
+					ready.put(new Failure(e));
+					break;
+				} catch (Error e) {
+					ready.put(new Failure(e));
+					break;
+				}
+				if (chunk == null) {
+					ready.put(END);
+					break;
+				}
+				ready.put(chunk);
+			}
+		} catch (InterruptedException e) {
+			// closed; nobody is going to take the chunks
+		} finally {
+			closeInput();
+		}
+	}
+
+	/**
+	 * Exception thrown in the reading thread
+	 */
+	private static class Failure {
+		private final Throwable cause;
+
+		private Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+}
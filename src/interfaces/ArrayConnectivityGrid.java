@@ -0,0 +1,469 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import movement.MovementModel;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimError;
+
+/**
+ * <P>
+ * Array based variant of the {@link ConnectivityGrid}. The interfaces are
+ * indexed by the order they were added in and their coordinates, ranges and
+ * cells are kept in plain arrays. Instead of moving interfaces between cell
+ * lists one at a time, the whole grid is rebuilt by sorting the interfaces
+ * by their cells the first time it is queried after the hosts have moved
+ * (see {@link ConnectivityOptimizer#hostsMoved()}), so
+ * {@link #updateLocation(NetworkInterface)} does nothing.
+ * </P>
+ * <P>
+ * {@link #visitNearInterfaces(NetworkInterface, InterfaceVisitor)} does not
+ * allocate anything and only visits the interfaces whose squared distance
+ * is within the square of the smaller transmit range of the two interfaces;
+ * the interfaces still make the exact range check before connecting. The interfaces in the
+ * neighboring cells are visited row by row, and in the order they were added
+ * within a cell.
+ * </P>
+ * <P>
+ * If the optimizers have been given threads (see
+ * {@link ConnectivityOptimizer#setExecutor}), the interfaces that each
+ * interface visits are searched in parallel right after the grid has been
+ * built, one task per block of cells, and the visits only go through the
+ * lists. The lists are the same that the visits would find (in the same
+ * order), so the results do not depend on the threads. The lists are
+ * dropped if any transmit range changes before the next build.
+ * </P>
+ * <P>
+ * Locations outside the world are clamped to the border cells.
+ * </P>
+ */
+public class ArrayConnectivityGrid extends ConnectivityOptimizer {
+	/** relative slack of the squared range test (to never leave out an
+	 * interface that the exact range check would accept) */
+	private static final double RANGE_SLACK = 1e-9;
+	/** smallest number of interfaces per parallel search task */
+	private static final int MIN_INTERFACES_PER_TASK = 64;
+
+	private static int worldSizeX;
+	private static int worldSizeY;
+	static HashMap<Integer, ArrayConnectivityGrid> gridobjects;
+
+	private final double cellSize;
+	private final int rows;
+	private final int cols;
+
+	/** the interfaces by index */
+	private NetworkInterface[] interfaces;
+	/** indexes of the interfaces (only used when adding and removing) */
+	private Map<NetworkInterface, Integer> indexes;
+	private int size;
+
+	/** coordinates of the interfaces at the last build */
+	private double[] xs;
+	private double[] ys;
+	/** cell and index of each interface (cell in the high 32 bits) sorted */
+	private long[] cellKeys;
+	/** interface indexes of cell i are in cellItems[cellStart[i] ..
+	 * cellEnd[i]-1] */
+	private int[] cellStart;
+	private int[] cellEnd;
+	private int[] cellItems;
+	/** the non-empty cells at the last build (cleared at the next one) */
+	private int[] usedCells;
+	private int nrofUsedCells;
+
+	/** value of {@link #getNrofMoves()} at the last build */
+	private long builtAt;
+	/** has the set of interfaces changed after the last build */
+	private boolean dirty;
+
+	/** indexes of the interfaces that interface i visits are in
+	 * nearItems[nearTask[i]][nearStart[i] .. nearEnd[i]-1] */
+	private int[] nearTask;
+	private int[] nearStart;
+	private int[] nearEnd;
+	private int[][] nearItems;
+	/** value of {@link #getNrofRangeChanges()} when the near lists were
+	 * searched or -1 if they are not valid */
+	private long nearRanges = -1;
+
+	static {
+		DTNSim.registerForReset(ArrayConnectivityGrid.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		gridobjects = new HashMap<Integer, ArrayConnectivityGrid>();
+
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+	}
+
+	/**
+	 * Creates a new grid
+	 * @param cellSize Cell's edge's length (must be at least the largest
+	 * 	radio range)
+	 */
+	private ArrayConnectivityGrid(double cellSize) {
+		this.cellSize = cellSize;
+		this.rows = (int)(worldSizeY / cellSize) + 1;
+		this.cols = (int)(worldSizeX / cellSize) + 1;
+		this.interfaces = new NetworkInterface[16];
+		this.indexes = new IdentityHashMap<NetworkInterface, Integer>();
+		this.xs = new double[16];
+		this.ys = new double[16];
+		this.cellKeys = new long[16];
+		this.cellItems = new int[16];
+		this.usedCells = new int[16];
+		this.cellStart = new int[rows * cols];
+		this.cellEnd = new int[rows * cols];
+		this.dirty = true;
+	}
+
+	/**
+	 * Returns a grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param cellSize Cell's edge's length (must be at least the largest
+	 * 	radio range)
+	 * @return The grid object for a specific interface
+	 */
+	public static ArrayConnectivityGrid ArrayConnectivityGridFactory(int key,
+			double cellSize) {
+		ArrayConnectivityGrid grid = gridobjects.get(key);
+		if (grid == null) {
+			grid = new ArrayConnectivityGrid(Math.ceil(cellSize));
+			gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Adds a network interface to the grid (unless it is already present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (indexes.containsKey(ni)) {
+			return;
+		}
+		if (size == interfaces.length) {
+			int n = 2 * size;
+			interfaces = Arrays.copyOf(interfaces, n);
+			xs = Arrays.copyOf(xs, n);
+			ys = Arrays.copyOf(ys, n);
+			cellKeys = Arrays.copyOf(cellKeys, n);
+			cellItems = Arrays.copyOf(cellItems, n);
+			usedCells = Arrays.copyOf(usedCells, n);
+		}
+		indexes.put(ni, size);
+		interfaces[size++] = ni;
+		dirty = true;
+	}
+
+	/**
+	 * Removes a network interface from the grid
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		Integer index = indexes.remove(ni);
+		if (index == null) {
+			return;
+		}
+		// keep the order of the remaining interfaces
+		System.arraycopy(interfaces, index + 1, interfaces, index,
+				size - index - 1);
+		interfaces[--size] = null;
+		for (int i = index; i < size; i++) {
+			indexes.put(interfaces[i], i);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Does nothing; the locations are read when the grid is rebuilt
+	 * @param ni The interface whose location might have changed
+	 */
+	public void updateLocation(NetworkInterface ni) {
+	}
+
+	/**
+	 * Rebuilds the grid if the hosts have moved or the interfaces have
+	 * changed after the last build
+	 */
+	private void build() {
+		if (!dirty && builtAt == getNrofMoves()) {
+			return;
+		}
+
+		for (int k = 0; k < nrofUsedCells; k++) {
+			cellStart[usedCells[k]] = 0;
+			cellEnd[usedCells[k]] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			Coord c = interfaces[i].getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+			long cell = cellIndex(row(ys[i]), col(xs[i]));
+			cellKeys[i] = (cell << 32) | i;
+		}
+		Arrays.sort(cellKeys, 0, size);
+
+		nrofUsedCells = 0;
+		for (int k = 0; k < size; k++) {
+			int cell = (int)(cellKeys[k] >>> 32);
+			cellItems[k] = (int)cellKeys[k];
+			if (k == 0 || cell != usedCells[nrofUsedCells - 1]) {
+				usedCells[nrofUsedCells++] = cell;
+				cellStart[cell] = k;
+			}
+			cellEnd[cell] = k + 1;
+		}
+
+		builtAt = getNrofMoves();
+		dirty = false;
+
+		nearRanges = -1;
+		if (getExecutor() != null &&
+				size >= 2 * MIN_INTERFACES_PER_TASK) {
+			searchNear();
+		}
+	}
+
+	/**
+	 * Searches the interfaces each interface visits using the optimizers'
+	 * threads. The used cells are split into blocks of about the same number
+	 * of interfaces, one task each.
+	 */
+	private void searchNear() {
+		int nrofTasks = Math.min(getNrofThreads(),
+				size / MIN_INTERFACES_PER_TASK);
+		if (nearTask == null || nearTask.length < interfaces.length) {
+			nearTask = new int[interfaces.length];
+			nearStart = new int[interfaces.length];
+			nearEnd = new int[interfaces.length];
+		}
+		if (nearItems == null || nearItems.length != nrofTasks) {
+			nearItems = new int[nrofTasks][];
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nrofTasks);
+		int first = 0;
+		for (int t = 0; t < nrofTasks; t++) {
+			int last = first;
+			int end = (int)((long)size * (t + 1) / nrofTasks);
+			while (last < nrofUsedCells && cellStart[usedCells[last]] < end) {
+				last++;
+			}
+			final int task = t;
+			final int fromCell = first;
+			final int toCell = last;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					searchNear(task, fromCell, toCell);
+					return null;
+				}
+			});
+			first = last;
+		}
+
+		try {
+			for (Future<Void> f : getExecutor().invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while searching neighbors");
+		} catch (ExecutionException e) {
+			throw new SimError("Error while searching neighbors", e);
+		}
+		nearRanges = getNrofRangeChanges();
+	}
+
+	/**
+	 * Searches the interfaces that the interfaces of some used cells visit
+	 * @param task Index of the task (selects the list the results go to)
+	 * @param fromCell Index of the first cell in {@link #usedCells}
+	 * @param toCell Index after the last cell in {@link #usedCells}
+	 */
+	private void searchNear(int task, int fromCell, int toCell) {
+		int[] items = nearItems[task];
+		if (items == null) {
+			items = new int[256];
+		}
+		int n = 0;
+
+		for (int u = fromCell; u < toCell; u++) {
+			int ownCell = usedCells[u];
+			for (int k = cellStart[ownCell]; k < cellEnd[ownCell]; k++) {
+				int i = cellItems[k];
+				double x = xs[i];
+				double y = ys[i];
+				double range = interfaces[i].getTransmitRange();
+				int row = row(y);
+				int col = col(x);
+				nearTask[i] = task;
+				nearStart[i] = n;
+
+				for (int r = Math.max(row - 1, 0),
+						rEnd = Math.min(row + 1, rows - 1); r <= rEnd; r++) {
+					int cEnd = cellIndex(r, Math.min(col + 1, cols - 1));
+					for (int cell = cellIndex(r, Math.max(col - 1, 0));
+							cell <= cEnd; cell++) {
+						for (int m = cellStart[cell], end = cellEnd[cell];
+								m < end; m++) {
+							int j = cellItems[m];
+							if (isNear(x, y, range, j)) {
+								if (n == items.length) {
+									items = Arrays.copyOf(items, 2 * n);
+								}
+								items[n++] = j;
+							}
+						}
+					}
+				}
+				nearEnd[i] = n;
+			}
+		}
+		nearItems[task] = items;
+	}
+
+	/**
+	 * Returns true if interface j is within the smaller transmit range of
+	 * the two interfaces from the given location (with a little slack)
+	 */
+	private boolean isNear(double x, double y, double range, int j) {
+		double dx = xs[j] - x;
+		double dy = ys[j] - y;
+		double smallerRange = Math.min(range, interfaces[j].getTransmitRange());
+		return dx*dx + dy*dy <= smallerRange * smallerRange * (1 + RANGE_SLACK);
+	}
+
+	private int row(double y) {
+		int row = (int)(y / cellSize);
+		return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+	}
+
+	private int col(double x) {
+		int col = (int)(x / cellSize);
+		return col < 0 ? 0 : (col >= cols ? cols - 1 : col);
+	}
+
+	private int cellIndex(int row, int col) {
+		return row * cols + col;
+	}
+
+	/**
+	 * Visits the interfaces of the neighboring cells (and the interface's own
+	 * cell) that are within range of the interface. Allocates nothing.
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		build();
+		if (nearRanges == getNrofRangeChanges()) {
+			Integer index = indexes.get(ni);
+			if (index != null) {
+				int[] items = nearItems[nearTask[index]];
+				for (int k = nearStart[index], end = nearEnd[index]; k < end;
+						k++) {
+					visitor.visit(interfaces[items[k]]);
+				}
+				return;
+			}
+		}
+
+		Coord c = ni.getLocation();
+		double x = c.getX();
+		double y = c.getY();
+		double range = ni.getTransmitRange();
+		int row = row(y);
+		int col = col(x);
+
+		for (int r = Math.max(row - 1, 0), rEnd = Math.min(row + 1, rows - 1);
+				r <= rEnd; r++) {
+			int cEnd = cellIndex(r, Math.min(col + 1, cols - 1));
+			for (int cell = cellIndex(r, Math.max(col - 1, 0)); cell <= cEnd;
+					cell++) {
+				for (int k = cellStart[cell], end = cellEnd[cell]; k < end;
+						k++) {
+					int j = cellItems[k];
+					if (isNear(x, y, range, j)) {
+						visitor.visit(interfaces[j]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns all interfaces in the neighboring cells (and the interface's own
+	 * cell)
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		build();
+		List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		Coord c = ni.getLocation();
+		int row = row(c.getY());
+		int col = col(c.getX());
+
+		for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1);
+				r++) {
+			for (int cell = cellIndex(r, Math.max(col - 1, 0)),
+					cEnd = cellIndex(r, Math.min(col + 1, cols - 1));
+					cell <= cEnd; cell++) {
+				for (int k = cellStart[cell]; k < cellEnd[cell]; k++) {
+					near.add(interfaces[cellItems[k]]);
+				}
+			}
+		}
+		return near;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return Collections.unmodifiableList(
+				Arrays.asList(interfaces).subList(0, size));
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	}
+}
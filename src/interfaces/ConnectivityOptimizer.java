@@ -5,6 +5,7 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
 import core.NetworkInterface;
 
@@ -13,6 +14,87 @@ import core.NetworkInterface;
  * with network interfaces of a specific range
  */
 abstract public class ConnectivityOptimizer {
+	/** number of times the hosts have been moved */
+	private static long nrofMoves = 0;
+	/** number of times the transmit range of some interface has changed */
+	private static long nrofRangeChanges = 0;
+	/** threads the optimizers may use for bulk work (null if none) */
+	private static ExecutorService executor;
+	/** number of threads of the executor */
+	private static int nrofThreads = 1;
+
+	/**
+	 * Visitor of the interfaces found by
+	 * {@link ConnectivityOptimizer#visitNearInterfaces}
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for each interface found
+		 * @param ni The interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
+
+	/**
+	 * Tells the optimizers that the hosts have (possibly) moved. Optimizers
+	 * that read the locations in bulk must read them again.
+	 */
+	public static void hostsMoved() {
+		nrofMoves++;
+	}
+
+	/**
+	 * Returns the number of times the hosts have been moved
+	 * @return the number of calls to {@link #hostsMoved()}
+	 */
+	protected static long getNrofMoves() {
+		return nrofMoves;
+	}
+
+	/**
+	 * Tells the optimizers that the transmit range of some interface has
+	 * changed. Optimizers that have computed neighbors in advance must
+	 * compute them again.
+	 */
+	public static void rangeChanged() {
+		nrofRangeChanges++;
+	}
+
+	/**
+	 * Returns the number of times the transmit ranges have changed
+	 * @return the number of calls to {@link #rangeChanged()}
+	 */
+	protected static long getNrofRangeChanges() {
+		return nrofRangeChanges;
+	}
+
+	/**
+	 * Sets the threads the optimizers may use for bulk work. The work must
+	 * give the same results as doing it in a single thread.
+	 * @param executor The executor or null for no parallelism
+	 * @param threads Number of threads of the executor
+	 */
+	public static void setExecutor(ExecutorService executor, int threads) {
+		ConnectivityOptimizer.executor = executor;
+		ConnectivityOptimizer.nrofThreads = executor == null ? 1 : threads;
+	}
+
+	/**
+	 * Returns the threads the optimizers may use for bulk work
+	 * @return The executor or null if the work must be done in the
+	 * simulation thread
+	 */
+	protected static ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Returns the number of threads of the executor
+	 * @return The number of threads (1 if there is no executor)
+	 */
+	protected static int getNrofThreads() {
+		return nrofThreads;
+	}
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,6 +122,23 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. Optimizers may
+	 * leave out interfaces that certainly are out of range. The default
+	 * implementation visits the interfaces returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}.
+	 *
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for each interface
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface i : getNearInterfaces(ni)) {
+			visitor.visit(i);
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
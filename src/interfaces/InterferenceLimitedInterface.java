@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
@@ -95,10 +93,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		optimizer.visitNearInterfaces(this, connector);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
@@ -160,4 +155,4 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		return "InterfaceLimitedInterface " + super.toString();
 	}
 
-}
\ No newline at end of file
+}
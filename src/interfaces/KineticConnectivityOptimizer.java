@@ -0,0 +1,432 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * <P>
+ * Kinetic connectivity optimizer. Between waypoints a host moves along a
+ * straight line with a constant speed (or stays still), so for every pair of
+ * interfaces the time window in which they are within range of each other
+ * can be solved in closed form. The optimizer keeps these windows in a queue
+ * ordered by their start times and only offers an interface the interfaces
+ * it has an open window with; pairs that are not going to meet are not
+ * looked at at all.
+ * </P>
+ * <P>
+ * The motion of a host is read again (and the windows of all pairs of its
+ * interfaces solved again) when the host picks a new waypoint (see
+ * {@link DTNHost#getNrofWaypointChanges()}), becomes active or inactive,
+ * changes its transmit range, or is found somewhere else than where it
+ * should be (e.g. moved with {@link DTNHost#setLocation(Coord)}). That takes
+ * time linear in the number of interfaces, so the optimizer suits scenarios
+ * where hosts stay still or follow long straight legs; with movement models
+ * that relocate the hosts on every step it is slower than the grids.
+ * </P>
+ * <P>
+ * The windows are checked at the normal update steps, and the interfaces
+ * still make the exact range check before connecting, so the same contacts
+ * are found as with the grids. Only the order the interfaces are offered in
+ * differs.
+ * </P>
+ */
+public class KineticConnectivityOptimizer extends ConnectivityOptimizer {
+	/** distance (meters) a host may be off its predicted location before
+	 * its motion is read again */
+	private static final double LOCATION_TOLERANCE = 1e-6;
+	/** how much (meters) the ranges are extended when solving the windows
+	 * (to never leave out a pair that the exact range check would accept) */
+	private static final double RANGE_MARGIN = 1e-3;
+
+	static HashMap<Integer, KineticConnectivityOptimizer> optimizers;
+
+	/** the interfaces and their motion */
+	private List<Mover> movers;
+	private Map<NetworkInterface, Mover> moverOf;
+	/** windows that have not started yet, by start time */
+	private PriorityQueue<Window> pending;
+	/** movers whose motion changed in the current advance */
+	private List<Mover> changed;
+
+	/** value of {@link #getNrofMoves()} at the last advance */
+	private long advancedAt;
+	/** number of advances done */
+	private long nrofAdvances;
+	/** has the set of interfaces changed after the last advance */
+	private boolean dirty;
+
+	static {
+		DTNSim.registerForReset(
+				KineticConnectivityOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		optimizers = new HashMap<Integer, KineticConnectivityOptimizer>();
+	}
+
+	private KineticConnectivityOptimizer() {
+		this.movers = new ArrayList<Mover>();
+		this.moverOf = new IdentityHashMap<NetworkInterface, Mover>();
+		this.pending = new PriorityQueue<Window>(11, new Comparator<Window>() {
+			public int compare(Window w1, Window w2) {
+				return Double.compare(w1.start, w2.start);
+			}
+		});
+		this.changed = new ArrayList<Mover>();
+		this.dirty = true;
+	}
+
+	/**
+	 * Returns an optimizer object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The optimizer object for a specific interface
+	 */
+	public static KineticConnectivityOptimizer
+			KineticConnectivityOptimizerFactory(int key) {
+		KineticConnectivityOptimizer o = optimizers.get(key);
+		if (o == null) {
+			o = new KineticConnectivityOptimizer();
+			optimizers.put(key, o);
+		}
+		return o;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already
+	 * present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (moverOf.containsKey(ni)) {
+			return;
+		}
+		Mover m = new Mover(ni);
+		movers.add(m);
+		moverOf.put(ni, m);
+		dirty = true;
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface ni : interfaces) {
+			addInterface(ni);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the optimizer
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		Mover m = moverOf.remove(ni);
+		if (m != null) {
+			movers.remove(m);
+			m.generation++; // invalidates all its windows
+			m.open.clear();
+		}
+	}
+
+	/**
+	 * Does nothing; the motion of the hosts is checked once per movement
+	 * step
+	 * @param ni The interface whose location might have changed
+	 */
+	public void updateLocation(NetworkInterface ni) {
+	}
+
+	/**
+	 * Reads the motion of the hosts that have changed their motion, solves
+	 * the windows of their pairs again and opens the windows that have
+	 * started. Done once per movement step.
+	 */
+	private void advance() {
+		if (!dirty && advancedAt == getNrofMoves()) {
+			return;
+		}
+		double now = SimClock.getTime();
+		nrofAdvances++;
+
+		changed.clear();
+		for (Mover m : movers) {
+			if (m.hasChanged(now)) {
+				m.readMotion(now);
+				m.generation++;
+				m.open.clear();
+				m.changedAt = nrofAdvances;
+				m.solved = false;
+				changed.add(m);
+			}
+		}
+		for (Mover m : changed) {
+			for (Mover other : movers) {
+				if (other == m ||
+						(other.changedAt == m.changedAt && other.solved)) {
+					continue; // the pair was solved already
+				}
+				Window w = solve(m, other, now);
+				if (w == null) {
+					continue;
+				}
+				if (w.start <= now) {
+					w.open();
+				} else {
+					pending.add(w);
+				}
+			}
+			m.solved = true;
+		}
+
+		while (!pending.isEmpty() && pending.peek().start <= now) {
+			Window w = pending.poll();
+			if (w.isValid() && w.end >= now) {
+				w.open();
+			}
+		}
+
+		advancedAt = getNrofMoves();
+		dirty = false;
+	}
+
+	/**
+	 * Solves the next window in which two interfaces are within range of each
+	 * other, assuming both hosts keep their current motion. The motion only
+	 * lasts until the first of them reaches its destination, so the window
+	 * ends there at the latest.
+	 * @param a The first interface's mover
+	 * @param b The second interface's mover
+	 * @param now The current time
+	 * @return The window or null if they are not going to be in range
+	 */
+	private Window solve(Mover a, Mover b, double now) {
+		double range = Math.min(a.range, b.range) + RANGE_MARGIN;
+		double legEnd = Math.min(a.legEnd, b.legEnd);
+		double px = b.xAt(now) - a.xAt(now);
+		double py = b.yAt(now) - a.yAt(now);
+		double vx = b.vx - a.vx;
+		double vy = b.vy - a.vy;
+
+		// |p + v*t| <= range <=> aa*t^2 + 2*bb*t + cc <= 0
+		double aa = vx*vx + vy*vy;
+		double bb = px*vx + py*vy;
+		double cc = px*px + py*py - range*range;
+
+		if (aa == 0) { // no relative motion
+			return cc <= 0 ? new Window(a, b, now, legEnd) : null;
+		}
+		double disc = bb*bb - aa*cc;
+		if (disc < 0) {
+			return null; // never close enough
+		}
+		double sqrtDisc = Math.sqrt(disc);
+		double t2 = (-bb + sqrtDisc) / aa;
+		if (t2 < 0) {
+			return null; // the window is over already
+		}
+		double t1 = Math.max((-bb - sqrtDisc) / aa, 0);
+		if (now + t1 > legEnd) {
+			return null; // one of the legs ends before they meet
+		}
+		return new Window(a, b, now + t1, Math.min(now + t2, legEnd));
+	}
+
+	/**
+	 * Visits the interfaces the interface has an open window with
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		advance();
+		Mover m = moverOf.get(ni);
+		if (m == null) {
+			return;
+		}
+		double now = SimClock.getTime();
+		List<Window> open = m.open;
+		int kept = 0;
+		for (int i = 0, n = open.size(); i < n; i++) {
+			Window w = open.get(i);
+			if (!w.isValid() || w.end < now) {
+				continue; // drop windows that are over
+			}
+			open.set(kept++, w);
+		}
+		open.subList(kept, open.size()).clear();
+
+		for (int i = 0; i < kept; i++) {
+			visitor.visit(open.get(i).other(m).ni);
+		}
+	}
+
+	/**
+	 * Returns the interfaces the interface has an open window with
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface other) {
+				near.add(other);
+			}
+		});
+		return near;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		List<NetworkInterface> all =
+			new ArrayList<NetworkInterface>(movers.size());
+		for (Mover m : movers) {
+			all.add(m.ni);
+		}
+		return Collections.unmodifiableList(all);
+	}
+
+	/**
+	 * Returns a string representation of the optimizer
+	 * @return a string representation of the optimizer
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of " + movers.size() +
+			" interfaces, " + pending.size() + " pending windows";
+	}
+
+	/**
+	 * An interface and the motion of its host
+	 */
+	private static class Mover {
+		private final NetworkInterface ni;
+		/** location at time t0 and velocity */
+		private double x0, y0, t0, vx, vy;
+		/** time when the host reaches its destination (and its motion
+		 * changes) or Double.MAX_VALUE if it is not moving */
+		private double legEnd;
+		private double range;
+		private boolean active;
+		private long nrofWaypointChanges = -1;
+		/** incremented whenever the motion changes */
+		private int generation;
+		/** number of the advance in which the motion last changed */
+		private long changedAt = -1;
+		/** have the pairs been solved after the last motion change */
+		private boolean solved;
+		/** open windows with other interfaces */
+		private final List<Window> open = new ArrayList<Window>();
+
+		private Mover(NetworkInterface ni) {
+			this.ni = ni;
+		}
+
+		private double xAt(double time) {
+			return x0 + vx * (time - t0);
+		}
+
+		private double yAt(double time) {
+			return y0 + vy * (time - t0);
+		}
+
+		/**
+		 * Returns true if the host's motion is not what it was when it was
+		 * last read
+		 */
+		private boolean hasChanged(double now) {
+			DTNHost host = ni.getHost();
+			if (host.getNrofWaypointChanges() != nrofWaypointChanges ||
+					host.isActive() != active ||
+					ni.getTransmitRange() != range) {
+				return true;
+			}
+			Coord c = host.getLocation();
+			double dx = xAt(now) - c.getX();
+			double dy = yAt(now) - c.getY();
+			return dx*dx + dy*dy > LOCATION_TOLERANCE * LOCATION_TOLERANCE;
+		}
+
+		/**
+		 * Reads the host's current location and velocity
+		 */
+		private void readMotion(double now) {
+			DTNHost host = ni.getHost();
+			Coord c = host.getLocation();
+			Coord dest = host.getDestination();
+			this.x0 = c.getX();
+			this.y0 = c.getY();
+			this.t0 = now;
+			this.vx = 0;
+			this.vy = 0;
+			this.legEnd = Double.MAX_VALUE;
+			this.range = ni.getTransmitRange();
+			this.active = host.isActive();
+			this.nrofWaypointChanges = host.getNrofWaypointChanges();
+
+			if (active && dest != null && host.getSpeed() > 0) {
+				double distance = c.distance(dest);
+				if (distance > 0) {
+					vx = host.getSpeed() * (dest.getX() - x0) / distance;
+					vy = host.getSpeed() * (dest.getY() - y0) / distance;
+					// extended like the ranges, so that a window never ends
+					// before the host has picked its next waypoint
+					legEnd = now + (distance + RANGE_MARGIN) / host.getSpeed();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Time window in which two interfaces are within range of each other.
+	 * The window is valid for as long as neither host changes its motion.
+	 */
+	private static class Window {
+		private final Mover a;
+		private final Mover b;
+		private final int generationA;
+		private final int generationB;
+		private final double start;
+		private final double end;
+
+		private Window(Mover a, Mover b, double start, double end) {
+			this.a = a;
+			this.b = b;
+			this.generationA = a.generation;
+			this.generationB = b.generation;
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean isValid() {
+			return a.generation == generationA && b.generation == generationB;
+		}
+
+		private void open() {
+			a.open.add(this);
+			b.open.add(this);
+		}
+
+		private Mover other(Mover m) {
+			return m == a ? b : a;
+		}
+	}
+}
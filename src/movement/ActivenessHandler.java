@@ -73,7 +73,7 @@ public class ActivenessHandler {
 	 * Returns true if node should be active at the moment
 	 * @return true if node should be active at the moment
 	 */
-	public boolean isActive() {
+	public synchronized boolean isActive() {
 		if (this.activeTimes == null) {
 			return true; // no inactive times 
 		}
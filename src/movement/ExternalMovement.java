@@ -5,7 +5,9 @@
 package movement;
 
 import input.ExternalMovementReader;
+import input.Prefetcher;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -19,7 +21,9 @@ import core.SimClock;
 import core.Tuple;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. By default the
+ * location data is read in a background thread ahead of its use (see
+ * {@link #PREFETCH_S}).
  */
 public class ExternalMovement extends MovementModel {
 	/** Namespace for settings */
@@ -28,10 +32,19 @@ public class ExternalMovement extends MovementModel {
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** read location data in a background thread -setting id ({@value}).
+	 * Boolean valued; default = true */
+	public static final String PREFETCH_S = "prefetch";
 	
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
 	private static ExternalMovementReader reader;
+	/** reader of the time stamps and their locations in the background
+	 * (null if they are read when needed) */
+	private static Prefetcher<Tuple<Double, List<Tuple<String, Coord>>>>
+		prefetcher;
+	/** time stamp of the last locations that were read */
+	private static double lastReadTime;
 	private static String inputFileName;
 	
 	/** mapping of external id to movement model */
@@ -95,9 +108,32 @@ public class ExternalMovement extends MovementModel {
 					nrofPreload = 1;
 				}
 			}
+			
+			lastReadTime = initTime;
+			if (!s.contains(PREFETCH_S) || s.getBoolean(PREFETCH_S)) {
+				startPrefetching();
+			}
 		}
 	}
 	
+	/**
+	 * Starts reading the locations of the next time stamps in the background
+	 */
+	private static void startPrefetching() {
+		prefetcher = new Prefetcher<Tuple<Double, List<Tuple<String, Coord>>>>(
+				"Prefetcher of " + inputFileName) {
+			protected Tuple<Double, List<Tuple<String, Coord>>> read() {
+				List<Tuple<String, Coord>> list = reader.readNextMovements();
+				if (list.size() == 0) {
+					return null;
+				}
+				return new Tuple<Double, List<Tuple<String, Coord>>>(
+						reader.getLastTimeStamp(), list);
+			}
+		};
+		prefetcher.start();
+	}
+	
 	/** 
 	 * Copy constructor. Gives out location data for the new node from 
 	 * location queue.
@@ -243,8 +279,22 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+		List<Tuple<String, Coord>> list;
+		if (prefetcher != null) {
+			Tuple<Double, List<Tuple<String, Coord>>> moves = prefetcher.next();
+			if (moves != null) {
+				lastReadTime = moves.getKey();
+				list = moves.getValue();
+			}
+			else {
+				list = new ArrayList<Tuple<String, Coord>>(0);
+			}
+		}
+		else {
+			list = reader.readNextMovements();
+			lastReadTime = reader.getLastTimeStamp();
+		}
+		double time = lastReadTime;
 		
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
@@ -271,6 +321,7 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public static void reset() {
 		idMapping = null;
+		prefetcher = null; // stopped by Prefetcher.reset()
 	}
 
 }
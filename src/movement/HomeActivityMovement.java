@@ -57,7 +57,7 @@ public class HomeActivityMovement extends MapBasedMovement
 	public HomeActivityMovement(Settings settings) {
 		super(settings);
 		distance = 100;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new DijkstraPathFinder(getMap(), null);
 		mode = WALKING_HOME_MODE;	
 		
 		String homeLocationsFile = null;
@@ -9,14 +9,18 @@ import input.WKTMapReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import movement.map.MapCache;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
@@ -55,6 +59,21 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 	
+	/**
+	 * Maximum number of shortest paths cached per map -setting id ({@value}).
+	 * The cache is shared by all the path finders using the same map and the
+	 * least recently used paths are dropped first. Default = 0 (no caching).
+	 */
+	public static final String ROUTE_CACHE_S = "routeCacheSize";
+	
+	/**
+	 * Use A* instead of Dijkstra for shortest paths -setting id ({@value}).
+	 * Boolean. A* uses the euclidean distance to the destination as the
+	 * heuristic; it finds equally short paths but, where several exist, not
+	 * necessarily the same ones as Dijkstra. Default = false.
+	 */
+	public static final String A_STAR_S = "aStar";
+	
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
 	
@@ -73,6 +92,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		super(settings);
 		map = readMap();
 		readOkMapNodeTypes(settings);
+		readPathFinderSettings();
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -90,6 +110,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		map = newMap;
 		this.nrofMapFilesRead = nrofMaps;
 		readOkMapNodeTypes(settings);
+		readPathFinderSettings();
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -122,6 +143,20 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		}		
 	}
 	
+	/**
+	 * Configures the shortest path search of the map's graph (if any of the
+	 * path finder settings are defined)
+	 */
+	private void readPathFinderSettings() {
+		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
+		if (settings.contains(ROUTE_CACHE_S)) {
+			map.getGraph().setRouteCacheSize(settings.getInt(ROUTE_CACHE_S));
+		}
+		if (settings.contains(A_STAR_S)) {
+			map.getGraph().setAStar(settings.getBoolean(A_STAR_S));
+		}
+	}
+	
 	/**
 	 * Copyconstructor.
 	 * @param mbm The MapBasedMovement object to base the new object to 
@@ -259,13 +294,14 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/**
 	 * Reads a sim map from location set to the settings, mirrors the map and
-	 * moves its upper left corner to origo.
+	 * moves its upper left corner to origo. Maps that have been read before
+	 * (also by other runs of the JVM) are built from the {@link MapCache}
+	 * instead of parsing the files again.
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
-		WKTMapReader r = new WKTMapReader(true);
 		
 		if (cachedMap == null) {
 			cachedMapFiles = new ArrayList<String>(); // no cache present
@@ -283,22 +319,33 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
-		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			cachedMapFiles.add(settings.getSetting(FILE_S + i));
+		}
+		nrofMapFilesRead = nrofMapFiles;
 
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+		synchronized (MapCache.class) { // parse the files only once
+			MapCache.Snapshot snapshot = MapCache.get(cachedMapFiles);
+			if (snapshot != null) {
+				simMap = buildMap(snapshot);
+			}
+			else {
+				WKTMapReader r = new WKTMapReader(true);
+				try {
+					for (int i = 1; i <= nrofMapFiles; i++ ) {
+						r.addPaths(new File(cachedMapFiles.get(i-1)), i);
+					}
+				} catch (IOException e) {
+					throw new SimError(e.toString(),e);
+				}
+				simMap = r.getMap();
+				checkMapConnectedness(simMap.getNodes());
+				MapCache.put(new ArrayList<String>(cachedMapFiles),
+						takeSnapshot(simMap));
 			}
-			
-			nrofMapFilesRead = nrofMapFiles;
-		} catch (IOException e) {
-			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
 		// mirrors the map (y' = -y) and moves its upper left corner to origo
 		simMap.mirror();
 		Coord offset = simMap.getMinBound().clone();		
@@ -309,6 +356,69 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return simMap;
 	}
 	
+	/**
+	 * Takes a snapshot of a map for the {@link MapCache}
+	 * @param simMap The map (as read from the files)
+	 * @return The snapshot
+	 */
+	private static MapCache.Snapshot takeSnapshot(SimMap simMap) {
+		List<MapNode> nodes = simMap.getNodes();
+		int n = nodes.size();
+		Map<MapNode, Integer> indexes = new HashMap<MapNode, Integer>();
+		for (int i = 0; i < n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+
+		double[] x = new double[n];
+		double[] y = new double[n];
+		int[] types = new int[n];
+		int[][] neighbors = new int[n][];
+		for (int i = 0; i < n; i++) {
+			MapNode node = nodes.get(i);
+			x[i] = node.getLocation().getX();
+			y[i] = node.getLocation().getY();
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if (node.isType(t)) {
+					types[i] |= 1 << t;
+				}
+			}
+			List<MapNode> nodeNeighbors = node.getNeighbors();
+			neighbors[i] = new int[nodeNeighbors.size()];
+			for (int j = 0; j < neighbors[i].length; j++) {
+				neighbors[i][j] = indexes.get(nodeNeighbors.get(j));
+			}
+		}
+		return new MapCache.Snapshot(x, y, types, neighbors);
+	}
+
+	/**
+	 * Builds a map from a snapshot. The nodes of the map are in the same
+	 * order as in the map the snapshot was taken of.
+	 * @param snapshot The snapshot
+	 * @return A new map
+	 */
+	private static SimMap buildMap(MapCache.Snapshot snapshot) {
+		int n = snapshot.x.length;
+		MapNode[] nodes = new MapNode[n];
+		Map<Coord, MapNode> nodesMap = new LinkedHashMap<Coord, MapNode>();
+		for (int i = 0; i < n; i++) {
+			Coord c = new Coord(snapshot.x[i], snapshot.y[i]);
+			nodes[i] = new MapNode(c);
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if ((snapshot.types[i] & (1 << t)) != 0) {
+					nodes[i].addType(t);
+				}
+			}
+			nodesMap.put(c, nodes[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			for (int neighbor : snapshot.neighbors[i]) {
+				nodes[i].addNeighbor(nodes[neighbor]);
+			}
+		}
+		return new SimMap(nodesMap);
+	}
+
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
@@ -86,7 +86,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = settings.getDouble(OFFICE_MAX_WAIT_TIME_SETTING);
 		
 		startedWorkingTime = -1;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new DijkstraPathFinder(getMap(), null);
 		mode = WALKING_TO_OFFICE_MODE;
 		
 		String officeLocationsFile = null;
@@ -1,228 +1,307 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. Searches are
+ * done on the compiled {@link MapGraph} of the map with primitive arrays and
+ * an indexed binary heap. Ties between nodes with the same distance are
+ * broken by {@link MapNode#compareTo(MapNode)}. Optionally (see
+ * {@link MapGraph#setAStar(boolean)}) the search is guided with the
+ * euclidean distance to the destination (A*) and the found paths are cached
+ * in the graph (see {@link MapGraph#setRouteCacheSize(int)}).
  */
 public class DijkstraPathFinder {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	/** The map whose graph is searched (null if no map was given) */
+	private SimMap map;
+	/** The graph the search arrays are for */
+	private MapGraph graph;
 
 	private int [] okMapNodes;
-	
+	/** mask of the OK map node types (see {@link MapGraph#toOkMask(int[])})*/
+	private int okMask;
+	/** OK status of the graph's nodes or null if all nodes are OK */
+	private boolean [] okNodes;
+
+	/** Distances of the nodes from the source node */
+	private double [] distances;
+	/** Previous node on the shortest path (by id) */
+	private int [] prevNodes;
+	/** Search number of the last search in which the node was reached */
+	private int [] reached;
+	/** Search number of the last search in which the node was visited */
+	private int [] visited;
+	/** Number of the current search */
+	private int searchNumber;
+
+	/** Binary heap of node ids of unvisited nodes discovered so far */
+	private int [] heap;
+	/** Position of each node in the heap */
+	private int [] heapPos;
+	/** Sort keys of the nodes in the heap */
+	private double [] keys;
+	private int heapSize;
+
 	/**
 	 * Constructor.
+	 * @param map The map whose nodes the paths are searched between
 	 * @param okMapNodes The map node types that are OK for paths or null if
 	 * all nodes are OK
 	 */
-	public DijkstraPathFinder(int [] okMapNodes) {
+	public DijkstraPathFinder(SimMap map, int [] okMapNodes) {
 		super();
+		this.map = map;
 		this.okMapNodes = okMapNodes;
+		this.okMask = MapGraph.toOkMask(okMapNodes);
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Constructor for finding paths without a map. The graph is compiled
+	 * from the nodes that are reachable from the source of the first search
+	 * (and compiled again if a search starts outside of it).
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-		
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	public DijkstraPathFinder(int [] okMapNodes) {
+		this(null, okMapNodes);
 	}
-	
+
 	/**
 	 * Finds and returns a shortest path between two map nodes
 	 * @param from The source of the path
 	 * @param to The destination of the path
 	 * @return a shortest path between the source and destination nodes in
-	 * a list of MapNodes or an empty list if such path is not available
+	 * a list of MapNodes or an empty list if such path is not available. If
+	 * route caching is enabled, the list may be shared and must not be
+	 * modified.
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
-		
 		if (from.compareTo(to) == 0) { // source and destination are the same
+			List<MapNode> path = new ArrayList<MapNode>(1);
 			path.add(from); // return a list containing only source node
 			return path;
 		}
-		
-		initWith(from);
-		MapNode node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
+
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
+		int source = getGraph(from).getId(from);
+		int destination = graph.getId(to);
+		if (source < 0 || destination < 0) {
+			return new ArrayList<MapNode>(0); // not in the graph
+		}
+
+		List<MapNode> path = graph.getCachedPath(source, destination, okMask);
+		if (path != null) {
+			return path;
+		}
+
+		path = search(source, destination, graph.isAStar());
+		if (graph.isCaching()) {
+			path = Collections.unmodifiableList(path);
+			graph.cachePath(source, destination, okMask, path);
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the graph to search in and (re)initializes the search arrays if
+	 * the graph has changed
+	 * @param from The source node of the search
+	 * @return The graph
+	 */
+	private MapGraph getGraph(MapNode from) {
+		MapGraph g;
+		if (map != null) {
+			g = map.getGraph();
+		}
+		else if (graph == null || graph.getId(from) < 0) {
+			g = new MapGraph(getReachableNodes(from));
+		}
+		else {
+			g = graph;
+		}
+
+		if (g != graph) {
+			int n = g.size();
+			this.graph = g;
+			this.okNodes = g.getOkNodes(okMask, okMapNodes);
+			this.distances = new double[n];
+			this.prevNodes = new int[n];
+			this.reached = new int[n];
+			this.visited = new int[n];
+			this.heap = new int[n];
+			this.heapPos = new int[n];
+			this.keys = new double[n];
+			this.searchNumber = 0;
+		}
+		return g;
+	}
+
+	/**
+	 * Searches a shortest path between two nodes of the graph.
+	 * @param source Id of the source node
+	 * @param destination Id of the destination node
+	 * @param aStar If true, the euclidean distance to the destination is
+	 * added to the sort keys of the nodes
+	 * @return The path or an empty list if there is no path
+	 */
+	private List<MapNode> search(int source, int destination, boolean aStar) {
+		searchNumber++;
+		heapSize = 0;
+		distances[source] = 0;
+		reached[source] = searchNumber;
+		push(source, aStar ? graph.getDistance(source, destination) : 0);
+
+		int node = -1;
+		// always take the node with the smallest key
+		while (heapSize > 0) {
+			node = pop();
+			if (node == destination) {
 				break; // we found the destination -> no need to search further
 			}
-			
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
-		}
-		
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to); 
-			MapNode prev = prevNodes.get(to); 
-			while (prev != from) { 
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
-			}
-			
-			path.add(0, from); // finally put the source node to first node
+
+			visited[node] = searchNumber; // mark the node as visited
+			relax(node, destination, aStar);
+		}
+
+		List<MapNode> path = new ArrayList<MapNode>();
+		if (node != destination) {
+			return path; // such path wasn't available
+		}
+
+		for (int n = destination; n != source; n = prevNodes[n]) {
+			path.add(graph.getNode(n));
 		}
-		
+		path.add(graph.getNode(source));
+		Collections.reverse(path);
 		return path;
 	}
-	
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
+	 * @param destination The destination node of the search
+	 * @param aStar Are the keys A* keys
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
+	private void relax(int node, int destination, boolean aStar) {
+		double nodeDist = distances[node];
+		for (int e = graph.getFirstEdge(node), end = graph.getFirstEdge(node+1);
+				e < end; e++) {
+			int n = graph.getEdgeTarget(e);
+			if (visited[n] == searchNumber) {
 				continue; // skip visited nodes
 			}
-			
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
+
+			if (okNodes != null && !okNodes[n]) {
 				continue; // skip nodes that are not OK
 			}
-			
+
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
+			double nDist = nodeDist + graph.getEdgeLength(e);
+
+			if (reached[n] != searchNumber) { // first path to the node
+				reached[n] = searchNumber;
+				prevNodes[n] = node;
+				distances[n] = nDist;
+				push(n, aStar ? nDist + graph.getDistance(n, destination)
+						: nDist);
+			}
+			else if (distances[n] > nDist) { // stored distance > found dist?
+				prevNodes[n] = node;
+				distances[n] = nDist;
+				keys[n] = aStar ? nDist + graph.getDistance(n, destination)
+						: nDist;
+				siftUp(heapPos[n]);
 			}
 		}
 	}
-	
+
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Returns true if node a comes before node b in the heap order (by key
+	 * and then by id)
 	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private boolean before(int a, int b) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
 	}
-	
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
+
+	private void push(int node, double key) {
+		keys[node] = key;
+		heap[heapSize] = node;
+		heapPos[node] = heapSize;
+		siftUp(heapSize++);
 	}
-	
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+
+	private int pop() {
+		int top = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPos[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(node, heap[parent])) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			heap[i] = heap[parent];
+			heapPos[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = node;
+		heapPos[node] = i;
+	}
+
+	private void siftDown(int i) {
+		int node = heap[i];
+		int half = heapSize >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+				child++;
 			}
-			else {
-				return node1.compareTo(node2);
+			if (!before(heap[child], node)) {
+				break;
 			}
+			heap[i] = heap[child];
+			heapPos[heap[i]] = i;
+			i = child;
 		}
+		heap[i] = node;
+		heapPos[node] = i;
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Returns the nodes that are reachable from a node
+	 * @param node The node
+	 * @return The node and all the nodes reachable from it
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
+	private static Set<MapNode> getReachableNodes(MapNode node) {
+		Set<MapNode> reachable = new HashSet<MapNode>();
+		Queue<MapNode> unvisited = new LinkedList<MapNode>();
+		reachable.add(node);
+		unvisited.add(node);
+		while (!unvisited.isEmpty()) {
+			for (MapNode n : unvisited.poll().getNeighbors()) {
+				if (reachable.add(n)) {
+					unvisited.add(n);
+				}
 			}
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+		return reachable;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of parsed map files shared by all simulation runs of the JVM, also
+ * by runs that are executed in parallel in their own
+ * {@link core.SimContext}s. A map is stored as plain arrays that are never
+ * modified after they have been put to the cache, and every run builds a
+ * {@link SimMap} of its own from them, so the runs can't affect each other.
+ * <P>
+ * This class is shared by the contexts (see
+ * {@link core.SimContext#SHARED_CLASSES}), so it must not refer to other
+ * simulator classes.
+ * </P>
+ */
+public final class MapCache {
+	private static final Map<List<String>, Snapshot> snapshots =
+		new HashMap<List<String>, Snapshot>();
+
+	private MapCache() {}
+
+	/**
+	 * Returns the cached map of map files. The callers should hold the lock
+	 * of this class from the lookup until a missing map has been put to the
+	 * cache, so that the files are parsed only once.
+	 * @param files Paths of the map files
+	 * @return The map or null if it is not cached
+	 */
+	public static synchronized Snapshot get(List<String> files) {
+		return snapshots.get(files);
+	}
+
+	/**
+	 * Puts a map to the cache
+	 * @param files Paths of the map files (must not be modified afterwards)
+	 * @param snapshot The map
+	 */
+	public static synchronized void put(List<String> files, Snapshot snapshot) {
+		snapshots.put(files, snapshot);
+	}
+
+	/**
+	 * Nodes of a map as it was read from the map files. None of the arrays
+	 * may be modified.
+	 */
+	public static final class Snapshot {
+		/** coordinates of the nodes */
+		public final double[] x, y;
+		/** type bit masks of the nodes */
+		public final int[] types;
+		/** indexes of the neighbors of the nodes */
+		public final int[][] neighbors;
+
+		/**
+		 * Creates a snapshot
+		 * @param x The x coordinates of the nodes
+		 * @param y The y coordinates of the nodes
+		 * @param types The type bit masks of the nodes
+		 * @param neighbors The indexes of the neighbors of the nodes
+		 */
+		public Snapshot(double[] x, double[] y, int[] types,
+				int[][] neighbors) {
+			this.x = x;
+			this.y = y;
+			this.types = types;
+			this.neighbors = neighbors;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, array based (compressed sparse row) form of the graph of a set
+ * of map nodes for path finding. Every node gets an integer id and the
+ * neighbors of node <code>i</code> are stored at indexes
+ * <code>[firstEdge[i], firstEdge[i+1])</code> of the edge arrays, in the
+ * same order as in {@link MapNode#getNeighbors()}. The ids are assigned in
+ * the {@link MapNode#compareTo(MapNode)} order of the nodes so that breaking
+ * ties by id is the same as breaking them by node.
+ * <P>
+ * The graph also holds the (optional) bounded LRU cache of shortest paths
+ * that is shared by all the path finders using the same map.
+ * </P>
+ * The graph must be recompiled if the nodes, their locations or their
+ * neighbors change.
+ * @see DijkstraPathFinder
+ */
+public class MapGraph {
+	/** Ok-types mask of path finders that accept all nodes */
+	public static final int ALL_TYPES_OK = -1;
+
+	private final MapNode[] nodes;
+	private final Map<MapNode, Integer> ids;
+	private final int[] firstEdge;
+	private final int[] edgeTarget;
+	private final double[] edgeLength;
+	private final double[] x;
+	private final double[] y;
+
+	/** which nodes are OK, for each ok-types mask requested so far */
+	private final Map<Integer, boolean[]> okNodes;
+	/** cached shortest paths (null if caching is disabled) */
+	private LinkedHashMap<RouteKey, List<MapNode>> routeCache;
+	private int routeCacheSize;
+	private boolean aStar;
+
+	/**
+	 * Compiles the graph of the given nodes. Neighbors that are not among the
+	 * nodes are left out.
+	 * @param mapNodes The nodes of the graph
+	 */
+	public MapGraph(Collection<MapNode> mapNodes) {
+		List<MapNode> sorted = new ArrayList<MapNode>(mapNodes);
+		Collections.sort(sorted);
+		int n = sorted.size();
+
+		this.nodes = sorted.toArray(new MapNode[n]);
+		this.ids = new HashMap<MapNode, Integer>(2 * n);
+		this.x = new double[n];
+		this.y = new double[n];
+		for (int i = 0; i < n; i++) {
+			ids.put(nodes[i], i);
+			x[i] = nodes[i].getLocation().getX();
+			y[i] = nodes[i].getLocation().getY();
+		}
+
+		int nrofEdges = 0;
+		for (MapNode node : nodes) {
+			nrofEdges += node.getNeighbors().size();
+		}
+		this.firstEdge = new int[n + 1];
+		int[] targets = new int[nrofEdges];
+		double[] lengths = new double[nrofEdges];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			firstEdge[i] = e;
+			for (MapNode neighbor : nodes[i].getNeighbors()) {
+				Integer id = ids.get(neighbor);
+				if (id == null) {
+					continue;
+				}
+				targets[e] = id;
+				lengths[e] = nodes[i].getLocation().distance(
+						neighbor.getLocation());
+				e++;
+			}
+		}
+		firstEdge[n] = e;
+		this.edgeTarget = e == nrofEdges ? targets :
+			Arrays.copyOf(targets, e);
+		this.edgeLength = e == nrofEdges ? lengths :
+			Arrays.copyOf(lengths, e);
+
+		this.okNodes = new HashMap<Integer, boolean[]>();
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes in the graph
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the id of a node
+	 * @param node The node
+	 * @return The id of the node or -1 if the node is not in the graph
+	 */
+	public int getId(MapNode node) {
+		Integer id = ids.get(node);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Returns the node with the given id
+	 * @param id The id
+	 * @return The node
+	 */
+	public MapNode getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * Returns the index of the first edge of a node. The edges of node
+	 * <code>id</code> end at <code>getFirstEdge(id + 1)</code>.
+	 * @param id Id of the node
+	 * @return Index of the node's first edge
+	 */
+	int getFirstEdge(int id) {
+		return firstEdge[id];
+	}
+
+	/**
+	 * Returns the id of the node an edge leads to
+	 * @param edge Index of the edge
+	 * @return Id of the edge's target node
+	 */
+	int getEdgeTarget(int edge) {
+		return edgeTarget[edge];
+	}
+
+	/**
+	 * Returns the (euclidean) length of an edge
+	 * @param edge Index of the edge
+	 * @return Length of the edge
+	 */
+	double getEdgeLength(int edge) {
+		return edgeLength[edge];
+	}
+
+	/**
+	 * Returns the euclidean distance between two nodes
+	 * @param id1 Id of the first node
+	 * @param id2 Id of the second node
+	 * @return The distance
+	 */
+	double getDistance(int id1, int id2) {
+		double dx = x[id1] - x[id2];
+		double dy = y[id1] - y[id2];
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Converts map node types to an ok-types mask
+	 * @param okMapNodes The types or null if all nodes are OK
+	 * @return The mask
+	 */
+	public static int toOkMask(int[] okMapNodes) {
+		if (okMapNodes == null) {
+			return ALL_TYPES_OK;
+		}
+		int mask = 0;
+		for (int type : okMapNodes) {
+			mask |= 1 << type;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns which nodes are OK for paths of path finders with the given
+	 * types. The result is computed once per mask.
+	 * @param okMask The ok-types mask (see {@link #toOkMask(int[])})
+	 * @param okMapNodes The types the mask was computed from
+	 * @return OK status of each node by id or null if all nodes are OK
+	 */
+	synchronized boolean[] getOkNodes(int okMask, int[] okMapNodes) {
+		if (okMask == ALL_TYPES_OK) {
+			return null;
+		}
+		boolean[] ok = okNodes.get(okMask);
+		if (ok == null) {
+			ok = new boolean[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				ok[i] = nodes[i].isType(okMapNodes);
+			}
+			okNodes.put(okMask, ok);
+		}
+		return ok;
+	}
+
+	/**
+	 * Sets the maximum number of paths in the route cache. Setting a size
+	 * smaller than the current number of cached paths drops the least
+	 * recently used ones.
+	 * @param size The maximum number of paths or 0 to disable caching
+	 */
+	public synchronized void setRouteCacheSize(int size) {
+		this.routeCacheSize = size;
+		if (size <= 0) {
+			this.routeCache = null;
+			return;
+		}
+		if (routeCache == null) {
+			this.routeCache = new LinkedHashMap<RouteKey, List<MapNode>>(
+					16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				protected boolean removeEldestEntry(
+						Map.Entry<RouteKey, List<MapNode>> eldest) {
+					return size() > routeCacheSize;
+				}
+			};
+		}
+		else {
+			while (routeCache.size() > size) {
+				RouteKey eldest = routeCache.keySet().iterator().next();
+				routeCache.remove(eldest);
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of paths in the route cache
+	 * @return the maximum number of paths (0 if caching is disabled)
+	 */
+	public synchronized int getRouteCacheSize() {
+		return routeCacheSize;
+	}
+
+	/**
+	 * Sets whether paths are searched with A* (using the euclidean distance
+	 * to the destination as the heuristic) instead of plain Dijkstra. Both
+	 * find shortest paths but, when there are several, not necessarily the
+	 * same one.
+	 * @param aStar True for A*, false for Dijkstra
+	 */
+	public synchronized void setAStar(boolean aStar) {
+		if (this.aStar != aStar && routeCache != null) {
+			routeCache.clear();
+		}
+		this.aStar = aStar;
+	}
+
+	/**
+	 * Returns true if paths are searched with A*
+	 * @return true if paths are searched with A*
+	 */
+	public synchronized boolean isAStar() {
+		return aStar;
+	}
+
+	/**
+	 * Returns a cached path
+	 * @param from Id of the source node
+	 * @param to Id of the destination node
+	 * @param okMask Ok-types mask of the path finder
+	 * @return The path or null if it is not in the cache
+	 */
+	synchronized List<MapNode> getCachedPath(int from, int to, int okMask) {
+		if (routeCache == null) {
+			return null;
+		}
+		return routeCache.get(new RouteKey(from, to, okMask));
+	}
+
+	/**
+	 * Puts a path to the cache (if caching is enabled)
+	 * @param from Id of the source node
+	 * @param to Id of the destination node
+	 * @param okMask Ok-types mask of the path finder
+	 * @param path The path (must not be modified after this)
+	 */
+	synchronized void cachePath(int from, int to, int okMask,
+			List<MapNode> path) {
+		if (routeCache != null) {
+			routeCache.put(new RouteKey(from, to, okMask), path);
+		}
+	}
+
+	/**
+	 * Returns true if route caching is enabled
+	 * @return true if route caching is enabled
+	 */
+	synchronized boolean isCaching() {
+		return routeCache != null;
+	}
+
+	/**
+	 * Key of the route cache
+	 */
+	private static class RouteKey {
+		private final int from;
+		private final int to;
+		private final int okMask;
+
+		public RouteKey(int from, int to, int okMask) {
+			this.from = from;
+			this.to = to;
+			this.okMask = okMask;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey k = (RouteKey)o;
+			return from == k.from && to == k.to && okMask == k.okMask;
+		}
+
+		public int hashCode() {
+			return (from * 31 + to) * 31 + okMask;
+		}
+	}
+}
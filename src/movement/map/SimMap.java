@@ -28,6 +28,8 @@ public class SimMap implements Serializable {
 	
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** compiled graph for path finding (null if not compiled yet) */
+	private transient MapGraph graph;
 	
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -45,6 +47,19 @@ public class SimMap implements Serializable {
 		return this.nodes;
 	}
 	
+	/**
+	 * Returns the compiled graph of the map for path finding. The graph is
+	 * compiled at the first call and again after the map has been
+	 * translated or mirrored.
+	 * @return The compiled graph of the map
+	 */
+	public synchronized MapGraph getGraph() {
+		if (graph == null) {
+			graph = new MapGraph(nodes);
+		}
+		return graph;
+	}
+
 	/**
 	 * Returns a MapNode at given coordinates or null if there's no MapNode
 	 * in the location of the coordinate
@@ -111,6 +126,7 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 		
 		needsRehash = true;
+		invalidateGraph();
 	}
 	
 	/**
@@ -127,6 +143,21 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		invalidateGraph();
+	}
+	
+	/**
+	 * Recompiles the graph, if it has been compiled, after the node
+	 * coordinates have changed. The cached routes are dropped but the route
+	 * cache size and the search settings are kept.
+	 */
+	private synchronized void invalidateGraph() {
+		if (graph != null) {
+			MapGraph old = graph;
+			graph = new MapGraph(nodes);
+			graph.setRouteCacheSize(old.getRouteCacheSize());
+			graph.setAStar(old.isAStar());
+		}
 	}
 	
 	/**
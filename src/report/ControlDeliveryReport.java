@@ -0,0 +1,111 @@
+package report;
+
+import core.DTNHost;
+import core.Settings;
+import core.SimClock;
+import core.UpdateListener;
+import routing.KDC.ControlDelivery;
+
+import java.util.List;
+
+/**
+ * Reports the buffer occupancy and the wall-clock time of a run together
+ * with the KDC control message delivery mode (see {@link ControlDelivery}).
+ * Running the same scenario with
+ * <code>PublishAndSubscriberRouting.broadcastControl</code> set to true and
+ * false gives the comparison between world-wide broadcast and addressed
+ * delivery of the control messages.
+ * <p>
+ * Every snapshot line has the format:
+ * <p>
+ * <code>simTime wallClockSeconds avgOccupancy% avgNrofMessages</code>
+ * </p>
+ */
+public class ControlDeliveryReport extends Report implements UpdateListener {
+    /**
+     * Snapshot interval -setting id ({@value}). Defines how often (simulated
+     * seconds) a new snapshot of the buffers is taken.
+     */
+    public static final String SNAPSHOT_INTERVAL_S = "occupancyInterval";
+    /** Default value for the snapshot interval */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 3600;
+
+    private final int interval;
+    private final long startNanos;
+    private double lastRecord = Double.MIN_VALUE;
+
+    private int nrofSnapshots = 0;
+    private double occupancySum = 0;
+    private double peakOccupancy = 0;
+    private double messagesSum = 0;
+    private int peakMessages = 0;
+
+    public ControlDeliveryReport() {
+        super();
+        Settings settings = getSettings();
+        if (settings.contains(SNAPSHOT_INTERVAL_S)) {
+            this.interval = settings.getInt(SNAPSHOT_INTERVAL_S);
+        } else {
+            this.interval = DEFAULT_SNAPSHOT_INTERVAL;
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void updated(List<DTNHost> hosts) {
+        if (isWarmup() || hosts.isEmpty()) {
+            return;
+        }
+        if (SimClock.getTime() - lastRecord < interval) {
+            return;
+        }
+        lastRecord = SimClock.getTime();
+
+        double occupancy = 0;
+        int messages = 0;
+        for (DTNHost h : hosts) {
+            occupancy += Math.min(h.getBufferOccupancy(), 100.0);
+            int n = h.getNrofMessages();
+            messages += n;
+            peakMessages = Math.max(peakMessages, n);
+        }
+        double avgOccupancy = occupancy / hosts.size();
+        double avgMessages = (double) messages / hosts.size();
+
+        nrofSnapshots++;
+        occupancySum += avgOccupancy;
+        messagesSum += avgMessages;
+        peakOccupancy = Math.max(peakOccupancy, avgOccupancy);
+
+        write(format(SimClock.getTime()) + " " + format(getWallClockTime()) +
+                " " + format(avgOccupancy) + " " + format(avgMessages));
+    }
+
+    /**
+     * Returns the wall-clock time elapsed since the report was created.
+     *
+     * @return Elapsed time in seconds
+     */
+    private double getWallClockTime() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    @Override
+    public void done() {
+        write("-------- Control Message Delivery --------");
+        write("Delivery mode: " + (ControlDelivery.isBroadcast() ? "broadcast" : "addressed"));
+        write("Wall-clock time (s): " + format(getWallClockTime()));
+        write("Snapshots: " + nrofSnapshots);
+        if (nrofSnapshots > 0) {
+            write("Avg buffer occupancy (%): " + format(occupancySum / nrofSnapshots));
+            write("Peak avg buffer occupancy (%): " + format(peakOccupancy));
+            write("Avg messages per host: " + format(messagesSum / nrofSnapshots));
+        } else {
+            write("Avg buffer occupancy (%): " + NAN);
+            write("Peak avg buffer occupancy (%): " + NAN);
+            write("Avg messages per host: " + NAN);
+        }
+        write("Max messages in one buffer: " + peakMessages);
+        super.done();
+    }
+}
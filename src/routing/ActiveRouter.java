@@ -7,6 +7,9 @@ package routing;
 import java.util.*;
 
 import core.*;
+import routing.util.EvictionIndex;
+import routing.util.EvictionPolicy;
+import routing.util.ExpiryQueue;
 import routing.util.TupleDe;
 
 /**
@@ -21,6 +24,15 @@ public abstract class ActiveRouter extends MessageRouter {
      * already has it, the message is deleted from buffer. Default=false.
      */
     public static final String DELETE_DELIVERED_S = "deleteDelivered";
+    /**
+     * Periodic TTL check -setting id ({@value}). Boolean valued.
+     * If set to true, the buffer is scanned every
+     * {@link #TTL_CHECK_INTERVAL} seconds (when nothing is being sent) and
+     * the messages with less than a minute of TTL left are dropped. If
+     * false, every message is dropped when its TTL runs out (or, if it is
+     * being sent then, when the transfer is over). Default=false.
+     */
+    public static final String PERIODIC_TTL_CHECK_S = "periodicTtlCheck";
     /**
      * should messages that final recipient marks as delivered be deleted
      * from message buffer
@@ -43,6 +55,37 @@ public abstract class ActiveRouter extends MessageRouter {
      * sim time when the last TTL check was done
      */
     private double lastTtlCheck;
+    /**
+     * should expired messages be dropped with periodic scans
+     */
+    private boolean periodicTtlCheck;
+    /**
+     * the buffered messages by expiry time (null with periodic TTL checks)
+     */
+    private ExpiryQueue expiryQueue;
+    /**
+     * the expiry queue is rebuilt from the buffer when it has this many
+     * times the buffered messages (plus {@link #MIN_EXPIRY_QUEUE_SIZE})
+     */
+    private static final int EXPIRY_QUEUE_SLACK = 2;
+    /**
+     * size under which the expiry queue is never rebuilt
+     */
+    private static final int MIN_EXPIRY_QUEUE_SIZE = 64;
+    /**
+     * order in which messages are dropped from a full buffer
+     * (see {@link EvictionPolicy#EVICTION_POLICY_S})
+     */
+    private EvictionPolicy evictionPolicy;
+    /**
+     * filter of the messages this router is sending
+     */
+    private final EvictionIndex.MessageFilter sendingFilter =
+            new EvictionIndex.MessageFilter() {
+                public boolean skip(Message m) {
+                    return isSending(m.getId());
+                }
+            };
 
 
     /**
@@ -60,6 +103,13 @@ public abstract class ActiveRouter extends MessageRouter {
             this.deleteDelivered = false;
         }
 
+        if (s.contains(PERIODIC_TTL_CHECK_S)) {
+            this.periodicTtlCheck = s.getBoolean(PERIODIC_TTL_CHECK_S);
+        } else {
+            this.periodicTtlCheck = false;
+        }
+
+        this.evictionPolicy = EvictionPolicy.getPolicy(s);
     }
 
     /**
@@ -70,6 +120,8 @@ public abstract class ActiveRouter extends MessageRouter {
     protected ActiveRouter(ActiveRouter r) {
         super(r);
         this.deleteDelivered = r.deleteDelivered;
+        this.periodicTtlCheck = r.periodicTtlCheck;
+        this.evictionPolicy = r.evictionPolicy;
     }
 
     @Override
@@ -77,6 +129,36 @@ public abstract class ActiveRouter extends MessageRouter {
         super.init(host, mListeners);
         this.sendingConnections = new ArrayList<Connection>(1);
         this.lastTtlCheck = 0;
+        this.expiryQueue = this.periodicTtlCheck ? null : new ExpiryQueue();
+        /* index the buffer from the start so that messages with equal
+         * eviction keys are dropped in the order they were added */
+        getEvictionIndex(this.evictionPolicy);
+    }
+
+    /**
+     * Adds a message to the buffer. The message is put to the expiry queue
+     * only if no message with the same ID was buffered already; a replica
+     * that replaces a buffered one expires at the same time.
+     */
+    @Override
+    public void addToMessages(Message m, boolean newMessage) {
+        boolean buffered = this.expiryQueue != null &&
+                getMessage(m.getId()) != null;
+        super.addToMessages(m, newMessage);
+        if (this.expiryQueue == null || buffered) {
+            return;
+        }
+
+        this.expiryQueue.add(m);
+        /* removed messages stay in the queue until they would expire;
+         * rebuild it when they are the majority */
+        if (this.expiryQueue.size() > MIN_EXPIRY_QUEUE_SIZE +
+                EXPIRY_QUEUE_SLACK * getNrofMessages()) {
+            this.expiryQueue.clear();
+            for (Message buf : getMessageCollection()) {
+                this.expiryQueue.add(buf);
+            }
+        }
     }
 
     /**
@@ -236,8 +318,8 @@ public abstract class ActiveRouter extends MessageRouter {
     }
 
     /**
-     * Removes messages from the buffer (oldest first) until
-     * there's enough space for the new message.
+     * Removes messages from the buffer (oldest first, or in the order of the
+     * eviction policy) until there's enough space for the new message.
      *
      * @param size Size of the new message
      *             transferred, the transfer is aborted before message is removed
@@ -265,6 +347,45 @@ public abstract class ActiveRouter extends MessageRouter {
         return true;
     }
 
+    /**
+     * Drops the messages whose TTL has run out. Messages that are being
+     * sent are dropped when the transfer is over.
+     */
+    private void dropDueMessages() {
+        double now = SimClock.getTime();
+        if (this.expiryQueue.nextExpiryTime() > now) {
+            return; // nothing to drop
+        }
+
+        List<Message> beingSent = null;
+        Message m;
+        while ((m = this.expiryQueue.pollExpired(now)) != null) {
+            /* the buffered message may be a replica of the queued one */
+            m = getMessage(m.getId());
+            if (m == null) {
+                continue; // not in the buffer anymore
+            }
+            if (ExpiryQueue.getExpiryTime(m) > now) {
+                this.expiryQueue.add(m); // a different message with the ID
+                continue;
+            }
+            if (isSending(m.getId())) {
+                if (beingSent == null) {
+                    beingSent = new ArrayList<Message>(1);
+                }
+                beingSent.add(m);
+                continue;
+            }
+            deleteMessage(m.getId(), true);
+        }
+
+        if (beingSent != null) {
+            for (Message sent : beingSent) {
+                this.expiryQueue.add(sent); // try again on next update
+            }
+        }
+    }
+
     /**
      * Drops messages whose TTL is less than zero.
      */
@@ -293,7 +414,9 @@ public abstract class ActiveRouter extends MessageRouter {
 
     /**
      * Returns the oldest (by receive time) message in the message buffer
-     * (that is not being sent if excludeMsgBeingSent is true).
+     * (that is not being sent if excludeMsgBeingSent is true). If an
+     * eviction policy is set (see {@link EvictionPolicy#EVICTION_POLICY_S}),
+     * returns the message that the policy drops first instead.
      *
      * @param excludeMsgBeingSent If true, excludes message(s) that are
      *                            being sent from the oldest message check (i.e. if oldest message is
@@ -303,22 +426,8 @@ public abstract class ActiveRouter extends MessageRouter {
      * exludeMsgBeingSent is true)
      */
     protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-        Collection<Message> messages = this.getMessageCollection();
-        Message oldest = null;
-        for (Message m : messages) {
-
-            if (excludeMsgBeingSent && isSending(m.getId())) {
-                continue; // skip the message(s) that router is sending
-            }
-
-            if (oldest == null) {
-                oldest = m;
-            } else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-                oldest = m;
-            }
-        }
-
-        return oldest;
+        return getEvictionIndex(this.evictionPolicy).next(
+                excludeMsgBeingSent ? this.sendingFilter : null);
     }
 
     /**
@@ -598,8 +707,11 @@ public abstract class ActiveRouter extends MessageRouter {
             }
         }
 
+        if (this.expiryQueue != null) {
+            dropDueMessages();
+        }
         /* time to do a TTL check and drop old messages? Only if not sending */
-        if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
+        else if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
                 sendingConnections.size() == 0) {
             dropExpiredMessages();
             lastTtlCheck = SimClock.getTime();
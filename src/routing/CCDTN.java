@@ -10,33 +10,54 @@
 package routing;
 
 import routing.KDC.Broker.GetAllBroker;
+import routing.KDC.RoleDirectory;
+import routing.KDC.Subscriber.InterestProfile;
 import routing.KDC.NAKT.KeyManager;
+import routing.KDC.NAKT.KeyTreeCache;
 import routing.KDC.Subscriber.DecryptUtil;
 import core.*;
 
+import javax.crypto.SecretKey;
 import java.util.*;
 
-import routing.community.Duration;
-import routing.util.TupleDe;
+import routing.community.ContactStats;
 
 public class CCDTN extends ActiveRouter {
 
     // Constant for storing message topics
-    public static final String MESSAGE_TOPICS_S = "topic";
     public static final String MESSAGE_REGISTER_S = "KDC_Register_";
-    public static final String MESSAGE_KEY_ENCRYPTION_S = "KDC_Key_Encryption_";
-    public static final String MESSAGE_KEY_AUTHENTICATION_S = "KDC_Key_Authentication_";
+    /**
+     * Key tree cache size -setting id ({@value}). Integer valued. Maximum
+     * number of NAKT key trees a KDC keeps cached.
+     * Default = {@link KeyTreeCache#DEF_MAX_TREES}.
+     */
+    public static final String KEY_TREE_CACHE_SIZE_S = "keyTreeCacheSize";
+    /**
+     * KDC rekey interval -setting id ({@value}). Double valued. If set, a
+     * KDC replaces its secret and drops its cached key trees every this many
+     * seconds, so the keys handed out after a rekey differ from the earlier
+     * ones. Default = 0 (never rekey).
+     */
+    public static final String REKEY_INTERVAL_S = "rekeyInterval";
 
     public static Map<DTNHost, Integer> kdcLoad;
     public static Map<DTNHost, Integer> numberKeyLoad;
     public static Map<DTNHost, Integer> numberKeyLoadPublisher;
-    // Maps to store connection timestamps and history
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** contact statistics of this host with each peer */
+    protected ContactStats contactStats;
 
     protected KeyManager keyManager;
+    protected KeyTreeCache keyTreeCache;
+    protected int keyTreeCacheSize;
+    protected double rekeyInterval;
+    /** time of the next KDC rekey */
+    private double nextRekey;
     protected GetAllBroker getAllBroker;
     protected MessageRegistryImpl messageRegistry;
+    /** IDs of the messages this host has been credited with as a subscriber */
+    private Set<String> deliveredContent;
+    /** delivered message IDs of subscribers that do not run a CCDTN router */
+    private Map<DTNHost, Set<String>> foreignDeliveredContent;
 
     /**
      * Constructor: Initializes CCDTN with settings.
@@ -45,9 +66,16 @@ public class CCDTN extends ActiveRouter {
      */
     public CCDTN(Settings s) {
         super(s);
+        if (s.contains(KEY_TREE_CACHE_SIZE_S)) {
+            this.keyTreeCacheSize = s.getInt(KEY_TREE_CACHE_SIZE_S);
+        } else {
+            this.keyTreeCacheSize = KeyTreeCache.DEF_MAX_TREES;
+        }
+        if (s.contains(REKEY_INTERVAL_S)) {
+            this.rekeyInterval = s.getDouble(REKEY_INTERVAL_S);
+        }
         initNAKT();
-        this.startTimestamps = new HashMap<>();
-        this.connHistory = new HashMap<>();
+        this.contactStats = new ContactStats();
         this.kdcLoad = new HashMap<>();
         this.numberKeyLoad = new HashMap<>();
         this.numberKeyLoadPublisher = new HashMap<>();
@@ -60,9 +88,10 @@ public class CCDTN extends ActiveRouter {
      */
     protected CCDTN(CCDTN c) {
         super(c);
+        this.keyTreeCacheSize = c.keyTreeCacheSize;
+        this.rekeyInterval = c.rekeyInterval;
         initNAKT();
-        startTimestamps = new HashMap<>(c.startTimestamps);
-        connHistory = new HashMap<>(c.connHistory);
+        contactStats = new ContactStats(c.contactStats);
         kdcLoad = new HashMap<>(c.kdcLoad);
         numberKeyLoad = new HashMap<>(c.numberKeyLoad);
         numberKeyLoadPublisher = new HashMap<>(c.numberKeyLoadPublisher);
@@ -70,11 +99,33 @@ public class CCDTN extends ActiveRouter {
 
     private void initNAKT() {
         this.keyManager = new KeyManager();
+        this.keyTreeCache = new KeyTreeCache(keyManager, keyTreeCacheSize);
         this.messageRegistry = new MessageRegistryImpl();
         this.getAllBroker = new GetAllBroker();
+        this.deliveredContent = new HashSet<>();
+        this.foreignDeliveredContent = new HashMap<>();
+        this.nextRekey = rekeyInterval;
     }
 
 
+    /**
+     * Returns the NAKT key trees this host has derived as a KDC.
+     *
+     * @return The key tree cache of this host
+     */
+    public KeyTreeCache getKeyTreeCache() {
+        return this.keyTreeCache;
+    }
+
+    /**
+     * Returns the contact statistics of this host with its peers.
+     *
+     * @return The contact statistics
+     */
+    public ContactStats getContactStats() {
+        return this.contactStats;
+    }
+
     /**
      * Handles changes in connection status.
      *
@@ -85,24 +136,9 @@ public class CCDTN extends ActiveRouter {
         DTNHost peer = con.getOtherNode(getHost());
 
         if (con.isUp()) {
-            CCDTN othRouter = (CCDTN) peer.getRouter();
-            this.startTimestamps.put(peer, SimClock.getTime());
-            othRouter.startTimestamps.put(getHost(), SimClock.getTime());
+            contactStats.connectionUp(peer, SimClock.getTime());
         } else {
-            if (startTimestamps.containsKey(peer)) {
-                double time = startTimestamps.get(peer);
-                double etime = SimClock.getTime();
-
-                // Retrieve or create connection history
-                List<Duration> history = connHistory.computeIfAbsent(peer, k -> new LinkedList<>());
-
-                // Add connection duration if it is valid
-                if (etime - time > 0) {
-                    history.add(new Duration(time, etime));
-                }
-
-                startTimestamps.remove(peer);
-            }
+            contactStats.connectionDown(peer, SimClock.getTime());
         }
     }
 
@@ -158,101 +194,79 @@ public class CCDTN extends ActiveRouter {
      * @return True if the message is at its final destination, false otherwise
      */
     protected boolean isFinalDest(Message m, DTNHost host) {
-        Map<Boolean, TupleDe<Integer, String>> finalDestMap = (Map<Boolean, TupleDe<Integer, String>>) m.getProperty(MESSAGE_TOPICS_S);
-
-
-        if (finalDestMap == null || finalDestMap.isEmpty()) {
+        if (!m.isPublication()) {
             return false;
         }
 
-        // create dummy for add msg
-        Map<Boolean, TupleDe<Integer, String>> dummyMSGTOP = finalDestMap;
+        Map<DTNHost, Map<String, SecretKey>> getKeyAuth = m.getSubscriberKeys();
 
-        // Get all connections
-        Collection<Connection> connections = getConnections();
-        if (connections == null) {
+        // Only the subscribers this host is currently connected to are checked
+        List<DTNHost> subscribers = SimScenario.getInstance().getRoleDirectory()
+                .getConnectedPeers(host, RoleDirectory.SUBSCRIBER);
+        if (subscribers.isEmpty()) {
+            return false;
+        }
+        if (getKeyAuth == null || getKeyAuth.isEmpty()) {
             return false;
         }
 
-        for (DTNHost other : SimScenario.getInstance().getHosts()) {
-            for (Connection con : connections) {
-                DTNHost getSubscriber = con.getOtherNode(other);
-                if (getSubscriber.isSubscriber()) {
-                    List<Boolean> hostTopicNode = getSubscriber.getSocialProfileOI();
-                    Map<DTNHost, List<TupleDe<String, String>>> getKeyAuth = (Map<DTNHost, List<TupleDe<String, String>>>) m.getProperty(MESSAGE_KEY_AUTHENTICATION_S);
-
-                    if (getKeyAuth == null || getKeyAuth.isEmpty()) {
-                        return false;
-                    }
-
-                    Map<DTNHost, List<TupleDe<String, String>>> dummyKEYAUTH = getKeyAuth;
-
-                    if (hostTopicNode == null || hostTopicNode.isEmpty()) {
-                        return false;
-                    }
-                    for (Map.Entry<Boolean, TupleDe<Integer, String>> entry : dummyMSGTOP.entrySet()) {
-                        if (hostTopicNode.contains(entry.getKey())) {
-                    System.out.println("its matched baybeee");
-                            return authenticateSubscriber(entry.getValue().getSecond(), dummyKEYAUTH);
-                        }
-                    }
-                }
-
+        for (DTNHost getSubscriber : subscribers) {
+            InterestProfile hostTopicNode = getSubscriber.getInterestProfile();
+            if (hostTopicNode.isEmpty()) {
+                continue;
+            }
+            if (hostTopicNode.hasTopic(m.getTopic())
+                    && authenticateSubscriber(m, getSubscriber, getKeyAuth.get(getSubscriber))) {
+                return true;
             }
         }
 
-
         return false;
     }
 
     /**
-     * Authenticates a subscriber by attempting to decrypt the received message using available keys.
+     * Authenticates a subscriber by decrypting the received message with the
+     * subscriber's key that covers the binary path the ciphertext is tagged
+     * with. A subscriber is credited with every message at most once.
      *
-     * @param msgEncrypt The encrypted message
-     * @param keyAuth    The map containing keys for decryption
+     * @param m          The message carrying the encrypted content
+     * @param subscriber The subscriber
+     * @param keys       The subscriber's keys by binary path (may be null)
      * @return True if decryption is successful, false otherwise
      */
-    private boolean authenticateSubscriber(String msgEncrypt, Map<DTNHost, List<TupleDe<String, String>>> keyAuth) {
-        // Map lokal untuk melacak pesan yang sudah diterima dalam metode ini saja
-        Map<DTNHost, Set<String>> receivedMessages = new HashMap<>();
-        for (Map.Entry<DTNHost, List<TupleDe<String, String>>> entry : keyAuth.entrySet()) {
-            DTNHost subscriberId = entry.getKey();
-            List<TupleDe<String, String>> keyList = entry.getValue();
-
-            if (keyList == null || keyList.isEmpty()) {
-                continue;
-            }
-
-            for (DTNHost host : SimScenario.getInstance().getHosts()) {
-                if (host.equals(subscriberId)) {
-                    TupleDe<String, String> decryptedContent = DecryptUtil.decryptMessage(msgEncrypt, keyList);
-//                        System.out.println("dekrip : "+decryptedContent);
-                    if (decryptedContent != null && !decryptedContent.getSecond().isEmpty()) {
-                        String decryptedMessage = decryptedContent.getSecond();
-
-                        // Inisialisasi set lokal untuk subscriber jika belum ada
-                        receivedMessages.putIfAbsent(subscriberId, new HashSet<>());
-
-                        // Cek apakah subscriber sudah menerima pesan ini sebelumnya
-                        if (receivedMessages.get(subscriberId).contains(decryptedMessage)) {
-//                                System.out.println("⚠️ DUPLICATE WARNING: Subscriber " + subscriberId + " sudah menerima pesan ini sebelumnya!");
-                            continue; // Skip pesan yang duplikat
-                        }
-
-                        // Tambahkan pesan ke daftar yang sudah diterima oleh subscriber ini
-                        receivedMessages.get(subscriberId).add(decryptedMessage);
-
-//                            System.out.println("🔹 Message: " + decryptedMessage);
-                        return true;
-                    }
-                }
+    private boolean authenticateSubscriber(Message m, DTNHost subscriber, Map<String, SecretKey> keys) {
+        if (keys == null) {
+            return false;
+        }
 
-            }
+        Set<String> delivered = getDeliveredContent(subscriber);
+        if (delivered.contains(m.getId())) {
+            return false; // Skip pesan yang duplikat
         }
 
+        if (DecryptUtil.decryptMessage(m.getKeyPath(), m.getCiphertext(), keys) != null) {
+            delivered.add(m.getId());
+            return true;
+        }
         return false;
     }
 
+    /**
+     * Returns the IDs of the messages a subscriber has been credited with.
+     * The set is kept by the subscriber's own router so it lives as long as
+     * the subscriber.
+     *
+     * @param subscriber The subscriber
+     * @return The (modifiable) set of delivered message IDs
+     */
+    private Set<String> getDeliveredContent(DTNHost subscriber) {
+        MessageRouter router = subscriber.getRouter();
+        if (router instanceof CCDTN) {
+            return ((CCDTN) router).deliveredContent;
+        }
+        return this.foreignDeliveredContent.computeIfAbsent(subscriber, k -> new HashSet<>());
+    }
+
 
     /**
      * Determines if a host shares the same interests as a message.
@@ -262,57 +276,23 @@ public class CCDTN extends ActiveRouter {
      * @return True if interests match, false otherwise
      */
     protected boolean isSameInterest(Message m, DTNHost host) {
-        Map<Boolean, TupleDe<Integer, String>> topicMap = (Map<Boolean, TupleDe<Integer, String>>) m.getProperty(MESSAGE_TOPICS_S);
-
-        List<Boolean> topicNode = host.getSocialProfileOI();
-
-        if (topicMap == null || topicNode == null || topicNode.isEmpty()) {
-            return false;  // Jika topicNode kosong, langsung return false
-        }
-
-        Iterator<Boolean> itTop = topicMap.keySet().iterator();
-        int i = 0;
-
-        while (itTop.hasNext() && i < topicNode.size()) {
-            if (itTop.next().equals(topicNode.get(i))) {
-                return true;
-            }
-            i++;
-        }
-
-        return false;
+        return m.isPublication() && host.getInterestProfile().hasTopic(m.getTopic());
     }
 
 
     /**
-     * Counts the interest weights that match the message topics.
+     * Returns the interest similarity of a host and a message, i.e. the
+     * host's interest weight of the message topic.
      *
      * @param m    The message being evaluated
      * @param host The host whose interests are being compared
-     * @return A list of matching interest weights
+     * @return The interest weight (0 if the host is not interested)
      */
-    protected List<Double> countInterestTopic(Message m, DTNHost host) {
-        Map<Boolean, TupleDe<Integer, String>> topicMap = (Map<Boolean, TupleDe<Integer, String>>) m.getProperty(MESSAGE_TOPICS_S);
-
-        if (topicMap == null || topicMap.isEmpty()) {
-            return null;
+    protected double getInterestSimilarity(Message m, DTNHost host) {
+        if (!m.isPublication()) {
+            return 0;
         }
-
-        List<Boolean> topicNode = host.getSocialProfileOI();
-        List<Double> weightNode = host.getSocialProfile();
-
-        if (topicNode == null || weightNode == null || topicNode.size() != weightNode.size()) {
-            return null;
-        }
-
-        List<Double> valInterest = new ArrayList<>();
-        for (Boolean topic : topicMap.keySet()) {
-            if (topicNode.contains(topic)) {
-                valInterest.add(weightNode.get(topicNode.indexOf(topic)));
-            }
-        }
-
-        return valInterest;
+        return host.getInterestProfile().getTopicWeight(m.getTopic());
     }
 
     /**
@@ -321,6 +301,10 @@ public class CCDTN extends ActiveRouter {
     @Override
     public void update() {
         super.update();
+        if (rekeyInterval > 0 && SimClock.getTime() >= nextRekey && getHost().isKDC()) {
+            keyTreeCache.rekey();
+            nextRekey = SimClock.getTime() + rekeyInterval;
+        }
         if (isTransferring() || !canStartTransfer()) {
             return; // If transferring, don't start another transfer
         }
@@ -9,12 +9,7 @@ import java.util.List;
 public class GetAllBroker {
 
     public List<DTNHost> getAllBrokers() {
-        List<DTNHost> brokerList = new ArrayList<>();
-        for (DTNHost host : SimScenario.getInstance().getHosts()) { // Jika ada metode untuk mendapatkan semua host
-            if (host.isBroker()) {
-                brokerList.add(host);
-            }
-        }
-        return brokerList;
+        // callers may modify the returned list, so hand out a copy
+        return new ArrayList<>(SimScenario.getInstance().getRoleDirectory().getBrokers());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package routing.KDC;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.Message;
+
+/**
+ * Delivers the KDC control messages (registrations, subscriptions and key
+ * distribution) to their recipients. By default a control message is put
+ * only into the buffer of the intended recipient and of the hosts that are
+ * currently connected to it. The old behaviour of copying every control
+ * message into the buffer of every host of the scenario can be turned on
+ * for comparison with {@link #setBroadcast(boolean)}.
+ */
+public class ControlDelivery {
+    /** Should control messages be copied to all hosts */
+    private static boolean broadcast;
+
+    static {
+        DTNSim.registerForReset(ControlDelivery.class.getCanonicalName());
+        reset();
+    }
+
+    /**
+     * Resets the delivery mode to the default (addressed delivery).
+     */
+    public static void reset() {
+        broadcast = false;
+    }
+
+    /**
+     * Sets the delivery mode.
+     *
+     * @param broadcastAll If true, control messages are copied to every host
+     *                     of the scenario; if false, only to the recipient
+     *                     and its connected peers.
+     */
+    public static void setBroadcast(boolean broadcastAll) {
+        broadcast = broadcastAll;
+    }
+
+    /**
+     * Returns true if control messages are copied to every host.
+     *
+     * @return true for broadcast mode, false for addressed delivery
+     */
+    public static boolean isBroadcast() {
+        return broadcast;
+    }
+
+    /**
+     * Delivers a control message to its recipient.
+     *
+     * @param m         The control message
+     * @param recipient The host the message is meant for
+     */
+    public static void deliver(Message m, DTNHost recipient) {
+        if (broadcast) {
+            recipient.addBufferToHost(m);
+        } else {
+            recipient.addBufferToRecipient(m);
+        }
+    }
+}
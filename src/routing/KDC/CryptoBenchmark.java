@@ -0,0 +1,149 @@
+package routing.KDC;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Micro-benchmark of the {@link CryptoEngine}. Runs the three operations
+ * of the KDC code (child key derivation, content encryption and
+ * decryption) once the way KeyManager, EncryptionUtil and DecryptUtil did
+ * them before (a new Mac/Cipher and SecureRandom per call, Base64 keys and
+ * ciphertexts) and once with the engine, checks that the decrypted content
+ * matches and prints the operations per second.
+ * <p>
+ * Usage: <code>java routing.KDC.CryptoBenchmark [nrofOps]</code>
+ * (default 200000)
+ */
+public class CryptoBenchmark {
+    private static final String PLAIN = "abcdefghijABCDEFGHIJ";
+    private static final String PATH = "0110";
+
+    public static void main(String[] args) throws GeneralSecurityException {
+        int nrofOps = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        byte[] keyBytes = CryptoEngine.randomBytes(32);
+        SecretKey key = CryptoEngine.toAesKey(keyBytes);
+        String keyBase64 = Base64.getEncoder().encodeToString(keyBytes);
+        byte[] plain = PLAIN.getBytes(StandardCharsets.UTF_8);
+
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            String legacyKey = keyBase64;
+            for (int i = 0; i < nrofOps; i++) {
+                legacyKey = legacyHmac(keyBase64, PATH);
+            }
+            double legacyHmac = opsPerSec(nrofOps, start);
+
+            start = System.nanoTime();
+            byte[] engineKey = keyBytes;
+            for (int i = 0; i < nrofOps; i++) {
+                engineKey = CryptoEngine.hmac(keyBytes, PATH.getBytes(StandardCharsets.US_ASCII));
+            }
+            double engineHmac = opsPerSec(nrofOps, start);
+
+            start = System.nanoTime();
+            String legacyCipher = null;
+            for (int i = 0; i < nrofOps; i++) {
+                legacyCipher = legacyEncrypt(PLAIN, keyBase64);
+            }
+            double legacyEnc = opsPerSec(nrofOps, start);
+
+            start = System.nanoTime();
+            byte[] engineCipher = null;
+            for (int i = 0; i < nrofOps; i++) {
+                engineCipher = CryptoEngine.encrypt(plain, key);
+            }
+            double engineEnc = opsPerSec(nrofOps, start);
+
+            start = System.nanoTime();
+            String legacyPlain = null;
+            for (int i = 0; i < nrofOps; i++) {
+                legacyPlain = legacyDecrypt(legacyCipher, keyBase64);
+            }
+            double legacyDec = opsPerSec(nrofOps, start);
+
+            start = System.nanoTime();
+            byte[] enginePlain = null;
+            for (int i = 0; i < nrofOps; i++) {
+                enginePlain = CryptoEngine.decrypt(engineCipher, key);
+            }
+            double engineDec = opsPerSec(nrofOps, start);
+
+            if (!PLAIN.equals(legacyPlain) || !Arrays.equals(plain, enginePlain)
+                    || legacyKey == null || engineKey.length != 32) {
+                System.err.println("Decrypted content differs!");
+                System.exit(1);
+            }
+            System.out.printf("round %d (ops/s, before -> after): hmac %.0f -> %.0f, " +
+                    "encrypt %.0f -> %.0f, decrypt %.0f -> %.0f%n", round,
+                    legacyHmac, engineHmac, legacyEnc, engineEnc, legacyDec, engineDec);
+        }
+    }
+
+    private static double opsPerSec(int nrofOps, long start) {
+        return nrofOps / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Child key derivation as KeyManager.generateHMAC did it.
+     */
+    private static String legacyHmac(String key, String message) {
+        try {
+            Mac mac = Mac.getInstance(CryptoEngine.HMAC_ALGO);
+            mac.init(new SecretKeySpec(key.getBytes(), CryptoEngine.HMAC_ALGO));
+            return Base64.getEncoder().encodeToString(mac.doFinal(message.getBytes()));
+        } catch (Exception e) {
+            throw new RuntimeException("Error generating HMAC", e);
+        }
+    }
+
+    /**
+     * Encryption as EncryptionUtil.encryptMessage did it.
+     */
+    private static String legacyEncrypt(String plainText, String keyBase64) {
+        try {
+            SecretKeySpec keySpec = new SecretKeySpec(Base64.getDecoder().decode(keyBase64),
+                    CryptoEngine.KEY_ALGO);
+            byte[] iv = new byte[CryptoEngine.IV_SIZE];
+            new SecureRandom().nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CryptoEngine.AES_ALGO);
+            cipher.init(Cipher.ENCRYPT_MODE, keySpec,
+                    new GCMParameterSpec(CryptoEngine.TAG_LENGTH, iv));
+            byte[] encrypted = cipher.doFinal(plainText.getBytes());
+
+            byte[] combined = new byte[iv.length + encrypted.length];
+            System.arraycopy(iv, 0, combined, 0, iv.length);
+            System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+            return Base64.getEncoder().encodeToString(combined);
+        } catch (Exception e) {
+            throw new RuntimeException("Error encrypting message", e);
+        }
+    }
+
+    /**
+     * Decryption as DecryptUtil.decryptMessage did it (for one key).
+     */
+    private static String legacyDecrypt(String encrypted, String keyBase64) {
+        try {
+            SecretKeySpec keySpec = new SecretKeySpec(Base64.getDecoder().decode(keyBase64),
+                    CryptoEngine.KEY_ALGO);
+            byte[] combined = Base64.getDecoder().decode(encrypted);
+            byte[] iv = Arrays.copyOf(combined, CryptoEngine.IV_SIZE);
+            byte[] data = Arrays.copyOfRange(combined, iv.length, combined.length);
+            Cipher cipher = Cipher.getInstance(CryptoEngine.AES_ALGO);
+            cipher.init(Cipher.DECRYPT_MODE, keySpec,
+                    new GCMParameterSpec(CryptoEngine.TAG_LENGTH, iv));
+            return new String(cipher.doFinal(data));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
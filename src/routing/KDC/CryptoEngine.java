@@ -0,0 +1,130 @@
+package routing.KDC;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Shared cryptographic primitives of the KDC package. Looking up a JCA
+ * provider (<code>Mac.getInstance</code>, <code>Cipher.getInstance</code>)
+ * costs more than the HMAC or AES-GCM operation itself for the short keys
+ * and messages of the simulation, so every thread keeps one
+ * <code>Mac</code> and one <code>Cipher</code> instance and re-initializes
+ * them for each operation. Keys and ciphertexts are handled as raw bytes;
+ * nothing is Base64 encoded on the way.
+ */
+public final class CryptoEngine {
+    /** HMAC algorithm used for key derivation */
+    public static final String HMAC_ALGO = "HmacSHA256";
+    /** Cipher used for content encryption */
+    public static final String AES_ALGO = "AES/GCM/NoPadding";
+    /** Key algorithm of the content keys */
+    public static final String KEY_ALGO = "AES";
+    /** Size of the AES-GCM initialization vector (bytes) */
+    public static final int IV_SIZE = 12;
+    /** Size of the AES-GCM authentication tag (bits) */
+    public static final int TAG_LENGTH = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_ALGO);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No " + HMAC_ALGO + " available", e);
+        }
+    });
+
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(AES_ALGO);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No " + AES_ALGO + " available", e);
+        }
+    });
+
+    private CryptoEngine() {
+    }
+
+    /**
+     * Computes HMAC(key, message).
+     *
+     * @param key     The HMAC key
+     * @param message The message to authenticate
+     * @return The 32 byte HMAC
+     */
+    public static byte[] hmac(byte[] key, byte[] message) {
+        Mac mac = MAC.get();
+        try {
+            mac.init(new SecretKeySpec(key, HMAC_ALGO));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error generating HMAC", e);
+        }
+        return mac.doFinal(message);
+    }
+
+    /**
+     * Wraps raw key bytes as an AES key.
+     *
+     * @param keyBytes The key bytes (16, 24 or 32 bytes)
+     * @return The AES key
+     */
+    public static SecretKey toAesKey(byte[] keyBytes) {
+        return new SecretKeySpec(keyBytes, KEY_ALGO);
+    }
+
+    /**
+     * Returns random bytes from the shared secure random generator.
+     *
+     * @param length Number of bytes
+     * @return The random bytes
+     */
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encrypts a plaintext with AES-GCM and a random IV.
+     *
+     * @param plain The plaintext
+     * @param key   The AES key
+     * @return IV followed by the ciphertext and tag
+     */
+    public static byte[] encrypt(byte[] plain, SecretKey key) {
+        byte[] out = new byte[IV_SIZE + plain.length + TAG_LENGTH / 8];
+        System.arraycopy(randomBytes(IV_SIZE), 0, out, 0, IV_SIZE);
+        Cipher cipher = CIPHER.get();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, out, 0, IV_SIZE));
+            cipher.doFinal(plain, 0, plain.length, out, IV_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error encrypting message", e);
+        }
+        return out;
+    }
+
+    /**
+     * Decrypts and authenticates an AES-GCM ciphertext produced by
+     * {@link #encrypt(byte[], SecretKey)}.
+     *
+     * @param combined IV followed by the ciphertext and tag
+     * @param key      The AES key
+     * @return The plaintext
+     * @throws GeneralSecurityException if the key is wrong or the ciphertext
+     *                                  has been modified
+     */
+    public static byte[] decrypt(byte[] combined, SecretKey key) throws GeneralSecurityException {
+        if (combined == null || combined.length < IV_SIZE + TAG_LENGTH / 8) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, combined, 0, IV_SIZE));
+        return cipher.doFinal(combined, IV_SIZE, combined.length - IV_SIZE);
+    }
+}
@@ -0,0 +1,47 @@
+package routing.KDC;
+
+/**
+ * Encrypted publication content tagged with the binary path of the NAKT
+ * node whose key encrypted it. The path is not secret (it is the leaf id
+ * of the publisher's sub-topic value) and lets a subscriber select the one
+ * key that can decrypt the content instead of trying all of its keys.
+ */
+public final class EncryptedContent {
+    private final String keyPath;
+    private final byte[] ciphertext;
+
+    /**
+     * Creates tagged content.
+     *
+     * @param keyPath    Binary path of the key's tree node
+     * @param ciphertext IV followed by the encrypted data and tag
+     */
+    public EncryptedContent(String keyPath, byte[] ciphertext) {
+        this.keyPath = keyPath;
+        this.ciphertext = ciphertext;
+    }
+
+    /**
+     * Returns the binary path of the key that encrypted the content.
+     *
+     * @return The key path
+     */
+    public String getKeyPath() {
+        return keyPath;
+    }
+
+    /**
+     * Returns the ciphertext. The array is shared by all copies of the
+     * message and must not be modified.
+     *
+     * @return IV followed by the encrypted data and tag
+     */
+    public byte[] getCiphertext() {
+        return ciphertext;
+    }
+
+    @Override
+    public String toString() {
+        return "EncryptedContent[" + keyPath + ", " + ciphertext.length + " bytes]";
+    }
+}
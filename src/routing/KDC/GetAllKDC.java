@@ -9,12 +9,7 @@ import java.util.List;
 public class GetAllKDC {
 
     public List<DTNHost> getAllKDCs() {
-        List<DTNHost> kdcList = new ArrayList<>();
-        for (DTNHost host : SimScenario.getInstance().getHosts()) { // Jika ada metode untuk mendapatkan semua host
-            if (host.isKDC()) {
-                kdcList.add(host);
-            }
-        }
-        return kdcList;
+        // roles are fixed at host creation, so the directory already has the list
+        return new ArrayList<>(SimScenario.getInstance().getRoleDirectory().getKDCs());
     }
-}
\ No newline at end of file
+}
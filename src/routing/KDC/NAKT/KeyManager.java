@@ -1,42 +1,62 @@
 package routing.KDC.NAKT;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.SecureRandom;
-import java.util.Base64;
+import routing.KDC.CryptoEngine;
+
+import java.nio.charset.StandardCharsets;
 
 public class KeyManager {
-    private static final String HMAC_ALGO = "HmacSHA256"; // Algorithm used for key generation
-    private final String kdcSecret; // Secret key for the Key Distribution Center (KDC)
+    private static final int SECRET_SIZE = 16; // Size of the KDC secret (bytes)
+    private byte[] kdcSecret; // Secret key for the Key Distribution Center (KDC)
 
     /**
      * Constructor for KeyManager.
-     * Generates a random secret key for the Key Distribution Center (KDC).
+     * The random secret key for the Key Distribution Center (KDC) is
+     * generated when it is needed for the first time.
      */
     public KeyManager() {
+        this.kdcSecret = null;
+    }
+
+    /**
+     * Replaces the secret key of the KDC with a new random secret.
+     * All keys derived after this call differ from the earlier ones.
+     */
+    public void rekey() {
         this.kdcSecret = generateRandomSecret();
     }
 
+    /**
+     * Returns the secret key of the KDC, generating it on first use.
+     *
+     * @return The secret key.
+     */
+    private byte[] getKdcSecret() {
+        if (kdcSecret == null) {
+            kdcSecret = generateRandomSecret();
+        }
+        return kdcSecret;
+    }
+
     /**
      * Generates an authorization key K(w).
      * K(w) = HMAC(KDC_secret, topic)
      *
-     * @param topic The boolean topic identifier.
-     * @return The generated authorization key as a Base64 encoded string.
+     * @param topic The topic identifier.
+     * @return The generated authorization key.
      */
-    public String generateAuthorizationKey(boolean topic) {
-        return generateHMAC(kdcSecret, String.valueOf(topic));
+    public byte[] generateAuthorizationKey(int topic) {
+        return generateHMAC(getKdcSecret(), String.valueOf(topic));
     }
 
     /**
      * Generates a root key Ø.
      * Ø = HMAC(K(w), num)
      *
-     * @param w The boolean topic identifier.
-     * @return The generated root key as a Base64 encoded string.
+     * @param w The topic identifier.
+     * @return The generated root key.
      */
-    public String generateRootKey(boolean w) {
-        String authorizationKey = generateAuthorizationKey(w);
+    public byte[] generateRootKey(int w) {
+        byte[] authorizationKey = generateAuthorizationKey(w);
         return generateHMAC(authorizationKey, String.valueOf(w));
     }
 
@@ -47,9 +67,9 @@ public class KeyManager {
      *
      * @param parentKey  The parent key used for derivation.
      * @param binaryPath The binary path of the node.
-     * @return The derived child key as a Base64 encoded string.
+     * @return The derived child key (32 bytes, usable as an AES-256 key).
      */
-    public static String generateChildKey(String parentKey, String binaryPath) {
+    public static byte[] generateChildKey(byte[] parentKey, String binaryPath) {
         return generateHMAC(parentKey, binaryPath);
     }
 
@@ -59,28 +79,18 @@ public class KeyManager {
      *
      * @param key     The secret key used for HMAC computation.
      * @param message The message to be hashed.
-     * @return The generated HMAC as a Base64 encoded string.
+     * @return The generated HMAC.
      */
-    private static String generateHMAC(String key, String message) {
-        try {
-            Mac mac = Mac.getInstance(HMAC_ALGO);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(), HMAC_ALGO);
-            mac.init(secretKeySpec);
-            byte[] hash = mac.doFinal(message.getBytes());
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (Exception e) {
-            throw new RuntimeException("Error generating HMAC", e);
-        }
+    private static byte[] generateHMAC(byte[] key, String message) {
+        return CryptoEngine.hmac(key, message.getBytes(StandardCharsets.US_ASCII));
     }
 
     /**
      * Generates a random secret key for the Key Distribution Center (KDC).
      *
-     * @return A random secret key as a Base64 encoded string.
+     * @return A random secret key.
      */
-    private String generateRandomSecret() {
-        byte[] secretBytes = new byte[16];
-        new SecureRandom().nextBytes(secretBytes);
-        return Base64.getEncoder().encodeToString(secretBytes);
+    private byte[] generateRandomSecret() {
+        return CryptoEngine.randomBytes(SECRET_SIZE);
     }
 }
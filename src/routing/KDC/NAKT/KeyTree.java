@@ -0,0 +1,190 @@
+package routing.KDC.NAKT;
+
+import routing.KDC.CryptoEngine;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fully derived NAKT key tree of one topic. Every node of the binary tree
+ * down to depth <code>lcnum</code> is derived once with
+ * {@link KeyManager#generateChildKey(byte[], String)} and stored in a heap
+ * ordered array, so that the key of any binary path can be looked up in
+ * O(path length) without walking or regenerating the tree.
+ * <p>
+ * The key of a node only depends on its parent key and its binary path, so
+ * a holder of a node key can derive the keys of all nodes below it (see
+ * {@link #deriveKey(SecretKey, String, String)}). A subscriber is given the
+ * keys of the nodes that cover its attribute ranges
+ * ({@link #getCoveringNodes(int, int)}) and a publisher the key of the leaf
+ * of its value.
+ */
+public class KeyTree {
+    /** Largest supported tree depth */
+    public static final int MAX_LCNUM = 20;
+
+    private final int lcnum;
+    /** node keys; node with path length d and value v is at (1 << d) - 1 + v */
+    private final SecretKey[] keys;
+
+    /**
+     * Derives the whole key tree from a root key.
+     *
+     * @param rootKey The root key of the topic
+     * @param lcnum   Depth of the tree (length of the leaf paths)
+     */
+    public KeyTree(byte[] rootKey, int lcnum) {
+        if (lcnum < 1 || lcnum > MAX_LCNUM) {
+            throw new IllegalArgumentException("Invalid lcnum " + lcnum);
+        }
+        this.lcnum = lcnum;
+        this.keys = new SecretKey[(1 << (lcnum + 1)) - 1];
+        this.keys[0] = CryptoEngine.toAesKey(rootKey);
+
+        byte[][] parentLevel = {rootKey};
+        for (int depth = 1; depth <= lcnum; depth++) {
+            int first = (1 << depth) - 1;
+            byte[][] level = new byte[1 << depth][];
+            for (int v = 0; v < level.length; v++) {
+                level[v] = KeyManager.generateChildKey(parentLevel[v >> 1], toPath(v, depth));
+                keys[first + v] = CryptoEngine.toAesKey(level[v]);
+            }
+            parentLevel = level;
+        }
+    }
+
+    /**
+     * Returns the depth of the tree.
+     *
+     * @return The length of the leaf paths
+     */
+    public int getLcnum() {
+        return lcnum;
+    }
+
+    /**
+     * Returns the key of the node with the given binary path.
+     *
+     * @param path Binary path from the root ("" for the root)
+     * @return The key or null if the path is not a valid path of this tree
+     */
+    public SecretKey getKey(String path) {
+        int index = indexOf(path);
+        return index < 0 ? null : keys[index];
+    }
+
+    /**
+     * Checks whether a node is generated for an attribute range
+     * <code>[0, maxRange]</code>, i.e. whether every ancestor of the node
+     * still covers more than one value.
+     *
+     * @param path     Binary path of the node
+     * @param maxRange Upper bound of the attribute range
+     * @return true if the node exists in the tree of that range
+     */
+    public boolean hasNode(String path, int maxRange) {
+        if (indexOf(path) < 0) {
+            return false;
+        }
+        int min = 0;
+        int max = maxRange;
+        for (int i = 0; i < path.length(); i++) {
+            if (min >= max) {
+                return false;
+            }
+            int mid = (min + max) / 2;
+            if (path.charAt(i) == '0') {
+                max = mid;
+            } else {
+                min = mid + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the minimal set of nodes whose values together are exactly
+     * the values <code>[min, max]</code>; leaf <i>v</i> of the tree stands
+     * for the value <i>v</i>. At most two nodes per tree level are visited,
+     * so the cost is O(log range) and the set has at most
+     * 2&middot;<code>lcnum</code> nodes. Values outside the leaves are
+     * ignored.
+     *
+     * @param min Lower bound of the requested values
+     * @param max Upper bound of the requested values
+     * @return Binary paths of the covering nodes, ordered by value
+     */
+    public List<String> getCoveringNodes(int min, int max) {
+        List<String> cover = new ArrayList<>();
+        int maxValue = (1 << lcnum) - 1;
+        if (min > max || max < 0 || min > maxValue) {
+            return cover;
+        }
+        cover(0, maxValue, "", Math.max(min, 0), Math.min(max, maxValue), cover);
+        return cover;
+    }
+
+    private void cover(int lo, int hi, String path, int min, int max, List<String> cover) {
+        if (hi < min || lo > max) {
+            return;
+        }
+        if (min <= lo && hi <= max) {
+            cover.add(path);
+            return;
+        }
+        int mid = (lo + hi) / 2;
+        cover(lo, mid, path + "0", min, max, cover);
+        cover(mid + 1, hi, path + "1", min, max, cover);
+    }
+
+    /**
+     * Derives the key of a node from the key of one of its ancestors.
+     *
+     * @param nodeKey  Key of the ancestor
+     * @param nodePath Binary path of the ancestor
+     * @param path     Binary path of the node (starts with nodePath)
+     * @return The key of the node
+     */
+    public static SecretKey deriveKey(SecretKey nodeKey, String nodePath, String path) {
+        if (nodePath.length() == path.length()) {
+            return nodeKey;
+        }
+        byte[] key = nodeKey.getEncoded();
+        for (int depth = nodePath.length() + 1; depth <= path.length(); depth++) {
+            key = KeyManager.generateChildKey(key, path.substring(0, depth));
+        }
+        return CryptoEngine.toAesKey(key);
+    }
+
+    /**
+     * Returns the array index of a binary path or -1 for invalid paths.
+     */
+    private int indexOf(String path) {
+        int depth = path.length();
+        if (depth > lcnum) {
+            return -1;
+        }
+        int v = 0;
+        for (int i = 0; i < depth; i++) {
+            char c = path.charAt(i);
+            if (c != '0' && c != '1') {
+                return -1;
+            }
+            v = (v << 1) | (c - '0');
+        }
+        return (1 << depth) - 1 + v;
+    }
+
+    /**
+     * Formats a value as a binary path of the given length.
+     */
+    private static String toPath(int value, int length) {
+        char[] path = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = (char) ('0' + (value & 1));
+            value >>= 1;
+        }
+        return new String(path);
+    }
+}
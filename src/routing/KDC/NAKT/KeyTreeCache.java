@@ -0,0 +1,81 @@
+package routing.KDC.NAKT;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Long-lived cache of the NAKT key trees of one KDC, keyed by topic and
+ * <code>lcnum</code>. A tree is derived from the KDC secret the first time
+ * it is needed and reused for every following publisher and subscriber of
+ * the same topic, so the KDC load grows with the number of new topics
+ * instead of with the number of messages. The cache holds at most a fixed
+ * number of trees (least recently used trees are evicted first) and is
+ * emptied when the KDC is rekeyed.
+ */
+public class KeyTreeCache {
+    /** Default maximum number of cached trees */
+    public static final int DEF_MAX_TREES = 64;
+
+    private final KeyManager keyManager;
+    private final int maxTrees;
+    private final LinkedHashMap<String, KeyTree> trees;
+
+    /**
+     * Creates a cache with the default size.
+     *
+     * @param keyManager Key manager holding the KDC secret
+     */
+    public KeyTreeCache(KeyManager keyManager) {
+        this(keyManager, DEF_MAX_TREES);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param keyManager Key manager holding the KDC secret
+     * @param maxTrees   Maximum number of trees kept in the cache
+     */
+    public KeyTreeCache(KeyManager keyManager, int maxTrees) {
+        if (maxTrees < 1) {
+            throw new IllegalArgumentException("Invalid key tree cache size " + maxTrees);
+        }
+        this.keyManager = keyManager;
+        this.maxTrees = maxTrees;
+        this.trees = new LinkedHashMap<String, KeyTree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyTree> eldest) {
+                return size() > KeyTreeCache.this.maxTrees;
+            }
+        };
+    }
+
+    /**
+     * Returns the key tree of a topic, deriving it if it is not cached.
+     *
+     * @param topic The topic
+     * @param lcnum Depth of the tree
+     * @return The key tree
+     */
+    public KeyTree getTree(int topic, int lcnum) {
+        String key = cacheKey(topic, lcnum);
+        KeyTree tree = trees.get(key);
+        if (tree == null) {
+            tree = new KeyTree(keyManager.generateRootKey(topic), lcnum);
+            trees.put(key, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Replaces the KDC secret and drops all cached trees. Keys handed out
+     * before the rekey do not match the trees derived after it.
+     */
+    public void rekey() {
+        keyManager.rekey();
+        trees.clear();
+    }
+
+    private static String cacheKey(int topic, int lcnum) {
+        return topic + ":" + lcnum;
+    }
+}
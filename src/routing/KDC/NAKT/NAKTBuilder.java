@@ -3,18 +3,25 @@ package routing.KDC.NAKT;
 import core.*;
 import routing.CCDTN;
 import routing.KDC.Broker.GetAllBroker;
+import routing.KDC.ControlDelivery;
+import routing.KDC.RoleDirectory;
+import routing.KDC.Subscriber.InterestProfile;
 import routing.util.TupleDe;
 
+import javax.crypto.SecretKey;
 import java.util.*;
 
 public class NAKTBuilder extends KeyManager {
-    private Map<DTNHost, TupleDe<String, String>> keyEncryption;
-    private Map<DTNHost, List<TupleDe<String, String>>> keyAuthentication;
+    private Map<DTNHost, TupleDe<String, SecretKey>> keyEncryption;
+    /** subscriber keys by binary path of their tree node */
+    private Map<DTNHost, Map<String, SecretKey>> keyAuthentication;
     private final int lcnum;
     Map<DTNHost, Integer> kdcLoad;
     Map<DTNHost, Integer> numberKeyLoad;
     Map<DTNHost, Integer> numKeyLoadPublisher;
     private final int bufferThreshold = 10;
+    /** key trees of this builder's own secret, used for KDCs without a CCDTN router */
+    private KeyTreeCache localKeyTrees;
     public NAKTBuilder(int lcnum) {
         super(); // Call parent constructor of KeyManager
         this.lcnum = lcnum;
@@ -49,45 +56,42 @@ public class NAKTBuilder extends KeyManager {
         for (DTNHost kdcHost : kdcHosts) {
             if (!kdcHost.isKDC()) continue;
 
-            Map<DTNHost, List<TupleDe<Boolean, Integer>>> registerData =
-                    (Map<DTNHost, List<TupleDe<Boolean, Integer>>>) msg.getProperty("KDC_Register_");
-            Map<DTNHost, List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>>> getUnSubs =
-                    (Map<DTNHost, List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>>>) msg.getProperty("KDC_Subscribe_");
+            Map<DTNHost, List<TupleDe<Integer, Integer>>> registerData =
+                    (Map<DTNHost, List<TupleDe<Integer, Integer>>>) msg.getProperty("KDC_Register_");
+            Map<DTNHost, InterestProfile> getUnSubs =
+                    (Map<DTNHost, InterestProfile>) msg.getProperty("KDC_Subscribe_");
 
             if (registerData == null || registerData.isEmpty() || getUnSubs == null || getUnSubs.isEmpty()) {
                 continue;
             }
 
 
+            KeyTreeCache keyTrees = getKeyTrees(kdcHost);
             int processCount = 0; // Track the number of key derivation & distribution operations
-            for (Map.Entry<DTNHost, List<TupleDe<Boolean, Integer>>> entry : registerData.entrySet()) {
+            for (Map.Entry<DTNHost, List<TupleDe<Integer, Integer>>> entry : registerData.entrySet()) {
                 DTNHost publisher = entry.getKey();
-                List<TupleDe<Boolean, Integer>> subscriberInfo = entry.getValue();
+                List<TupleDe<Integer, Integer>> subscriberInfo = entry.getValue();
                 if (subscriberInfo == null || subscriberInfo.isEmpty()) continue;
 
-                boolean topicVal = subscriberInfo.get(0).getFirst();
+                int topicVal = subscriberInfo.get(0).getFirst();
 
-                for (Map.Entry<DTNHost, List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>>> entrySubs : getUnSubs.entrySet()) {
+                for (Map.Entry<DTNHost, InterestProfile> entrySubs : getUnSubs.entrySet()) {
                     DTNHost subscriber = entrySubs.getKey();
-                    List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> tuplesList = entrySubs.getValue();
+                    InterestProfile profile = entrySubs.getValue();
 
-                    for (TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>> tuple : tuplesList) {
-                        List<TupleDe<Integer, Integer>> intPairsList = tuple.getSecond();
+                    for (int r = 0; r < profile.size(); r++) {
+                        int secondValue = profile.getMax(r);
 
-                        for (TupleDe<Integer, Integer> intPair : intPairsList) {
-                            int secondValue = intPair.getSecond();
-
-                            // 🔹 Ensure publisher only gets a key once
-                            if (!keyEncryption.containsKey(publisher)) {
-                                handleEncryption(publisher, topicVal, secondValue, msg);
-                                processCount++;
-                            }
-                            // 🔹 Ensure subscriber only gets a key once
-                            if (!keyAuthentication.containsKey(subscriber)) {
-                                handleAuthentication(subscriber, topicVal, secondValue, getUnSubs, msg);
-                                processCount++;
+                        // 🔹 Ensure publisher only gets a key once
+                        if (!keyEncryption.containsKey(publisher)) {
+                            handleEncryption(keyTrees, publisher, topicVal, secondValue, msg);
+                            processCount++;
+                        }
+                        // 🔹 Ensure subscriber only gets a key once
+                        if (!keyAuthentication.containsKey(subscriber)) {
+                            handleAuthentication(keyTrees, subscriber, topicVal, getUnSubs, msg);
+                            processCount++;
 
-                            }
                         }
                     }
                 }
@@ -108,23 +112,40 @@ public class NAKTBuilder extends KeyManager {
         return success;
     }
 
-    private void handleEncryption(DTNHost publisher, boolean topicVal, int secondValue, Message msg) {
-        String rootKey = generateRootKey(topicVal);
-        List<TupleDe<String, String>> keyList = new ArrayList<>();
-        int maxRange = getNearestPowerOfTwo(secondValue) - 1;
+    /**
+     * Returns the long-lived key trees of a KDC. KDCs running a CCDTN based
+     * router keep their trees in the router; for other hosts the trees of
+     * this builder's own secret are used.
+     *
+     * @param kdcHost The KDC
+     * @return The key tree cache of the KDC
+     */
+    private KeyTreeCache getKeyTrees(DTNHost kdcHost) {
+        if (kdcHost.getRouter() instanceof CCDTN) {
+            return ((CCDTN) kdcHost.getRouter()).getKeyTreeCache();
+        }
+        if (localKeyTrees == null) {
+            localKeyTrees = new KeyTreeCache(this);
+        }
+        return localKeyTrees;
+    }
 
-        encryptTreeNodes(0, maxRange, rootKey, "", 1, keyList);
+    private void handleEncryption(KeyTreeCache keyTrees, DTNHost publisher, int topicVal,
+                                  int secondValue, Message msg) {
+        KeyTree tree = keyTrees.getTree(topicVal, lcnum);
+        int maxRange = getNearestPowerOfTwo(secondValue) - 1;
 
+        // The publisher key is the leaf whose path is the sub-topic value
         String binaryPathPubs = Integer.toBinaryString(secondValue);
-        TupleDe<String, String> selectedKey = keyList.stream()
-                .filter(tuple -> tuple.getFirst().equals(binaryPathPubs))
-                .findFirst()
-                .orElse(null);
+        TupleDe<String, SecretKey> selectedKey = null;
+        if (binaryPathPubs.length() == lcnum && tree.hasNode(binaryPathPubs, maxRange)) {
+            selectedKey = new TupleDe<>(binaryPathPubs, tree.getKey(binaryPathPubs));
+        }
         //  **Cek duplikasi sebelum memasukkan key**
         if (selectedKey != null) {
             if (!keyEncryption.containsKey(publisher) || !keyEncryption.get(publisher).equals(selectedKey)) {
                 keyEncryption.put(publisher, selectedKey);
-                msg.addProperty("KDC_Key_Encryption_", keyEncryption);
+                msg.addPublisherKeys(keyEncryption);
                 addMessageToHostsAndForward(msg);
             }
         }
@@ -132,75 +153,39 @@ public class NAKTBuilder extends KeyManager {
 
 
 
-    private void handleAuthentication(DTNHost subscriber, boolean topicVal, int secondValue,
-                                      Map<DTNHost, List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>>> getUnSubs,
+    private void handleAuthentication(KeyTreeCache keyTrees, DTNHost subscriber, int topicVal,
+                                      Map<DTNHost, InterestProfile> getUnSubs,
                                       Message msg) {
 
-        // A set to store derived keys (ensures no duplicates in key list at this stage)
-        Set<TupleDe<String, String>> derivedKeysSet = new HashSet<>();
-
-        // Aggregate existing attributes for this subscriber
-        List<TupleDe<Integer, Integer>> existingAttributes = new ArrayList<>();
-        List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> unsubData = getUnSubs.get(subscriber);
-
-        if (unsubData != null) {
-            for (TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>> unsubEntry : unsubData) {
-                existingAttributes.addAll(unsubEntry.getSecond());
-            }
-        }
+        // Existing attributes for this subscriber
+        InterestProfile existingAttributes = getUnSubs.get(subscriber);
 
         // Only process if there are existing attributes
-        if (!existingAttributes.isEmpty()) {
-            String rootKey = generateRootKey(topicVal); // Generate root encryption key
-            List<TupleDe<String, String>> keyList = new ArrayList<>();
-            int maxRange = getNearestPowerOfTwo(secondValue) - 1;
-
-            // Generate the list of keys hierarchically using binary paths
-            encryptTreeNodes(0, maxRange, rootKey, "", 1, keyList);
-
-            // Determine the needed key for each range in existingAttributes
-            for (TupleDe<Integer, Integer> existingRange : existingAttributes) {
-                for (int i = existingRange.getFirst(); i <= existingRange.getSecond(); i++) {
-                    for (TupleDe<String, String> keyTuple : keyList) {
-                        TupleDe<Integer, Integer> nodeRange = getRangeFromBinaryPath(keyTuple.getFirst(), maxRange);
-
-                        // Check if 'i' falls within the range of the binary path
-                        if (i >= nodeRange.getFirst() && i <= nodeRange.getSecond()) {
-                            String binaryPath = keyTuple.getFirst();
-                            String binaryI = String.format("%" + lcnum + "s", Integer.toBinaryString(i)).replace(' ', '0');
-
-                            // Add the key if the exact binary path matches
-                            if (binaryI.equals(binaryPath)) {
-                                derivedKeysSet.add(keyTuple);
-                                break; // No need to keep checking other keys for the same value
-                            }
-                        }
-                    }
+        if (existingAttributes != null && !existingAttributes.isEmpty()) {
+            KeyTree tree = keyTrees.getTree(topicVal, lcnum);
+
+            // The subscriber gets the keys of the nodes that cover its ranges;
+            // the leaf keys of the values in the ranges are derived from them
+            Map<String, SecretKey> selectedKeys = new HashMap<>();
+            for (int r = 0; r < existingAttributes.size(); r++) {
+                for (String path : tree.getCoveringNodes(existingAttributes.getMin(r),
+                        existingAttributes.getMax(r))) {
+                    selectedKeys.put(path, tree.getKey(path));
                 }
             }
 
-            // Convert the derived keys set to a list (should contain only unique keys at this point)
-            List<TupleDe<String, String>> derivedKeys = new ArrayList<>(derivedKeysSet);
-
-            // Allow only one key to be assigned to the subscriber
-            // This ensures the subscriber only gets one key even if they match multiple ranges.
-            if (!derivedKeys.isEmpty()) {
-                TupleDe<String, String> selectedKey = derivedKeys.get(0); // Pick the first key (or any suitable criterion can be applied)
-
-                // Check if the subscriber already has the key to avoid duplicates
-                if (keyAuthentication.containsKey(subscriber)) {
-                    List<TupleDe<String, String>> existingKeys = keyAuthentication.get(subscriber);
-                    if (existingKeys != null && existingKeys.contains(selectedKey)) {
-                        return; // Subscriber already has the key; exit to avoid redundant processing
-                    }
+            if (!selectedKeys.isEmpty()) {
+                // Check if the subscriber already has the keys to avoid duplicates
+                if (selectedKeys.equals(keyAuthentication.get(subscriber))) {
+                    return; // Subscriber already has the keys; exit to avoid redundant processing
                 }
 
                 // Update key mappings for the subscriber
-                keyAuthentication.put(subscriber, Collections.singletonList(selectedKey));
-                numberKeyLoad.put(subscriber, 1);
+                keyAuthentication.put(subscriber, selectedKeys);
+                numberKeyLoad.put(subscriber, selectedKeys.size());
 
                 // Add the key authentication data to the message and forward
-                msg.addProperty("KDC_Key_Authentication_", keyAuthentication);
+                msg.addSubscriberKeys(keyAuthentication);
                 addMessageToHostsAndForward(msg);
             }
         }
@@ -208,23 +193,6 @@ public class NAKTBuilder extends KeyManager {
 
 
 
-    private TupleDe<Integer, Integer> getRangeFromBinaryPath(String path, int maxRange) {
-        int min = 0;
-        int max = maxRange;
-
-        for (char c : path.toCharArray()) {
-            int mid = (min + max) / 2;
-            if (c == '0') {
-                max = mid;
-            } else {
-                min = mid + 1;
-            }
-        }
-        return new TupleDe<>(min, max);
-    }
-
-
-
     /**
      * Finds the nearest power of two that is greater than or equal to the given value.
      *
@@ -239,86 +207,46 @@ public class NAKTBuilder extends KeyManager {
         return power;
     }
 
-    /**
-     * Encrypts tree nodes recursively to generate key hierarchies.
-     * - Each node creates left and right children in a binary tree format.
-     * - Stops at the defined depth (lcnum).
-     *
-     * @param min        The minimum range for encryption.
-     * @param max        The maximum range for encryption.
-     * @param parentKey  The key from the parent node.
-     * @param binaryPath The binary path of the node.
-     * @param depth      The current tree depth.
-     * @param keyList    The list to store generated keys.
-     */
-    public void encryptTreeNodes(int min, int max, String parentKey, String binaryPath, int depth, List<TupleDe<String, String>> keyList) {
-        if (depth > lcnum || min >= max) return;
-
-        int mid = (min + max) / 2;
-        String leftPath = binaryPath + "0";
-        String rightPath = binaryPath + "1";
-
-        String leftKey = generateChildKey(parentKey, leftPath);
-        String rightKey = generateChildKey(parentKey, rightPath);
-
-        // 🔹 **Ensure only relevant paths are taken**
-        if (leftPath.length() == lcnum) keyList.add(new TupleDe<>(leftPath, leftKey));
-        if (rightPath.length() == lcnum) keyList.add(new TupleDe<>(rightPath, rightKey));
-
-
-//        // 🔹 **Logging Debugging**
-//        System.out.println("🔹 Level " + depth + " (" + binaryPath + ")");
-//        System.out.println("  ├── Left Key (" + leftPath + "): " + leftKey);
-//        System.out.println("  └── Right Key (" + rightPath + "): " + rightKey);
-
-        // 🔹 **Recursive call to generate deeper key nodes**
-        encryptTreeNodes(min, mid, leftKey, leftPath, depth + 1, keyList);
-        encryptTreeNodes(mid + 1, max, rightKey, rightPath, depth + 1, keyList);
-    }
-
-
     /**
      * Sends the message to brokers first, then forwards it to relevant hosts in keyEncryption and keyAuthentication.
      *
      * @param msg     The message to be sent.
      */
     private void addMessageToHostsAndForward(Message msg) {
-        // Send to all brokers first
-        for (DTNHost host : SimScenario.getInstance().getHosts()) {
-            for (Connection con : host.getConnections()) {
-                DTNHost other = con.getOtherNode(host);
-                if (other != null && other.isBroker()) {
-                    if (msg.getProperty("KDC_Register_") != null) {
-                        other.addBufferToHost(msg);
-                        publisherForward(msg);
-                    }
-                    if (msg.getProperty("KDC_Subscribe_") != null) {
-                        other.addBufferToHost(msg);
-                    }
-                }
-            }
+        boolean isRegister = msg.getProperty("KDC_Register_") != null;
+        boolean isSubscribe = msg.getProperty("KDC_Subscribe_") != null;
+        if (!isRegister && !isSubscribe) {
+            return;
+        }
+
+        // Send to all brokers that are currently connected
+        RoleDirectory directory = SimScenario.getInstance().getRoleDirectory();
+        Collection<DTNHost> brokers = directory.getConnectedHosts(RoleDirectory.BROKER);
+        if (brokers.isEmpty()) {
+            return;
+        }
+        for (DTNHost broker : brokers) {
+            ControlDelivery.deliver(msg, broker);
+        }
+        if (isRegister) {
+            publisherForward(msg, directory);
         }
     }
 
-    private void publisherForward(Message msg) {
-        for (DTNHost host : SimScenario.getInstance().getHosts()) {
-            for (Connection con : host.getConnections()) {
-                DTNHost other = con.getOtherNode(host);
-                if (other != null) {
-                    if (msg.getProperty("KDC_Register_") != null && other.isPublisher()) {
-                        Map<DTNHost, TupleDe<String, String>> register =
-                                (Map<DTNHost, TupleDe<String, String>>) msg.getProperty("KDC_Register_");
-                        if (register.containsKey(other)) {
-                            other.addBufferToHost(msg);
-                        }
-                    }
-                    if (msg.getProperty("KDC_Subscribe_") != null) {
-                        Map<DTNHost, List<TupleDe<String, String>>> subscriber =
-                                (Map<DTNHost, List<TupleDe<String, String>>>) msg.getProperty("KDC_Subscribe_");
-                        if (subscriber.containsKey(other)) {
-                            other.addBufferToHost(msg);
-                        }
-                    }
+    private void publisherForward(Message msg, RoleDirectory directory) {
+        if (msg.getProperty("KDC_Register_") != null) {
+            Map<DTNHost, ?> register = (Map<DTNHost, ?>) msg.getProperty("KDC_Register_");
+            for (DTNHost publisher : register.keySet()) {
+                if (publisher.isPublisher() && directory.isConnected(publisher)) {
+                    ControlDelivery.deliver(msg, publisher);
+                }
+            }
+        }
+        if (msg.getProperty("KDC_Subscribe_") != null) {
+            Map<DTNHost, ?> subscriber = (Map<DTNHost, ?>) msg.getProperty("KDC_Subscribe_");
+            for (DTNHost host : subscriber.keySet()) {
+                if (directory.isConnected(host)) {
+                    ControlDelivery.deliver(msg, host);
                 }
             }
         }
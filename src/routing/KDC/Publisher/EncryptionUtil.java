@@ -1,40 +1,47 @@
 package routing.KDC.Publisher;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.SecureRandom;
-import java.util.Base64;
+import routing.KDC.CryptoEngine;
+import routing.KDC.EncryptedContent;
+import routing.util.TupleDe;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 public class EncryptionUtil {
-    private static final String AES_ALGO = "AES/GCM/NoPadding";
-    private static final int IV_SIZE = 12; // **Ukuran IV untuk AES-GCM**
-    private static final int TAG_LENGTH = 128; // **Tag Authentication**
-
-    public static String encryptMessage(String plainText, String keyBase64) {
-        try {
-            byte[] keyBytes = Base64.getDecoder().decode(keyBase64);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(keyBytes, "AES");
-
-            SecureRandom secureRandom = new SecureRandom();
-            byte[] iv = new byte[IV_SIZE];
-            secureRandom.nextBytes(iv); // **Generate IV secara acak**
-            GCMParameterSpec ivSpec = new GCMParameterSpec(TAG_LENGTH, iv);
-
-            Cipher cipher = Cipher.getInstance(AES_ALGO);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivSpec);
-            byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
-
-            // 🔹 **Gabungkan IV + Encrypted Data**
-            byte[] combined = new byte[iv.length + encryptedBytes.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(encryptedBytes, 0, combined, iv.length, encryptedBytes.length);
-
-            return Base64.getEncoder().encodeToString(combined);
-        } catch (Exception e) {
-            throw new RuntimeException("Error encrypting message", e);
-        }
+
+    /**
+     * Encrypts a message with AES-GCM.
+     *
+     * @param plainText The message
+     * @param key       The publisher key
+     * @return IV followed by the encrypted data
+     */
+    public static byte[] encryptMessage(String plainText, SecretKey key) {
+        return encryptMessage(plainText.getBytes(StandardCharsets.UTF_8), key);
+    }
+
+    /**
+     * Encrypts a message with AES-GCM.
+     *
+     * @param plain The message bytes
+     * @param key   The publisher key
+     * @return IV followed by the encrypted data
+     */
+    public static byte[] encryptMessage(byte[] plain, SecretKey key) {
+        return CryptoEngine.encrypt(plain, key);
+    }
+
+    /**
+     * Encrypts a message with a publisher key and tags the result with the
+     * binary path of the key.
+     *
+     * @param plainText The message
+     * @param key       The publisher key as (binary path, key)
+     * @return The tagged ciphertext
+     */
+    public static EncryptedContent encryptMessage(String plainText, TupleDe<String, SecretKey> key) {
+        return new EncryptedContent(key.getFirst(), encryptMessage(plainText, key.getSecond()));
     }
 
 
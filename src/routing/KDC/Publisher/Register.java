@@ -1,10 +1,12 @@
 package routing.KDC.Publisher;
 
-import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.SimScenario;
+import routing.KDC.ControlDelivery;
 import routing.KDC.GetAllKDC;
+import routing.KDC.RoleDirectory;
+import routing.KDC.Subscriber.InterestProfile;
 import routing.PublishAndSubscriberRouting;
 import routing.util.TupleDe;
 
@@ -24,57 +26,49 @@ public class Register {
         if (!host.isPublisher()) {
             return false;
         }
-        Collection<Connection> connections = host.getConnections();
-        if (connections == null) {
-            return false;
-        }
-        Set<TupleDe<Boolean, Integer>> uniqueTopics = generateUniqueTopics();
-        Map<DTNHost, List<TupleDe<Boolean, Integer>>> setTop = new HashMap<>();
+        Set<TupleDe<Integer, Integer>> uniqueTopics = generateUniqueTopics();
+        Map<DTNHost, List<TupleDe<Integer, Integer>>> setTop = new HashMap<>();
         setTop.put(host, new ArrayList<>(uniqueTopics));
-        for (Connection con : connections) {
-            DTNHost other = con.getOtherNode(host);
-            if (other != null && other.isBroker()) {
-                m.addProperty("KDC_Register_", setTop);
-                addMessageToHosts(m, other);
-                // Call the new method to handle sending to KDCs
-                return sendToKDCs(m);
-            }
+        DTNHost broker = SimScenario.getInstance().getRoleDirectory()
+                .findConnectedPeer(host, RoleDirectory.BROKER);
+        if (broker != null) {
+            m.addProperty("KDC_Register_", setTop);
+            addMessageToHosts(m, broker);
+            // Call the new method to handle sending to KDCs
+            return sendToKDCs(m);
         }
         return false;
     }
 
     /**
-     * Sends a message to KDCs if the broker is a KDC.
+     * Sends a message to a KDC that currently has a connection.
      *
      * @param m      The message to send.
      * @return true if message sent to KDCs, false otherwise.
      */
     private boolean sendToKDCs(Message m) {
-        for (DTNHost host : SimScenario.getInstance().getHosts()) {
-            for (Connection con : host.getConnections()) {
-                DTNHost other = con.getOtherNode(host);
-                if (other != null && other.isKDC()) {
-                    addMessageToHosts(m, other);
-                    return true;
-                }
-            }
+        DTNHost kdc = SimScenario.getInstance().getRoleDirectory()
+                .findConnectedHost(RoleDirectory.KDC);
+        if (kdc == null) {
+            return false;
         }
-        return false;
+        addMessageToHosts(m, kdc);
+        return true;
     }
 
 
     /**
-     * Generates a set of unique topics, each represented by a boolean and an integer value.
+     * Generates a set of unique topics, each represented by a topic and a sub-topic value.
      * The set contains exactly 5 unique elements.
      *
      * @return A set of unique topic tuples.
      */
-    private Set<TupleDe<Boolean, Integer>> generateUniqueTopics() {
-        Set<TupleDe<Boolean, Integer>> uniqueTopics = new HashSet<>();
+    private Set<TupleDe<Integer, Integer>> generateUniqueTopics() {
+        Set<TupleDe<Integer, Integer>> uniqueTopics = new HashSet<>();
         Random rand = new Random();
 
         while (uniqueTopics.size() < 5) {
-            boolean topicValue = rand.nextBoolean();
+            int topicValue = rand.nextInt(InterestProfile.getNrofTopics());
             int subTopicValue = rand.nextInt(29) + 1;
             uniqueTopics.add(new TupleDe<>(topicValue, subTopicValue));
         }
@@ -89,6 +83,6 @@ public class Register {
      * @param hosts The list of hosts to which the message should be added.
      */
     private void addMessageToHosts(Message m, DTNHost hosts) {
-        hosts.addBufferToHost(m);
+        ControlDelivery.deliver(m, hosts);
     }
 }
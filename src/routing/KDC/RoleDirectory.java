@@ -0,0 +1,247 @@
+package routing.KDC;
+
+import core.ConnectionListener;
+import core.DTNHost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Per-scenario registry of the publish-subscribe roles of all hosts.
+ * Roles of a host never change after it has been created, so the hosts
+ * are sorted into role lists once (when the scenario creates them) and
+ * role queries do not need to scan every host of the scenario again.
+ * <p>
+ * The directory is also a {@link ConnectionListener}: it keeps, for every
+ * host, the currently connected peers grouped by their role, and for every
+ * role the hosts of that role that currently have at least one connection.
+ * Both are updated incrementally when connections go up or down, so
+ * questions like "which KDC is this host connected to" cost O(degree)
+ * instead of a scan over all hosts and their connections.
+ */
+public class RoleDirectory implements ConnectionListener {
+    /** Role index of publishers */
+    public static final int PUBLISHER = 0;
+    /** Role index of brokers */
+    public static final int BROKER = 1;
+    /** Role index of subscribers */
+    public static final int SUBSCRIBER = 2;
+    /** Role index of Key Distribution Centers */
+    public static final int KDC = 3;
+    /** Number of different roles */
+    public static final int NROF_ROLES = 4;
+
+    private final List<List<DTNHost>> hostsByRole;
+    /** connected peers of each host, one list per role of the peer */
+    private final Map<DTNHost, List<List<DTNHost>>> peersByRole;
+    /** number of connections each host currently has */
+    private final Map<DTNHost, Integer> degree;
+    /** hosts of each role that have at least one connection (by address) */
+    private final List<SortedSet<DTNHost>> connectedByRole;
+
+    /**
+     * Creates an empty directory.
+     */
+    public RoleDirectory() {
+        this.hostsByRole = new ArrayList<>(NROF_ROLES);
+        this.connectedByRole = new ArrayList<>(NROF_ROLES);
+        for (int i = 0; i < NROF_ROLES; i++) {
+            this.hostsByRole.add(new ArrayList<>());
+            this.connectedByRole.add(new TreeSet<>());
+        }
+        this.peersByRole = new HashMap<>();
+        this.degree = new HashMap<>();
+    }
+
+    /**
+     * Returns the role index of a host.
+     *
+     * @param host The host
+     * @return One of {@link #PUBLISHER}, {@link #BROKER},
+     * {@link #SUBSCRIBER} or {@link #KDC}
+     */
+    public static int roleOf(DTNHost host) {
+        if (host.isPublisher()) {
+            return PUBLISHER;
+        } else if (host.isBroker()) {
+            return BROKER;
+        } else if (host.isSubscriber()) {
+            return SUBSCRIBER;
+        }
+        return KDC;
+    }
+
+    /**
+     * Registers a new host to the directory.
+     *
+     * @param host The host to register
+     */
+    public void addHost(DTNHost host) {
+        this.hostsByRole.get(roleOf(host)).add(host);
+        getPeerLists(host);
+    }
+
+    /**
+     * Returns all hosts of the given role in the order they were created.
+     *
+     * @param role The role index
+     * @return An unmodifiable list of the hosts
+     */
+    public List<DTNHost> getHosts(int role) {
+        return Collections.unmodifiableList(this.hostsByRole.get(role));
+    }
+
+    /**
+     * Returns all brokers of the scenario.
+     *
+     * @return An unmodifiable list of the brokers
+     */
+    public List<DTNHost> getBrokers() {
+        return getHosts(BROKER);
+    }
+
+    /**
+     * Returns all Key Distribution Centers of the scenario.
+     *
+     * @return An unmodifiable list of the KDCs
+     */
+    public List<DTNHost> getKDCs() {
+        return getHosts(KDC);
+    }
+
+    /**
+     * Returns all publishers of the scenario.
+     *
+     * @return An unmodifiable list of the publishers
+     */
+    public List<DTNHost> getPublishers() {
+        return getHosts(PUBLISHER);
+    }
+
+    /**
+     * Returns all subscribers of the scenario.
+     *
+     * @return An unmodifiable list of the subscribers
+     */
+    public List<DTNHost> getSubscribers() {
+        return getHosts(SUBSCRIBER);
+    }
+
+    /**
+     * Returns the peers of a host that have the given role and are currently
+     * connected to it. A peer with several connections to the host (e.g.
+     * through multiple interfaces) is listed once per connection.
+     *
+     * @param host The host whose peers are requested
+     * @param role The role index of the peers
+     * @return An unmodifiable list of the connected peers of that role
+     */
+    public List<DTNHost> getConnectedPeers(DTNHost host, int role) {
+        return Collections.unmodifiableList(getPeerLists(host).get(role));
+    }
+
+    /**
+     * Returns a peer of the given role that is connected to the host.
+     *
+     * @param host The host whose peers are searched
+     * @param role The role index of the peer
+     * @return The peer that has been connected the longest or null if the
+     * host has no connected peer of that role
+     */
+    public DTNHost findConnectedPeer(DTNHost host, int role) {
+        List<DTNHost> peers = getPeerLists(host).get(role);
+        return peers.isEmpty() ? null : peers.get(0);
+    }
+
+    /**
+     * Returns the hosts of the given role that currently have at least one
+     * connection (to a host of any role).
+     *
+     * @param role The role index
+     * @return An unmodifiable set of the hosts, ordered by address
+     */
+    public SortedSet<DTNHost> getConnectedHosts(int role) {
+        return Collections.unmodifiableSortedSet(this.connectedByRole.get(role));
+    }
+
+    /**
+     * Returns the host of the given role with the smallest address that
+     * currently has at least one connection.
+     *
+     * @param role The role index
+     * @return The host or null if no host of that role is connected
+     */
+    public DTNHost findConnectedHost(int role) {
+        SortedSet<DTNHost> connected = this.connectedByRole.get(role);
+        return connected.isEmpty() ? null : connected.first();
+    }
+
+    /**
+     * Returns true if the host currently has at least one connection.
+     *
+     * @param host The host to check
+     * @return true if the host is connected to some other host
+     */
+    public boolean isConnected(DTNHost host) {
+        Integer d = this.degree.get(host);
+        return d != null && d > 0;
+    }
+
+    @Override
+    public void hostsConnected(DTNHost host1, DTNHost host2) {
+        getPeerLists(host1).get(roleOf(host2)).add(host2);
+        getPeerLists(host2).get(roleOf(host1)).add(host1);
+        changeDegree(host1, 1);
+        changeDegree(host2, 1);
+    }
+
+    @Override
+    public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+        getPeerLists(host1).get(roleOf(host2)).remove(host2);
+        getPeerLists(host2).get(roleOf(host1)).remove(host1);
+        changeDegree(host1, -1);
+        changeDegree(host2, -1);
+    }
+
+    /**
+     * Updates the connection count of a host and its membership in the set
+     * of connected hosts of its role.
+     *
+     * @param host  The host whose connection count changed
+     * @param delta The change (+1 or -1)
+     */
+    private void changeDegree(DTNHost host, int delta) {
+        int old = this.degree.getOrDefault(host, 0);
+        int now = Math.max(old + delta, 0);
+        this.degree.put(host, now);
+
+        if (old == 0 && now > 0) {
+            this.connectedByRole.get(roleOf(host)).add(host);
+        } else if (old > 0 && now == 0) {
+            this.connectedByRole.get(roleOf(host)).remove(host);
+        }
+    }
+
+    /**
+     * Returns (and creates if needed) the per-role peer lists of a host.
+     *
+     * @param host The host
+     * @return The peer lists indexed by role
+     */
+    private List<List<DTNHost>> getPeerLists(DTNHost host) {
+        List<List<DTNHost>> lists = this.peersByRole.get(host);
+        if (lists == null) {
+            lists = new ArrayList<>(NROF_ROLES);
+            for (int i = 0; i < NROF_ROLES; i++) {
+                lists.add(new ArrayList<>(2));
+            }
+            this.peersByRole.put(host, lists);
+        }
+        return lists;
+    }
+}
@@ -1,48 +1,54 @@
 package routing.KDC.Subscriber;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.util.Base64;
-import java.util.List;
-import routing.util.TupleDe;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import javax.crypto.SecretKey;
+import routing.KDC.CryptoEngine;
+import routing.KDC.EncryptedContent;
+import routing.KDC.NAKT.KeyTree;
 
 public class DecryptUtil {
-    private static final String AES_ALGO = "AES/GCM/NoPadding";
-    private static final int IV_SIZE = 12;
-    private static final int TAG_LENGTH = 128;
 
-    public static TupleDe<String, String> decryptMessage(String encryptedMessage, List<TupleDe<String, String>> keyList) {
-        TupleDe<String, String> lastAttempt = null;
-
-        for (TupleDe<String, String> keyTuple : keyList) {
-            String binaryPath = keyTuple.getFirst();
-            String keyBase64 = keyTuple.getSecond();
-            String decryptedText = "";
+    /**
+     * Decrypts tagged content with the subscriber key of the node that
+     * covers the content's binary path. Only that key can decrypt the
+     * content, so at most one decryption is attempted.
+     *
+     * @param content The tagged ciphertext
+     * @param keys    Keys of the subscriber by binary path
+     * @return The plaintext or null if the subscriber has no key for the
+     * path or the content does not authenticate
+     */
+    public static String decryptMessage(EncryptedContent content, Map<String, SecretKey> keys) {
+        return decryptMessage(content.getKeyPath(), content.getCiphertext(), keys);
+    }
 
+    /**
+     * Decrypts a ciphertext with the key of the given binary path. The key
+     * is derived from the subscriber key of the nearest node on the path
+     * (the node itself or one of its ancestors).
+     *
+     * @param keyPath    Binary path of the key that encrypted the content
+     * @param ciphertext IV followed by the encrypted data and tag
+     * @param keys       Keys of the subscriber by binary path
+     * @return The plaintext or null if the subscriber has no key for the
+     * path or the content does not authenticate
+     */
+    public static String decryptMessage(String keyPath, byte[] ciphertext, Map<String, SecretKey> keys) {
+        for (int depth = keyPath.length(); depth >= 0; depth--) {
+            String nodePath = keyPath.substring(0, depth);
+            SecretKey nodeKey = keys.get(nodePath);
+            if (nodeKey == null) {
+                continue;
+            }
+            SecretKey key = KeyTree.deriveKey(nodeKey, nodePath, keyPath);
             try {
-                byte[] keyBytes = Base64.getDecoder().decode(keyBase64);
-                SecretKeySpec secretKeySpec = new SecretKeySpec(keyBytes, "AES");
-
-                byte[] combined = Base64.getDecoder().decode(encryptedMessage);
-                byte[] iv = new byte[IV_SIZE];
-                System.arraycopy(combined, 0, iv, 0, iv.length);
-                GCMParameterSpec ivSpec = new GCMParameterSpec(TAG_LENGTH, iv);
-
-                byte[] encryptedBytes = new byte[combined.length - iv.length];
-                System.arraycopy(combined, iv.length, encryptedBytes, 0, encryptedBytes.length);
-
-                Cipher cipher = Cipher.getInstance(AES_ALGO);
-                cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivSpec);
-                byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
-                decryptedText = new String(decryptedBytes);
-                return new TupleDe<>(binaryPath, decryptedText);
-            } catch (Exception e) {
-                lastAttempt = new TupleDe<>(binaryPath, decryptedText); //attempt last hash
+                return new String(CryptoEngine.decrypt(ciphertext, key), StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException e) {
+                return null;
             }
         }
-
-        //
-        return (lastAttempt != null) ? lastAttempt : new TupleDe<>("", "");
+        return null;
     }
 }
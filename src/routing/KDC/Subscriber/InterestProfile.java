@@ -0,0 +1,225 @@
+package routing.KDC.Subscriber;
+
+import core.DTNSim;
+
+import java.util.Random;
+
+/**
+ * Interest profile of a subscriber. A profile is a list of entries, each
+ * consisting of a topic, the weight of the subscriber's interest in it and
+ * the range of sub-topic (attribute) values the subscriber wants. Topics
+ * are integers <code>0 ... nrofTopics-1</code>.
+ * <p>
+ * The entries are kept in primitive arrays (ranges packed as
+ * <code>min, max</code> pairs) and the topics are also summarized as a bit
+ * mask and a per-topic weight table, so checking a message topic against
+ * the profile is a single AND and looking up the interest weight is one
+ * array access, independent of the number of entries and topics.
+ */
+public class InterestProfile {
+    /** Default number of different topics */
+    public static final int DEF_NROF_TOPICS = 2;
+    /** Number of entries in a randomly created profile */
+    public static final int DEF_NROF_ENTRIES = 5;
+    /** Interest weight of every entry of a randomly created profile */
+    public static final double DEF_WEIGHT = 0.5;
+    /** Largest sub-topic value of a randomly created profile */
+    public static final int MAX_ATTRIBUTE_VALUE = 30;
+
+    /** Profile without any entries (used by non-subscribers) */
+    public static final InterestProfile EMPTY =
+            new InterestProfile(new int[0], new double[0], new int[0]);
+
+    private static int nrofTopics;
+
+    static {
+        DTNSim.registerForReset(InterestProfile.class.getCanonicalName());
+        reset();
+    }
+
+    /** topic of each entry */
+    private final int[] topics;
+    /** interest weight of each entry */
+    private final double[] weights;
+    /** range of each entry: min at 2*i, max at 2*i + 1 */
+    private final int[] ranges;
+    /** bit t is set if some entry has topic t */
+    private final long[] topicMask;
+    /** weight of the first entry of each topic (0 if the topic is not in the profile) */
+    private final double[] topicWeights;
+
+    /**
+     * Creates a profile.
+     *
+     * @param topics  Topic of each entry
+     * @param weights Interest weight of each entry
+     * @param ranges  Sub-topic range of each entry, packed as min, max pairs
+     */
+    public InterestProfile(int[] topics, double[] weights, int[] ranges) {
+        if (topics.length != weights.length || ranges.length != 2 * topics.length) {
+            throw new IllegalArgumentException("Profile arrays do not match");
+        }
+        this.topics = topics.clone();
+        this.weights = weights.clone();
+        this.ranges = ranges.clone();
+
+        int maxTopic = -1;
+        for (int t : topics) {
+            if (t < 0) {
+                throw new IllegalArgumentException("Invalid topic " + t);
+            }
+            maxTopic = Math.max(maxTopic, t);
+        }
+        this.topicMask = new long[(maxTopic >> 6) + 1];
+        this.topicWeights = new double[maxTopic + 1];
+        for (int i = topics.length - 1; i >= 0; i--) {  // first entry wins
+            topicMask[topics[i] >> 6] |= 1L << topics[i];
+            topicWeights[topics[i]] = weights[i];
+        }
+    }
+
+    /**
+     * Creates a random subscriber profile with {@link #DEF_NROF_ENTRIES}
+     * entries over the current number of topics.
+     *
+     * @param rng The random number generator to use
+     * @return The new profile
+     */
+    public static InterestProfile createRandom(Random rng) {
+        int n = DEF_NROF_ENTRIES;
+        int[] topics = new int[n];
+        double[] weights = new double[n];
+        int[] ranges = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            topics[i] = rng.nextInt(nrofTopics);
+            weights[i] = DEF_WEIGHT;
+            int min = rng.nextInt(MAX_ATTRIBUTE_VALUE - 1) + 1;
+            int max = rng.nextInt(MAX_ATTRIBUTE_VALUE - min) + min;
+            ranges[2 * i] = min;
+            ranges[2 * i + 1] = max;
+        }
+        return new InterestProfile(topics, weights, ranges);
+    }
+
+    /**
+     * Resets the number of topics to the default.
+     */
+    public static void reset() {
+        nrofTopics = DEF_NROF_TOPICS;
+    }
+
+    /**
+     * Sets the number of different topics of the scenario.
+     *
+     * @param topics The number of topics
+     */
+    public static void setNrofTopics(int topics) {
+        if (topics < 1) {
+            throw new IllegalArgumentException("Invalid number of topics " + topics);
+        }
+        nrofTopics = topics;
+    }
+
+    /**
+     * Returns the number of different topics of the scenario.
+     *
+     * @return The number of topics
+     */
+    public static int getNrofTopics() {
+        return nrofTopics;
+    }
+
+    /**
+     * Returns the number of entries of the profile.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return topics.length;
+    }
+
+    /**
+     * Returns true if the profile has no entries.
+     *
+     * @return true for an empty profile
+     */
+    public boolean isEmpty() {
+        return topics.length == 0;
+    }
+
+    /**
+     * Returns the topic of an entry.
+     *
+     * @param i Index of the entry
+     * @return The topic
+     */
+    public int getTopic(int i) {
+        return topics[i];
+    }
+
+    /**
+     * Returns the interest weight of an entry.
+     *
+     * @param i Index of the entry
+     * @return The weight
+     */
+    public double getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Returns the smallest sub-topic value of an entry.
+     *
+     * @param i Index of the entry
+     * @return The lower bound of the range
+     */
+    public int getMin(int i) {
+        return ranges[2 * i];
+    }
+
+    /**
+     * Returns the largest sub-topic value of an entry.
+     *
+     * @param i Index of the entry
+     * @return The upper bound of the range
+     */
+    public int getMax(int i) {
+        return ranges[2 * i + 1];
+    }
+
+    /**
+     * Checks whether the profile has an entry of a topic.
+     *
+     * @param topic The topic
+     * @return true if the subscriber is interested in the topic
+     */
+    public boolean hasTopic(int topic) {
+        int word = topic >> 6;
+        return topic >= 0 && word < topicMask.length &&
+                (topicMask[word] & (1L << topic)) != 0;
+    }
+
+    /**
+     * Returns the interest weight of a topic, i.e. the weight of the first
+     * entry of that topic.
+     *
+     * @param topic The topic
+     * @return The weight or 0 if the topic is not in the profile
+     */
+    public double getTopicWeight(int topic) {
+        return topic >= 0 && topic < topicWeights.length ? topicWeights[topic] : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("InterestProfile[");
+        for (int i = 0; i < topics.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(topics[i]).append(':').append(weights[i]).append(" [")
+                    .append(getMin(i)).append(',').append(getMax(i)).append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -1,11 +1,12 @@
 package routing.KDC.Subscriber;
 
-import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.SimScenario;
 import routing.KDC.Broker.GetAllBroker;
+import routing.KDC.ControlDelivery;
 import routing.KDC.GetAllKDC;
+import routing.KDC.RoleDirectory;
 import routing.util.TupleDe;
 
 import java.util.*;
@@ -28,23 +29,19 @@ public class Subscribe {
             return false;
         }
 
-        Map<DTNHost, List<TupleDe<Boolean, Integer>>> registeredTopics = getRegisteredTopics(m);
+        Map<DTNHost, List<TupleDe<Integer, Integer>>> registeredTopics = getRegisteredTopics(m);
         if (registeredTopics == null || registeredTopics.isEmpty()) {
             return false;
         }
 
-        List<Boolean> topicNode = other.getSocialProfileOI();
-        List<TupleDe<Integer, Integer>> subTopics = other.getNumericAtribute();
-        if (topicNode == null || subTopics == null || subTopics.isEmpty()) {
+        InterestProfile profile = other.getInterestProfile();
+        if (profile == null || profile.isEmpty()) {
             return false;
         }
 
-        if (registeredTopics.isEmpty()) {
-            return false;
-        }
-        // Create the new Map structure to store topicNode and subTopics
-        Map<DTNHost, TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> topicSubTopicMap = new HashMap<>();
-        topicSubTopicMap.put(other, new TupleDe<>(topicNode, subTopics));
+        // Create the new Map structure to store the subscriber's profile
+        Map<DTNHost, InterestProfile> topicSubTopicMap = new HashMap<>();
+        topicSubTopicMap.put(other, profile);
         return processSubscription(m, registeredTopics, topicSubTopicMap);
     }
 
@@ -58,20 +55,17 @@ public class Subscribe {
      * @return true if subscription is successful, false otherwise.
      */
     private boolean processSubscription(Message m,
-                                        Map<DTNHost, List<TupleDe<Boolean, Integer>>> registeredTopics,
-                                        Map<DTNHost, TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> topicSubTopicMap) {
-
-        for (DTNHost broker : SimScenario.getInstance().getHosts()) {
-            for (Connection con : broker.getConnections()) {
-                // send msg to broker
-                DTNHost otherBroker = con.getOtherNode(broker);
-                if (otherBroker != null && otherBroker.isBroker()) {
-                    addMessageToHosts(m, otherBroker);
-                    return sendMessageToKDCs(m, registeredTopics, topicSubTopicMap);
-                }
-            }
+                                        Map<DTNHost, List<TupleDe<Integer, Integer>>> registeredTopics,
+                                        Map<DTNHost, InterestProfile> topicSubTopicMap) {
+
+        // send msg to a broker that is currently connected to some host
+        DTNHost broker = SimScenario.getInstance().getRoleDirectory()
+                .findConnectedHost(RoleDirectory.BROKER);
+        if (broker == null) {
+            return false;
         }
-        return false;
+        addMessageToHosts(m, broker);
+        return sendMessageToKDCs(m, registeredTopics, topicSubTopicMap);
     }
 
     /**
@@ -80,49 +74,38 @@ public class Subscribe {
      * @param m     The message to send.
      * @return true if the message is successfully sent to KDCs, false otherwise.
      */
-    private boolean sendMessageToKDCs(Message m, Map<DTNHost, List<TupleDe<Boolean, Integer>>> registeredTopics, Map<DTNHost, TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> topicSubTopicMap) {
+    private boolean sendMessageToKDCs(Message m, Map<DTNHost, List<TupleDe<Integer, Integer>>> registeredTopics, Map<DTNHost, InterestProfile> topicSubTopicMap) {
 
 
         // Iterate over the topic-subtopic map
-        Map<DTNHost, List<TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>>> hostDataMap = new HashMap<>();
-        for (Map.Entry<DTNHost, TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>>> entry : topicSubTopicMap.entrySet()) {
+        Map<DTNHost, InterestProfile> hostDataMap = new HashMap<>();
+        for (Map.Entry<DTNHost, InterestProfile> entry : topicSubTopicMap.entrySet()) {
             DTNHost subscriberID = entry.getKey();  // Retrieve the DTNHost
-            TupleDe<List<Boolean>, List<TupleDe<Integer, Integer>>> tupleData = entry.getValue();
-            List<Boolean> topicNode = tupleData.getFirst();
-            List<TupleDe<Integer, Integer>> subTopics = tupleData.getSecond();
-
-            Set<Boolean> topicSet = new HashSet<>(topicNode);  // Set of topics for this subscriber
+            InterestProfile profile = entry.getValue();
 
             // Populate hostDataMap for the subscriber
-            hostDataMap.put(subscriberID, Collections.singletonList(tupleData));
+            hostDataMap.put(subscriberID, profile);
 
-            // Process each connection to the KDC
-            for (DTNHost kdc : SimScenario.getInstance().getHosts()) {
+            // Only subscribers that share a topic with a registered publisher are forwarded
+            if (!hasMatchingTopic(registeredTopics, profile)) {
+                continue;
+            }
+
+            // Process each KDC that is currently connected
+            for (DTNHost kdc : SimScenario.getInstance().getRoleDirectory()
+                    .getConnectedHosts(RoleDirectory.KDC)) {
                 // Check if the subscriber has reached the subscription threshold
                 int currentSubscriptionCount = subscriptionCountMap.getOrDefault(kdc, 0);
                 if (currentSubscriptionCount >= SUBSCRIPTION_THRESHOLD) {
                     return false;
                 }
-                for (Connection con : kdc.getConnections()) {
-                    DTNHost getKdc = con.getOtherNode(kdc);
-                    if (getKdc != null && getKdc.isKDC()) {
-                        // For each registered topic, check if the topic matches
-                        for (Map.Entry<DTNHost, List<TupleDe<Boolean, Integer>>> registeredEntry : registeredTopics.entrySet()) {
-                            for (TupleDe<Boolean, Integer> tuple : registeredEntry.getValue()) {
-                                if (topicSet.contains(tuple.getFirst())) {
-                                    // Add the host data to the message property
-                                    m.addProperty("KDC_Subscribe_", hostDataMap);
-                                    addMessageToHosts(m, getKdc);
-                                    // Increment the subscription count only once after successful subscription
-                                    subscriptionCountMap.put(getKdc, currentSubscriptionCount + 1);
-                                    return true; // Message successfully sent to KDC
-                                }
-                            }
-                        }
-                    }
-                }
+                // Add the host data to the message property
+                m.addProperty("KDC_Subscribe_", hostDataMap);
+                addMessageToHosts(m, kdc);
+                // Increment the subscription count only once after successful subscription
+                subscriptionCountMap.put(kdc, currentSubscriptionCount + 1);
+                return true; // Message successfully sent to KDC
             }
-
         }
 
         return false; // No KDCs found or no matching topics
@@ -130,14 +113,33 @@ public class Subscribe {
 
 
 
+    /**
+     * Checks if any registered topic is one of the given topics.
+     *
+     * @param registeredTopics The registered topics of the publishers.
+     * @param profile          The interest profile of the subscriber.
+     * @return true if at least one registered topic matches, false otherwise.
+     */
+    private boolean hasMatchingTopic(Map<DTNHost, List<TupleDe<Integer, Integer>>> registeredTopics,
+                                     InterestProfile profile) {
+        for (List<TupleDe<Integer, Integer>> topics : registeredTopics.values()) {
+            for (TupleDe<Integer, Integer> tuple : topics) {
+                if (profile.hasTopic(tuple.getFirst())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Retrieves registered topics from the given message.
      *
      * @param m The message object.
      * @return A map containing registered topics associated with DTNHosts.
      */
-    private Map<DTNHost, List<TupleDe<Boolean, Integer>>> getRegisteredTopics(Message m) {
-        return (Map<DTNHost, List<TupleDe<Boolean, Integer>>>) m.getProperty("KDC_Register_");
+    private Map<DTNHost, List<TupleDe<Integer, Integer>>> getRegisteredTopics(Message m) {
+        return (Map<DTNHost, List<TupleDe<Integer, Integer>>>) m.getProperty("KDC_Register_");
     }
 
     /**
@@ -147,7 +149,7 @@ public class Subscribe {
      * @param hosts The list of hosts to which the message should be added.
      */
     private void addMessageToHosts(Message m, DTNHost hosts) {
-        hosts.addBufferToHost(m);
+        ControlDelivery.deliver(m, hosts);
     }
 
 
@@ -10,13 +10,10 @@ public class MessageRegistryImpl implements MessageRegistry {
 
     // Property yang diperhitungkan untuk pending messages
     private static final List<String> PENDING_PROPERTIES = Arrays.asList(
-            "topic",
             "KDC_Get_Register_",
             "KDC_Register_",
             "KDC_Get_Subscribe_",
-            "KDC_Subscribe_",
-            "KDC_Key_Encryption_",
-            "KDC_Key_Authentication_"
+            "KDC_Subscribe_"
     );
 
     @Override
@@ -35,6 +32,10 @@ public class MessageRegistryImpl implements MessageRegistry {
     public List<Message> getPendingMessages() {
         List<Message> pending = new ArrayList<>();
         for (Message msg : messageList) {
+            if (msg.hasPubSubHeader()) {
+                pending.add(msg);
+                continue;
+            }
             for (String property : PENDING_PROPERTIES) {
                 if (msg.getProperty(property) != null) {
                     pending.add(msg);
@@ -22,6 +22,8 @@ import core.SettingsError;
 import core.SimClock;
 import core.SimError;
 import core.Tuple;
+import routing.util.EvictionIndex;
+import routing.util.EvictionPolicy;
 import routing.util.TupleDe;
 
 /**
@@ -100,6 +102,14 @@ public abstract class MessageRouter {
      * The messages this router is carrying
      */
     private HashMap<String, Message> messages;
+    /**
+     * Total size of the messages this router is carrying
+     */
+    private long bufferOccupancy;
+    /**
+     * The carried messages in eviction order (null until requested)
+     */
+    private EvictionIndex evictionIndex;
     /**
      * The messages this router has received as the final recipient
      */
@@ -173,6 +183,8 @@ public abstract class MessageRouter {
     public void init(DTNHost host, List<MessageListener> mListeners) {
         this.incomingMessages = new HashMap<String, Message>();
         this.messages = new HashMap<String, Message>();
+        this.bufferOccupancy = 0;
+        this.evictionIndex = null;
         this.deliveredMessages = new HashMap<String, Message>();
         this.mListeners = mListeners;
         this.host = host;
@@ -298,17 +310,29 @@ public abstract class MessageRouter {
      * isn't defined)
      */
     public int getFreeBufferSize() {
-        int occupancy = 0;
-
         if (this.getBufferSize() == Integer.MAX_VALUE) {
             return Integer.MAX_VALUE;
         }
 
-        for (Message m : getMessageCollection()) {
-            occupancy += m.getSize();
-        }
+        return (int) (this.getBufferSize() - this.bufferOccupancy);
+    }
 
-        return this.getBufferSize() - occupancy;
+    /**
+     * Returns the index of the carried messages in the order of the given
+     * eviction policy. The index is built on the first call and kept up to
+     * date after that. Routers that evict should make the first call in
+     * {@link #init(DTNHost, List)}, while the buffer is empty, so that the
+     * ties of the index follow the order the messages were added in.
+     *
+     * @param policy The eviction policy (must be the same on every call)
+     * @return The index
+     */
+    protected EvictionIndex getEvictionIndex(EvictionPolicy policy) {
+        if (this.evictionIndex == null) {
+            this.evictionIndex = new EvictionIndex(policy,
+                    this.messages.values());
+        }
+        return this.evictionIndex;
     }
 
     /**
@@ -469,7 +493,14 @@ public abstract class MessageRouter {
      * message, if false, nothing is informed.
      */
     public void addToMessages(Message m, boolean newMessage) {
-        this.messages.put(m.getId(), m);
+        Message old = this.messages.put(m.getId(), m);
+        if (old != null) {
+            this.bufferOccupancy -= old.getSize();
+        }
+        this.bufferOccupancy += m.getSize();
+        if (this.evictionIndex != null) {
+            this.evictionIndex.add(m);
+        }
 
         if (newMessage) {
             for (MessageListener ml : this.mListeners) {
@@ -486,6 +517,12 @@ public abstract class MessageRouter {
      */
     protected Message removeFromMessages(String id) {
         Message m = this.messages.remove(id);
+        if (m != null) {
+            this.bufferOccupancy -= m.getSize();
+            if (this.evictionIndex != null) {
+                this.evictionIndex.remove(id);
+            }
+        }
         return m;
     }
 
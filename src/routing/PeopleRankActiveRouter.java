@@ -8,7 +8,6 @@ package routing;
 import core.*;
 import java.util.*;
 import routing.community.*;
-import routing.util.TupleDe;
 
 
 public class PeopleRankActiveRouter extends ActiveRouter {
@@ -26,7 +25,7 @@ public class PeopleRankActiveRouter extends ActiveRouter {
     protected double treshold; // Threshold for considering connections
 
     // create data structure 
-    protected Map <DTNHost, TupleDe <Double, Integer>> per;
+    protected PeopleRankTable per;
     protected Map <DTNHost, List<Duration>> connHistory;
     protected Map<DTNHost,Double> startTimeStamps;
     protected Set <DTNHost> thisHostSet;
@@ -50,7 +49,7 @@ public class PeopleRankActiveRouter extends ActiveRouter {
             this.treshold = 700; //get default by the paper
         }
         connHistory = new HashMap<DTNHost, List<Duration>>();
-        per = new HashMap<>();
+        per = new PeopleRankTable(dumpingFactor);
         thisHostSet = new HashSet<DTNHost>();
     }
 
@@ -69,7 +68,7 @@ public class PeopleRankActiveRouter extends ActiveRouter {
 
         this.connHistory = new HashMap<DTNHost, List<Duration>>();
         this.thisHostSet = new HashSet<DTNHost>();
-        this.per = new HashMap<>();        
+        this.per = new PeopleRankTable(dumpingFactor);
      }
 
         @Override
@@ -100,26 +99,12 @@ public class PeopleRankActiveRouter extends ActiveRouter {
                  * every time connection Down
                  */
 
-                  // i use iterator fo loop
-                Iterator <Map.Entry<DTNHost, List<Duration >>> iterator = connHistory.entrySet().iterator();
+                //get total number of friend
+                int totalFriend = connHistory.size() +
+                        (connHistory.containsKey(other) ? 0 : 1);
 
-               while (iterator.hasNext()) {
-
-               Map.Entry<DTNHost, List <Duration>> entry = iterator.next();
-
-               double friendRank = calculatePer(entry.getKey());
-
-              //get total number of friend
-               Set <DTNHost> Fj = new HashSet<>(connHistory.keySet());
-               Fj.add(other);
-               int totalFriend = Fj.size();
-
-               //create a new tuple with the friend rank adn total number of friend
-               TupleDe <Double, Integer> tuple = new TupleDe<>(friendRank, totalFriend);
-
-               //update the tuple in the per map
-               per.put(other, tuple);
-        }
+                //update the rank and total number of friend in per
+                per.put(other, calculatePer(other), totalFriend);
             }
         }
      /**
@@ -139,25 +124,8 @@ public class PeopleRankActiveRouter extends ActiveRouter {
 
      public double calculatePer (DTNHost host)
      {
-        double dampingFactor = this.dumpingFactor;
-
-        double sum = 0.0;
-
-        int totalFriend = 0;
-        for (TupleDe<Double, Integer> tuple : per.values())
-        {
-            if (!tuple.getFirst().equals(host)) 
-            {
-                double friendRanking = tuple.getFirst();
-                int friendOfOtherHost = tuple.getSecond();
-
-                if (friendOfOtherHost > 0) 
-                {
-                    sum +=friendRanking / totalFriend;
-                }
-            }
-        }
-        return (1 - dumpingFactor) + dampingFactor * sum ;
+        // the running sums of per hold Σ PeR(Nj) and Σ |F(Nj)|
+        return per.getRank();
      }
 
     
@@ -7,11 +7,15 @@
 package routing;
 
 import core.*;
+import routing.KDC.ControlDelivery;
+import routing.KDC.EncryptedContent;
 import routing.KDC.NAKT.KDCLoad;
 import routing.KDC.Publisher.EncryptionUtil;
+import routing.KDC.Subscriber.InterestProfile;
 import routing.KDC.Subscriber.KeySubscriber;
 import routing.util.TupleDe;
 
+import javax.crypto.SecretKey;
 import java.util.*;
 
 /**
@@ -22,6 +26,27 @@ import java.util.*;
 public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber, KDCLoad {
     // Namespace settings
     private static final String PUBSROUTING_NS = "PublishAndSubscriberRouting";
+    /**
+     * Broadcast control messages -setting id ({@value}). Boolean valued.
+     * If true, KDC control messages are copied to the buffer of every host
+     * (the original behaviour); if false, only to the recipient and its
+     * connected peers. Default = false.
+     */
+    public static final String BROADCAST_CONTROL_S = "broadcastControl";
+    /**
+     * Number of topics -setting id ({@value}). Integer valued. Publishers
+     * and subscribers pick their topics from <code>0 ... nrofTopics-1</code>.
+     * Default = {@link InterestProfile#DEF_NROF_TOPICS}.
+     */
+    public static final String NROF_TOPICS_S = "nrofTopics";
+
+    /** Queues with fewer entries than this are never compacted */
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    /** forwarding candidates of each connection, best interest similarity first */
+    private Map<Connection, PriorityQueue<Candidate>> forwardQueues;
+    /** number of candidates created so far (orders candidates of equal score) */
+    private long nrofCandidates;
 
 
     /**
@@ -34,7 +59,13 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
         // Call the superclass constructor to initialize inherited fields
         super(s);
         Settings ccSettings = new Settings(PUBSROUTING_NS);
-
+        if (ccSettings.contains(BROADCAST_CONTROL_S)) {
+            ControlDelivery.setBroadcast(ccSettings.getBoolean(BROADCAST_CONTROL_S));
+        }
+        if (ccSettings.contains(NROF_TOPICS_S)) {
+            InterestProfile.setNrofTopics(ccSettings.getInt(NROF_TOPICS_S));
+        }
+        this.forwardQueues = new HashMap<>();
     }
 
     /**
@@ -45,6 +76,7 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
     protected PublishAndSubscriberRouting(PublishAndSubscriberRouting r) {
         // Call the superclass copy constructor
         super(r);
+        this.forwardQueues = new HashMap<>();
     }
 
     /**
@@ -61,11 +93,10 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
             if (host.isPublisher()) {
 
                 // Ambil properti pesan
-                Map<DTNHost, TupleDe<String, String>> getKeyEnc =
-                        (Map<DTNHost, TupleDe<String, String>>) msg.getProperty(MESSAGE_KEY_ENCRYPTION_S);
+                Map<DTNHost, TupleDe<String, SecretKey>> getKeyEnc = msg.getPublisherKeys();
 
-                Map<DTNHost, List<TupleDe<Boolean, Integer>>> getTopPubs =
-                        (Map<DTNHost, List<TupleDe<Boolean, Integer>>>) msg.getProperty(MESSAGE_REGISTER_S);
+                Map<DTNHost, List<TupleDe<Integer, Integer>>> getTopPubs =
+                        (Map<DTNHost, List<TupleDe<Integer, Integer>>>) msg.getProperty(MESSAGE_REGISTER_S);
 
                 // Validasi data
                 if (getKeyEnc == null || getKeyEnc.isEmpty() || getTopPubs == null || getTopPubs.isEmpty()) {
@@ -73,19 +104,19 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
                 }
                 boolean success = false;
                 System.out.println("mulai");
-                for (Map.Entry<DTNHost, List<TupleDe<Boolean, Integer>>> entryTop : getTopPubs.entrySet()) {
+                for (Map.Entry<DTNHost, List<TupleDe<Integer, Integer>>> entryTop : getTopPubs.entrySet()) {
                     DTNHost pubsId = entryTop.getKey();
-                    List<TupleDe<Boolean, Integer>> values = entryTop.getValue();
+                    List<TupleDe<Integer, Integer>> values = entryTop.getValue();
 
                     // 🛑 Cek apakah list values kosong
                     if (values == null || values.isEmpty()) {
                         continue;
                     }
 
-                    TupleDe<Boolean, Integer> topPub = values.get(0); // topic sub-topic publisher
+                    TupleDe<Integer, Integer> topPub = values.get(0); // topic sub-topic publisher
 
                     // Ambil langsung sebagai TupleDe
-                    TupleDe<String, String> keyPub = getKeyEnc.get(pubsId);
+                    TupleDe<String, SecretKey> keyPub = getKeyEnc.get(pubsId);
 
                     if (keyPub == null) {
                         continue;
@@ -95,10 +126,7 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
 
                     // Generate random message
                     String randomMessage = "abcdefghijABCDEFGHIJ"; // 20 karakter
-                    String hashedMessage = EncryptionUtil.encryptMessage(randomMessage, keyPub.getSecond());
-
-                    Map<Boolean, TupleDe<Integer, String>> messageData = new HashMap<>();
-                    messageData.put(topPub.getFirst(), new TupleDe<>(topPub.getSecond(), hashedMessage));
+                    EncryptedContent hashedMessage = EncryptionUtil.encryptMessage(randomMessage, keyPub);
 
 //            System.out.println("get msg before encryption: " + randomMessage);
 //            System.out.println("get key encryption: " + keyPub.getSecond());
@@ -106,10 +134,10 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
 
                     makeRoomForMessage(msg.getSize());
                     msg.setTtl(this.msgTtl);
-                    msg.addProperty(MESSAGE_TOPICS_S, messageData);
+                    msg.setPublication(topPub.getFirst(), topPub.getSecond(),
+                            hashedMessage.getKeyPath(), hashedMessage.getCiphertext());
                     addToMessages(msg, true); // new msg add to buffer
                     if (sendForPublishing(msg)) {
-                System.out.println("success create msg with encrypt" + msg.getProperty(MESSAGE_TOPICS_S));
                         success = true;
                     }
                 }
@@ -165,31 +193,104 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
 
 
     /**
-     * Comparator for sorting messages based on the highest interest similarity.
-     * Messages with a higher interest similarity will be prioritized (sorted in descending order).
+     * A buffered message that may be forwarded over a connection together
+     * with the interest similarity of the connected host, computed once when
+     * the candidate is queued.
      */
-    private class InterestSimilarityComparator implements Comparator<Tuple<Message, Connection>> {
-        @Override
-        public int compare(Tuple<Message, Connection> tuple1, Tuple<Message, Connection> tuple2) {
-            double d1 = sumList(countInterestTopic(tuple1.getKey(), tuple1.getValue().getOtherNode(getHost())));
-            double d2 = sumList(countInterestTopic(tuple2.getKey(), tuple2.getValue().getOtherNode(getHost())));
-
-            return Double.compare(d2, d1);
+    private static final class Candidate {
+        private final Message msg;
+        private final double score;
+        private final long seq;
+
+        private Candidate(Message msg, double score, long seq) {
+            this.msg = msg;
+            this.score = score;
+            this.seq = seq;
         }
     }
 
     /**
-     * Helper method to sum the values in a list of interest similarity scores.
+     * Comparator for ordering candidates based on the highest interest similarity.
+     * Messages with a higher interest similarity will be prioritized (descending order),
+     * candidates with equal similarity in the order they were queued.
+     */
+    private static final Comparator<Candidate> INTEREST_SIMILARITY_ORDER = (c1, c2) -> {
+        int cmp = Double.compare(c2.score, c1.score);
+        return cmp != 0 ? cmp : Long.compare(c1.seq, c2.seq);
+    };
+
+    /**
+     * Creates or drops the forwarding queue of a connection.
      *
-     * @param lists A list of interest similarity values.
-     * @return The total sum of all values in the list.
+     * @param con The connection that changed state
      */
-    private double sumList(List<Double> lists) {
-        double total = 0.0;
-        for (double lst : lists) {
-            total += lst;
+    @Override
+    public void changedConnection(Connection con) {
+        super.changedConnection(con);
+
+        if (con.isUp()) {
+            DTNHost other = con.getOtherNode(getHost());
+            PriorityQueue<Candidate> queue = new PriorityQueue<>(INTEREST_SIMILARITY_ORDER);
+            for (Message msg : getMessageCollection()) {
+                offerCandidate(queue, msg, other);
+            }
+            this.forwardQueues.put(con, queue);
+        } else {
+            this.forwardQueues.remove(con);
         }
-        return total;
+    }
+
+    /**
+     * Adds a message to the buffer and queues it for every connection whose
+     * host shares the message's interest.
+     */
+    @Override
+    public void addToMessages(Message m, boolean newMessage) {
+        boolean queued = getMessage(m.getId()) == m;
+        super.addToMessages(m, newMessage);
+        if (queued) {
+            return; // same message added again (e.g. for several brokers)
+        }
+
+        for (Map.Entry<Connection, PriorityQueue<Candidate>> entry : this.forwardQueues.entrySet()) {
+            PriorityQueue<Candidate> queue = entry.getValue();
+            if (queue.size() >= MIN_COMPACT_SIZE && queue.size() > 2 * getNrofMessages()) {
+                queue.removeIf(c -> !isBuffered(c));
+            }
+            offerCandidate(queue, m, entry.getKey().getOtherNode(getHost()));
+        }
+    }
+
+    /**
+     * Queues a message for a host if the host shares its interest.
+     */
+    private void offerCandidate(PriorityQueue<Candidate> queue, Message msg, DTNHost other) {
+        if (msg != null && isSameInterest(msg, other)) {
+            queue.add(new Candidate(msg, getInterestSimilarity(msg, other), nrofCandidates++));
+        }
+    }
+
+    /**
+     * Returns true if the candidate's message is still in this router's buffer.
+     * Candidates of deleted or dropped messages are removed from the queues
+     * lazily when they are met.
+     */
+    private boolean isBuffered(Candidate c) {
+        return getMessage(c.msg.getId()) == c.msg;
+    }
+
+    /**
+     * Returns the best candidate of a queue that is still buffered here and
+     * not yet held by the other host. Other candidates met at the head of the
+     * queue are dropped.
+     */
+    private Candidate peekCandidate(PriorityQueue<Candidate> queue, MessageRouter othRouter) {
+        Candidate head = queue.peek();
+        while (head != null && (!isBuffered(head) || othRouter.hasMessage(head.msg.getId()))) {
+            queue.poll();
+            head = queue.peek();
+        }
+        return head;
     }
 
     /**
@@ -218,15 +319,13 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
 
     /**
      * Attempts to transfer messages to other nodes.
-     * - Scans all connections for potential recipients.
-     * - Checks if the other node is a subscriber.
-     * - Sorts messages and attempts to transfer them.
+     * - Uses the forwarding queues of the connections whose other node is not busy.
+     * - Takes the best candidate over all these queues (highest interest similarity).
+     * - Tries the candidates in that order until one transfer is started.
      *
      * @return The message that was successfully transferred, or null if no transfer occurred.
      */
     private Tuple<Message, Connection> tryOtherMessages() {
-        List<Tuple<Message, Connection>> messages = new ArrayList<>();
-
         // Get all connections
         Collection<Connection> connections = getConnections();
         if (connections == null) {
@@ -239,48 +338,74 @@ public class PublishAndSubscriberRouting extends CCDTN implements KeySubscriber,
             return null;
         }
 
-        // Get the message collection
-        Collection<Message> msgCollection = getMessageCollection();
-        if (msgCollection.isEmpty()) {
+        if (getNrofMessages() == 0) {
             return null;
         }
 
-        // Iterate through all connections
+        // Connections whose other end is free and that have candidates
+        List<Connection> open = new ArrayList<>();
         for (Connection con : connections) {
             DTNHost other = con.getOtherNode(host);
             PublishAndSubscriberRouting othRouter = (PublishAndSubscriberRouting) other.getRouter();
             if (othRouter.isTransferring()) {
                 continue;
             }
+            PriorityQueue<Candidate> queue = this.forwardQueues.get(con);
+            if (queue != null && !queue.isEmpty()) {
+                open.add(con);
+            }
+        }
 
-            // Iterate through the message collection
-            for (Message msg : msgCollection) {
-                if (msg == null) {
+        // Try the candidates in order of interest similarity over all
+        // connections until one is accepted. Candidates that were tried but
+        // not accepted go back to their queues afterwards.
+        List<Candidate> tried = new ArrayList<>();
+        List<Connection> triedCons = new ArrayList<>();
+        Tuple<Message, Connection> started = null;
+        while (started == null && !open.isEmpty()) {
+            int best = -1;
+            Candidate bestCandidate = null;
+            for (int i = 0; i < open.size(); ) {
+                Connection con = open.get(i);
+                Candidate head = peekCandidate(this.forwardQueues.get(con),
+                        con.getOtherNode(host).getRouter());
+                if (head == null) {
+                    open.remove(i);
                     continue;
                 }
-
-                if (othRouter.hasMessage(msg.getId())) {
-                    continue; // skip messages that the other one has
-                }
-
-
-                if (isSameInterest(msg, other)) {
-                    messages.add(new Tuple<>(msg, con));
+                if (bestCandidate == null || INTEREST_SIMILARITY_ORDER.compare(head, bestCandidate) < 0) {
+                    best = i;
+                    bestCandidate = head;
                 }
+                i++;
+            }
+            if (bestCandidate == null) {
+                break;
+            }
 
+            Connection con = open.get(best);
+            this.forwardQueues.get(con).poll();
+            int retVal = startTransfer(bestCandidate.msg, con);
+            if (retVal == DENIED_OLD || retVal == DENIED_DELIVERED) {
+                continue; // the other host already has the message
+            }
+            tried.add(bestCandidate);
+            triedCons.add(con);
+            if (retVal == RCV_OK) {
+                started = new Tuple<>(bestCandidate.msg, con);
+            } else if (retVal == TRY_LATER_BUSY) {
+                open.remove(best);
             }
         }
 
-        // Sort messages based on interest similarity
-        messages.sort(new InterestSimilarityComparator());
-
-        // If no messages are found, return null
-        if (messages.isEmpty()) {
-            return null;
+        for (int i = 0; i < tried.size(); i++) {
+            PriorityQueue<Candidate> queue = this.forwardQueues.get(triedCons.get(i));
+            if (queue != null) {
+                queue.add(tried.get(i));
+            }
         }
 
-        // Try to transfer the messages
-        return tryMessagesForConnected(messages);
+        return started;
     }
 
 
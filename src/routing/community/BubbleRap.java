@@ -49,6 +49,9 @@ public class BubbleRap implements RoutingDecisionEngine, CommunityDetectionEngin
     }
 
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        if (centrality instanceof ContactCentrality) {
+            ((ContactCentrality) centrality).connectionUp(thisHost, peer);
+        }
     }
 
     @Override
@@ -64,6 +67,10 @@ public class BubbleRap implements RoutingDecisionEngine, CommunityDetectionEngin
 
     @Override
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
+        if (centrality instanceof ContactCentrality) {
+            ((ContactCentrality) centrality).connectionDown(thisHost, peer);
+        }
+
         // double time = startTimestamps.get(peer);
         double time = cek(thisHost, peer);
         double etime = SimClock.getTime();
@@ -29,6 +29,13 @@ import core.*;
  * <p>This computation is done at regular intervals instead of every time the 
  * global and local centrality measures are requested.</p> 
  * 
+ * <p>The encounters are recorded as connections come up and go down (see
+ * {@link ContactCentrality}) in a ring of the latest epochs, each holding the
+ * set of peers met during the epoch as a bit set indexed by host address.
+ * Epochs are aligned to multiples of the time window. Computing a centrality
+ * only reads the ring, i.e. it takes O(number of epochs) instead of a walk
+ * over the whole connection history.</p>
+ * 
  * <p>This class looks for three settings:
  * <ul>
  * <li><strong>timeWindow</strong> &ndash; the duration of each time interval 
@@ -60,7 +67,7 @@ import core.*;
  * @author PJ Dillon, University of Pittsburgh
  * @see Centrality
  */
-public class CWindowCentrality implements Centrality
+public class CWindowCentrality implements ContactCentrality
 {
 	/** length of time to consider in each epoch -setting id {@value} */
 	public static final String CENTRALITY_WINDOW_SETTING = "timeWindow";
@@ -87,6 +94,13 @@ public class CWindowCentrality implements Centrality
 	/** timestamp of last local centrality computation */ 
 	protected int lastLocalComputationTime;
 	
+	/** epoch recorded in each slot of the ring (-1 for an unused slot) */
+	protected long[] epochs;
+	/** peers met in the epoch of each slot (bit per host address) */
+	protected long[][] peersMet;
+	/** number of distinct peers met in the epoch of each slot */
+	protected int[] nrofPeersMet;
+	
 	public CWindowCentrality(Settings s) 
 	{
 		if(s.contains(CENTRALITY_WINDOW_SETTING))
@@ -97,6 +111,8 @@ public class CWindowCentrality implements Centrality
 		
 		if(s.contains(EPOCH_COUNT_SETTING))
 			EPOCH_COUNT = s.getInt(EPOCH_COUNT_SETTING);
+		
+		initEpochs();
 	}
 	
 	public CWindowCentrality(CWindowCentrality proto)
@@ -105,84 +121,113 @@ public class CWindowCentrality implements Centrality
 		// start of the sim
 		this.lastGlobalComputationTime = this.lastLocalComputationTime = 
 			-COMPUTE_INTERVAL;
+		initEpochs();
 	}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	/**
+	 * Creates an empty ring of epochs.
+	 */
+	private void initEpochs()
 	{
-		if(SimClock.getIntTime() - this.lastGlobalComputationTime < COMPUTE_INTERVAL)
-			return globalCentrality;
-		
-		// initialize
-		int[] centralities = new int[EPOCH_COUNT];
-		int epoch, timeNow = SimClock.getIntTime();
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
+		this.epochs = new long[EPOCH_COUNT];
+		Arrays.fill(this.epochs, -1);
+		this.peersMet = new long[EPOCH_COUNT][];
+		this.nrofPeersMet = new int[EPOCH_COUNT];
+	}
+	
+	public void connectionUp(DTNHost thisHost, DTNHost peer)
+	{
+		recordEncounter(peer);
+	}
+	
+	public void connectionDown(DTNHost thisHost, DTNHost peer)
+	{
+		// a contact spanning an epoch boundary counts in both epochs
+		recordEncounter(peer);
+	}
+	
+	/**
+	 * Marks a peer as met in the current epoch, reusing the ring slot of the 
+	 * epoch that has fallen out of the window.
+	 * 
+	 * @param peer The peer met
+	 */
+	protected void recordEncounter(DTNHost peer)
+	{
+		long epoch = SimClock.getIntTime() / CENTRALITY_TIME_WINDOW;
+		int slot = (int)(epoch % EPOCH_COUNT);
+		if(this.epochs[slot] != epoch)
+		{
+			this.epochs[slot] = epoch;
+			this.nrofPeersMet[slot] = 0;
+			if(this.peersMet[slot] != null)
+				Arrays.fill(this.peersMet[slot], 0);
+		}
 		
-		for(int i = 0; i < EPOCH_COUNT; i++)
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
+		int address = peer.getAddress();
+		long[] bits = this.peersMet[slot];
+		if(bits == null || (address >> 6) >= bits.length)
+		{
+			int words = Math.max((address >> 6) + 1, 
+					bits == null ? 0 : 2 * bits.length);
+			bits = this.peersMet[slot] = bits == null ? new long[words] :
+				Arrays.copyOf(bits, words);
+		}
+		long mask = 1L << address;
+		if((bits[address >> 6] & mask) == 0)
+		{
+			bits[address >> 6] |= mask;
+			this.nrofPeersMet[slot]++;
+		}
+	}
+	
+	/**
+	 * Averages the number of distinct peers met per epoch over the epochs 
+	 * from the oldest epoch (within the window) with an encounter up to the 
+	 * current one. 
+	 * 
+	 * @param community Bits of the hosts to count, or null to count all
+	 * @return The average degree
+	 */
+	protected double averageDegree(long[] community)
+	{
+		long now = SimClock.getIntTime() / CENTRALITY_TIME_WINDOW;
+		int sum = 0, oldest = 0;
 		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-		int epochControl=0;
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
+		for(int age = 0; age < EPOCH_COUNT && age <= now; age++)
 		{
-			DTNHost h = entry.getKey();
-			for(Duration d : entry.getValue())
+			long epoch = now - age;
+			int slot = (int)(epoch % EPOCH_COUNT);
+			if(this.epochs[slot] != epoch || this.nrofPeersMet[slot] == 0)
+				continue;
+			
+			int count;
+			if(community == null)
+				count = this.nrofPeersMet[slot];
+			else
 			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-//				System.out.println("EPOCH_COUNT "+EPOCH_COUNT);
-//				System.out.println("time now: "+timeNow);
-//				System.out.println("timePassed: "+timePassed);
-				if(timePassed > CENTRALITY_TIME_WINDOW * EPOCH_COUNT)//{
-					//System.out.println("break\n");
-					break;
-			//	}
-				// compute the epoch this contact belongs to
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-				if(epoch>epochControl)
-					epochControl=epoch;
-//				System.out.println("epoch: "+epoch);
-				
-				// Only consider each node once per epoch
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-//				System.out.println("nodesAlreadyCounted: "+nodesAlreadyCounted);
-//				System.out.println("h: "+h);
-//				if(nodesAlreadyCounted!=null)
-//					System.out.println("nodesAlreadyCounted.contains(h): "+nodesAlreadyCounted.contains(h));
-//				else
-//					System.out.println("nodesAlreadyCounted.contains(h): NULL");
-//				if(nodesAlreadyCounted!=null && nodesAlreadyCounted.contains(h)){ 
-				if(nodesAlreadyCounted.contains(h))
-//				{	
-//					System.out.println("continue\n");
-					continue;
-//				}
-				// increment the degree for the given epoch
-//				System.out.println("centralities["+epoch+"]: " + centralities[epoch] + ", size: " + centralities.length);
-//				System.out.println("epoch: "+epoch);
-				centralities[epoch]++;
-				nodesAlreadyCounted.add(h);
-//				System.out.println( "Add "+h+ " to nodesAlreadyCounted:"+nodesAlreadyCounted +"\n");
+				count = 0;
+				long[] bits = this.peersMet[slot];
+				for(int i = 0, n = Math.min(bits.length, community.length); i < n; i++)
+					count += Long.bitCount(bits[i] & community[i]);
+			}
+			
+			if(count > 0)
+			{
+				sum += count;
+				oldest = age;
 			}
 		}
-//		System.out.println("SAINDO PRIMEIRO FOR");
-
-		// compute and return average node degree
-		int control = 0, sum = 0;
-		for(int i = 0; i < epochControl+1; i++){ // CHANGE FROM for(int i = 0; i < EPOCH_COUNT; i++){ 
-//			System.out.println("centralities["+i+"]: "+centralities[i]);
-			sum += centralities[i];
-			control++;
-		}
-//		System.out.println("epochControl: "+ epochControl);
-//		System.out.println("control: "+ control);
-		this.globalCentrality = ((double)sum) / control; // CHANGED FROM this.globalCentrality = ((double)sum) / EPOCH_COUNT;
-//		System.out.println(this+".globalCentrality: "+this.globalCentrality+"\n");
 		
+		return ((double)sum) / (oldest + 1);
+	}
+	
+	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	{
+		if(SimClock.getIntTime() - this.lastGlobalComputationTime < COMPUTE_INTERVAL)
+			return globalCentrality;
+		
+		this.globalCentrality = averageDegree(null);
 		this.lastGlobalComputationTime = SimClock.getIntTime();
 		
 		return this.globalCentrality;
@@ -194,74 +239,30 @@ public class CWindowCentrality implements Centrality
 		if(SimClock.getIntTime() - this.lastLocalComputationTime < COMPUTE_INTERVAL)
 			return localCentrality;
 		
-		// centralities will hold the count of unique encounters in each epoch
-		int[] centralities = new int[EPOCH_COUNT];
-		int epoch, timeNow = SimClock.getIntTime();
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
-		
-		int epochControl=0;
-		
-		for(int i = 0; i < EPOCH_COUNT; i++)
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
-		
 		// local centrality only considers nodes in the local community
-		Set<DTNHost> community = cd.getLocalCommunity();
-		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			DTNHost h = entry.getKey();
-			
-			// if the host isn't in the local community, we don't consider it
-			if(!community.contains(h))
-				continue;
-			
-			for(Duration d : entry.getValue())
-			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-				if(timePassed > CENTRALITY_TIME_WINDOW * EPOCH_COUNT)
-					break;
-				
-				// compute the epoch this contact belongs to
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-				if(epoch>epochControl)
-					epochControl=epoch;
-				
-				// Only consider each node once per epoch
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-				if(nodesAlreadyCounted.contains(h))
-					continue;
-				
-				// increment the degree for the given epoch
-//				System.out.println("epoch: "+epoch);
-				centralities[epoch]++;
-				nodesAlreadyCounted.add(h);
-			}
-		}
-//		System.out.println("SAINDO PRIMEIRO FOR");
-		// compute and return average node degree
-		int control = 0, sum = 0;
-		for(int i = 0; i < epochControl+1; i++){ 
-//			System.out.println("centralities["+i+"]: "+centralities[i]);
-			sum += centralities[i];
-			control++;
-		}
-//		System.out.println("epochControl: "+ epochControl);
-//		System.out.println("control: "+ control);
-		
-		this.localCentrality = ((double)sum) / control; 
-//		System.out.println(this+".localCentrality: "+this.localCentrality+"\n");
-		
+		this.localCentrality = averageDegree(toBits(cd.getLocalCommunity()));
 		this.lastLocalComputationTime = SimClock.getIntTime();
 		
 		return this.localCentrality;
 	}
+	
+	/**
+	 * Converts a set of hosts to a bit set indexed by host address.
+	 * 
+	 * @param hosts The hosts
+	 * @return The bits
+	 */
+	protected static long[] toBits(Set<DTNHost> hosts)
+	{
+		int max = -1;
+		for(DTNHost h : hosts)
+			max = Math.max(max, h.getAddress());
+		
+		long[] bits = new long[(max >> 6) + 1];
+		for(DTNHost h : hosts)
+			bits[h.getAddress() >> 6] |= 1L << h.getAddress();
+		return bits;
+	}
 
 	public Centrality replicate()
 	{
@@ -0,0 +1,510 @@
+package routing.community;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+
+import core.*;
+import input.ConnectionEvent;
+import input.ExternalEvent;
+import input.StandardEventsReader;
+import movement.MovementModel;
+import movement.Path;
+import routing.PassiveRouter;
+
+/**
+ * <p>Replays a recorded contact trace through the {@link HostSet} based
+ * {@link KCliqueCommunityDetection} and {@link SimpleCommunityDetection} and
+ * through copies of their previous implementations that kept the sets in
+ * <code>HashSet</code>s, and checks that every host ends up with the same
+ * familiar set and local community in both. The hosts' sets are compared
+ * after every connection event that involves them.</p>
+ *
+ * <p>The trace is read like an external events file of
+ * {@link StandardEventsReader} (e.g. the output of
+ * {@link report.ConnectivityONEReport}); only its <code>CONN</code> events
+ * are used. When a connection goes up, the detection of the first host is
+ * told about the new connection; when it goes down, both detections are
+ * given the contact history of the pair, as in
+ * {@link DistributedBubbleRap}.</p>
+ *
+ * <p>The previous K-Clique implementation examined a peer's local community
+ * in the iteration order of a <code>HashSet</code> of hosts, which depends
+ * on identity hash codes and varies between runs. The copy below examines
+ * it in the order of addresses, like the current implementation, so that
+ * the results can be compared.</p>
+ *
+ * <p>Usage: <code>java routing.community.CommunityDetectionReplay traceFile
+ * [K [familiarThreshold [lambda [gamma]]]]</code> (defaults 5, 700, 0.6 and
+ * 0.6). Exits with status 1 if the implementations disagree.</p>
+ */
+public class CommunityDetectionReplay
+{
+	/** namespace of the detection settings created for the replay */
+	private static final String NS = "CommunityDetectionReplay";
+	/** number of events read from the trace at a time */
+	private static final int CHUNK_SIZE = 10000;
+
+	public static void main(String[] args)
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: java routing.community." +
+				"CommunityDetectionReplay traceFile [K [familiarThreshold " +
+				"[lambda [gamma]]]]");
+			System.exit(1);
+		}
+		String k = args.length > 1 ? args[1] : "5";
+		String familiarThreshold = args.length > 2 ? args[2] : "700";
+		String lambda = args.length > 3 ? args[3] : "0.6";
+		String gamma = args.length > 4 ? args[4] : "0.6";
+
+		Settings.init(null);
+		Settings.setSetting(NS + "." + KCliqueCommunityDetection.K_SETTING, k);
+		Settings.setSetting(NS + "." +
+			KCliqueCommunityDetection.FAMILIAR_SETTING, familiarThreshold);
+		Settings.setSetting(NS + "." +
+			SimpleCommunityDetection.LAMBDA_SETTING, lambda);
+		Settings.setSetting(NS + "." +
+			SimpleCommunityDetection.GAMMA_SETTING, gamma);
+		Settings s = new Settings(NS);
+
+		List<ConnectionEvent> trace = readTrace(new File(args[0]));
+		List<DTNHost> hosts = createHosts(trace, s);
+
+		boolean same = replay("KClique", trace, hosts,
+			new KCliqueCommunityDetection(s),
+			new LegacyKClique(Double.parseDouble(k),
+				Double.parseDouble(familiarThreshold)));
+		same &= replay("Simple", trace, hosts,
+			new SimpleCommunityDetection(s),
+			new LegacySimple(Double.parseDouble(lambda),
+				Double.parseDouble(gamma),
+				Double.parseDouble(familiarThreshold)));
+
+		if(!same)
+			System.exit(1);
+	}
+
+	/**
+	 * Reads the connection events of a trace.
+	 */
+	private static List<ConnectionEvent> readTrace(File file)
+	{
+		StandardEventsReader reader = new StandardEventsReader(file);
+		List<ConnectionEvent> trace = new ArrayList<ConnectionEvent>();
+		List<ExternalEvent> events;
+		do
+		{
+			events = reader.readEvents(CHUNK_SIZE);
+			for(ExternalEvent ee : events)
+				if(ee instanceof ConnectionEvent)
+					trace.add((ConnectionEvent)ee);
+		} while(events.size() == CHUNK_SIZE);
+		reader.close();
+		return trace;
+	}
+
+	/**
+	 * Creates hosts with addresses 0 ... the largest address of the trace.
+	 * The hosts don't move or route anything.
+	 */
+	private static List<DTNHost> createHosts(List<ConnectionEvent> trace,
+			Settings s)
+	{
+		int maxAddress = -1;
+		for(ConnectionEvent ce : trace)
+			for(int address : ce.getHostAddresses())
+				maxAddress = Math.max(maxAddress, address);
+
+		MovementModel stationary = new MovementModel() {
+			public Path getPath()
+			{
+				return null;
+			}
+
+			public Coord getInitialLocation()
+			{
+				return new Coord(0, 0);
+			}
+
+			public double nextPathAvailable()
+			{
+				return Double.MAX_VALUE;
+			}
+
+			public MovementModel replicate()
+			{
+				return this;
+			}
+		};
+		PassiveRouter router = new PassiveRouter(s);
+
+		DTNHost.reset();
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for(int i = 0; i <= maxAddress; i++)
+			hosts.add(new DTNHost(null, null, "P",
+				new ArrayList<NetworkInterface>(),
+				new ModuleCommunicationBus(), stationary, router));
+		return hosts;
+	}
+
+	/**
+	 * Replays the trace through both implementations and compares the sets
+	 * of the hosts of each event.
+	 *
+	 * @return true if the implementations agreed on every event
+	 */
+	private static boolean replay(String name, List<ConnectionEvent> trace,
+			List<DTNHost> hosts, CommunityDetection proto,
+			CommunityDetection legacyProto)
+	{
+		int n = hosts.size();
+		CommunityDetection[] cds = new CommunityDetection[n];
+		CommunityDetection[] legacy = new CommunityDetection[n];
+		for(int i = 0; i < n; i++)
+		{
+			cds[i] = proto.replicate();
+			legacy[i] = legacyProto.replicate();
+		}
+		Map<Long, Double> startTimes = new HashMap<Long, Double>();
+		Map<Long, List<Duration>> histories =
+			new HashMap<Long, List<Duration>>();
+
+		// SimpleCommunityDetection prints a line on every contact
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+		}));
+
+		long nrofCompared = 0;
+		int nrofDifferent = 0;
+		long start = System.nanoTime();
+		try
+		{
+			for(ConnectionEvent ce : trace)
+			{
+				int a = ce.getHostAddresses()[0];
+				int b = ce.getHostAddresses()[1];
+				DTNHost ha = hosts.get(a);
+				DTNHost hb = hosts.get(b);
+				Long pair = (long)Math.min(a, b) * n + Math.max(a, b);
+
+				if(ce.isUp())
+				{
+					if(startTimes.containsKey(pair))
+						continue; // already up
+					startTimes.put(pair, ce.getTime());
+					cds[a].newConnection(ha, hb, cds[b]);
+					legacy[a].newConnection(ha, hb, legacy[b]);
+				}
+				else
+				{
+					Double upTime = startTimes.remove(pair);
+					if(upTime == null)
+						continue; // not up
+					List<Duration> history = histories.get(pair);
+					if(history == null)
+					{
+						history = new LinkedList<Duration>();
+						histories.put(pair, history);
+					}
+					if(ce.getTime() - upTime > 0)
+						history.add(new Duration(upTime, ce.getTime()));
+
+					cds[a].connectionLost(ha, hb, cds[b], history);
+					cds[b].connectionLost(hb, ha, cds[a], history);
+					legacy[a].connectionLost(ha, hb, legacy[b], history);
+					legacy[b].connectionLost(hb, ha, legacy[a], history);
+				}
+
+				for(int i : ce.getHostAddresses())
+				{
+					nrofCompared++;
+					if(!sameSets(cds[i], legacy[i]))
+					{
+						if(nrofDifferent++ == 0)
+							System.err.println(name + ": sets of " +
+								hosts.get(i) + " differ after " + ce);
+					}
+				}
+			}
+		}
+		finally
+		{
+			System.setOut(out);
+		}
+
+		double ms = (System.nanoTime() - start) / 1e6;
+		int nrofMembers = 0;
+		for(CommunityDetection cd : cds)
+			nrofMembers += cd.getLocalCommunity().size();
+		System.out.printf("%s: %d events, %d hosts, %d comparisons, " +
+			"%d different, %d community members at the end (%.0f ms)%n",
+			name, trace.size(), n, nrofCompared, nrofDifferent, nrofMembers,
+			ms);
+		return nrofDifferent == 0;
+	}
+
+	private static boolean sameSets(CommunityDetection cd,
+			CommunityDetection legacy)
+	{
+		if(cd instanceof KCliqueCommunityDetection)
+			return ((KCliqueCommunityDetection)cd).familiarSet.equals(
+					((LegacyKClique)legacy).familiarSet) &&
+				cd.getLocalCommunity().equals(legacy.getLocalCommunity());
+		return ((SimpleCommunityDetection)cd).familiarSet.equals(
+				((LegacySimple)legacy).familiarSet) &&
+			cd.getLocalCommunity().equals(legacy.getLocalCommunity());
+	}
+
+	/**
+	 * The K-Clique detection as it was before the sets became HostSets.
+	 */
+	private static class LegacyKClique implements CommunityDetection
+	{
+		protected Set<DTNHost> familiarSet;
+		protected Set<DTNHost> localCommunity;
+		protected Map<DTNHost, Set<DTNHost>> familiarsOfMyCommunity;
+
+		protected double k;
+		protected double familiarThreshold;
+
+		public LegacyKClique(double k, double familiarThreshold)
+		{
+			this.k = k;
+			this.familiarThreshold = familiarThreshold;
+		}
+
+		public LegacyKClique(LegacyKClique proto)
+		{
+			this.k = proto.k;
+			this.familiarThreshold = proto.familiarThreshold;
+			familiarSet = new HashSet<DTNHost>();
+			localCommunity = new HashSet<DTNHost>();
+			this.familiarsOfMyCommunity = new HashMap<DTNHost, Set<DTNHost>>();
+		}
+
+		public void newConnection(DTNHost myHost, DTNHost peer,
+				CommunityDetection peerCD)
+		{
+			LegacyKClique scd = (LegacyKClique)peerCD;
+
+			this.localCommunity.add(myHost);
+			scd.localCommunity.add(peer);
+
+			if(!this.localCommunity.contains(peer))
+			{
+				int count=0;
+				for(DTNHost h : scd.familiarSet)
+					if(this.localCommunity.contains(h))
+						count++;
+
+				if(count >= this.k - 1)
+				{
+					this.localCommunity.add(peer);
+					this.familiarsOfMyCommunity.put(peer, scd.familiarSet);
+
+					for(DTNHost h : new TreeSet<DTNHost>(scd.localCommunity))
+					{
+						if(h == myHost || h == peer) continue;
+
+						count = 0;
+						for(DTNHost i : scd.familiarsOfMyCommunity.get(h))
+							if(this.localCommunity.contains(i))
+								count++;
+
+						if(count >= this.k - 1)
+						{
+							this.localCommunity.add(h);
+							this.familiarsOfMyCommunity.put(h,
+									scd.familiarsOfMyCommunity.get(h));
+						}
+					}
+				}
+			}
+
+			if(!scd.localCommunity.contains(myHost))
+			{
+				int count = 0;
+				for(DTNHost h : this.familiarSet)
+					if(scd.localCommunity.contains(h))
+						count++;
+				if(count >= scd.k - 1)
+				{
+					scd.localCommunity.add(myHost);
+					scd.familiarsOfMyCommunity.put(myHost, this.familiarSet);
+
+					for(DTNHost h : new TreeSet<DTNHost>(this.localCommunity))
+					{
+						if(h == myHost || h == peer) continue;
+						count = 0;
+						for(DTNHost i : this.familiarsOfMyCommunity.get(h))
+							if(scd.localCommunity.contains(i))
+								count++;
+						if(count >= scd.k - 1)
+						{
+							scd.localCommunity.add(h);
+							scd.familiarsOfMyCommunity.put(h,
+									this.familiarsOfMyCommunity.get(h));
+						}
+					}
+				}
+			}
+		}
+
+		public void connectionLost(DTNHost myHost, DTNHost peer,
+				CommunityDetection peerCD, List<Duration> history)
+		{
+			if(this.familiarSet.contains(peer)) return;
+
+			Iterator<Duration> i = history.iterator();
+			double time = 0;
+			while(i.hasNext())
+			{
+				Duration d = i.next();
+				time += d.end - d.start;
+			}
+
+			if(time > this.familiarThreshold)
+			{
+				LegacyKClique scd = (LegacyKClique)peerCD;
+				this.familiarSet.add(peer);
+				this.localCommunity.add(peer);
+				this.familiarsOfMyCommunity.put(peer, scd.familiarSet);
+			}
+		}
+
+		public boolean isHostInCommunity(DTNHost h)
+		{
+			return this.localCommunity.contains(h);
+		}
+
+		public CommunityDetection replicate()
+		{
+			return new LegacyKClique(this);
+		}
+
+		public Set<DTNHost> getLocalCommunity()
+		{
+			return this.localCommunity;
+		}
+	}
+
+	/**
+	 * The SIMPLE detection as it was before the sets became HostSets.
+	 */
+	private static class LegacySimple implements CommunityDetection
+	{
+		protected Set<DTNHost> familiarSet;
+		protected Set<DTNHost> localCommunity;
+
+		protected double lambda;
+		protected double gamma;
+		protected double familiarThreshold;
+
+		public LegacySimple(double lambda, double gamma,
+				double familiarThreshold)
+		{
+			this.lambda = lambda;
+			this.gamma = gamma;
+			this.familiarThreshold = familiarThreshold;
+		}
+
+		public LegacySimple(LegacySimple proto)
+		{
+			this.lambda = proto.lambda;
+			this.gamma = proto.gamma;
+			this.familiarThreshold = proto.familiarThreshold;
+			familiarSet = new HashSet<DTNHost>();
+			localCommunity = new HashSet<DTNHost>();
+		}
+
+		public void newConnection(DTNHost myHost, DTNHost peer,
+				CommunityDetection peerCD)
+		{
+			boolean addPeerToMyLocal = false, addMeToPeerLocal = false;
+			LegacySimple scd = (LegacySimple)peerCD;
+
+			this.localCommunity.add(myHost);
+			scd.localCommunity.add(peer);
+
+			if(!this.localCommunity.contains(peer))
+			{
+				int count = 0, peerFsize = scd.familiarSet.size();
+				for(DTNHost h : scd.familiarSet)
+					if(this.localCommunity.contains(h))
+						count++;
+
+				if(addPeerToMyLocal = ((double)count) / peerFsize > this.lambda)
+					this.localCommunity.add(peer);
+			}
+
+			if(!scd.localCommunity.contains(myHost))
+			{
+				int count = 0, myFsize = this.familiarSet.size();
+				for(DTNHost h : this.familiarSet)
+					if(scd.localCommunity.contains(h))
+						count++;
+
+				if(addMeToPeerLocal = ((double)count) / myFsize > scd.lambda)
+					scd.localCommunity.add(myHost);
+			}
+
+			if(addPeerToMyLocal || addMeToPeerLocal)
+			{
+				Set<DTNHost> commUnion = new HashSet<DTNHost>(
+					this.localCommunity.size() + scd.localCommunity.size() + 2);
+				commUnion.addAll(this.localCommunity);
+				commUnion.addAll(scd.localCommunity);
+
+				int count = 0;
+				for(DTNHost h : this.localCommunity)
+					if(scd.localCommunity.contains(h))
+						count++;
+
+				if(addPeerToMyLocal && count > this.gamma * commUnion.size())
+					this.localCommunity.addAll(scd.localCommunity);
+				if(addMeToPeerLocal && count > scd.gamma * commUnion.size())
+					scd.localCommunity.addAll(this.localCommunity);
+			}
+		}
+
+		public void connectionLost(DTNHost myHost, DTNHost peer,
+				CommunityDetection peerCD, List<Duration> history)
+		{
+			if(this.familiarSet.contains(peer))
+				return;
+
+			Iterator<Duration> i = history.iterator();
+			double time = 0;
+			while(i.hasNext())
+			{
+				Duration d = i.next();
+				time += d.end - d.start;
+			}
+
+			if(time > this.familiarThreshold)
+			{
+				this.familiarSet.add(peer);
+				this.localCommunity.add(peer);
+			}
+		}
+
+		public boolean isHostInCommunity(DTNHost h)
+		{
+			return this.localCommunity.contains(h);
+		}
+
+		public CommunityDetection replicate()
+		{
+			return new LegacySimple(this);
+		}
+
+		public Set<DTNHost> getLocalCommunity()
+		{
+			return this.localCommunity;
+		}
+	}
+}
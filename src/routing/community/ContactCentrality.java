@@ -0,0 +1,33 @@
+package routing.community;
+
+import core.*;
+
+/**
+ * <p>A {@link Centrality} that keeps its own bounded contact summary, updated
+ * as connections come up and go down, instead of recomputing it from the
+ * connection history. Decision engines that employ a Centrality must pass
+ * their connection events to it if it implements this interface; the
+ * connection history given to the centrality computations may then be
+ * ignored.</p>
+ *
+ * @see CWindowCentrality
+ * @see SWindowCentrality
+ */
+public interface ContactCentrality extends Centrality
+{
+	/**
+	 * Called when a connection between the host and a peer came up.
+	 *
+	 * @param thisHost The host this centrality belongs to
+	 * @param peer The other end of the connection
+	 */
+	public void connectionUp(DTNHost thisHost, DTNHost peer);
+
+	/**
+	 * Called when a connection between the host and a peer went down.
+	 *
+	 * @param thisHost The host this centrality belongs to
+	 * @param peer The other end of the connection
+	 */
+	public void connectionDown(DTNHost thisHost, DTNHost peer);
+}
@@ -0,0 +1,272 @@
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>
+ * Streaming statistics of the contacts of one host with each of its peers.
+ * Instead of keeping every contact as a {@link Duration}, only the
+ * aggregates needed by the routers are kept: the number of contacts, the
+ * running mean and variance (Welford's method) and plain sums of the contact
+ * durations and of the inter-contact times, and the time of the last
+ * connection up and down. Every update is O(1) and the memory use does not
+ * grow with the length of the simulation.
+ * </p>
+ *
+ * <p>
+ * Optionally the number of contacts is also counted per time epoch
+ * (<code>floor(time / epochLength)</code>) for the latest
+ * <code>nrofEpochs</code> epochs, for computations that only consider
+ * recent contacts.
+ * </p>
+ *
+ * <p>
+ * The inter-contact time of the first contact with a peer is counted from
+ * the start of the simulation. A connection up event with a peer that is
+ * already connected (e.g. through another interface) is not counted as a new
+ * contact.
+ * </p>
+ */
+public class ContactStats
+{
+	/** Running statistics of the contacts with one peer */
+	public static class PeerStats
+	{
+		private final RunningStats contactTimes = new RunningStats();
+		private final RunningStats interContactTimes = new RunningStats();
+		private int nrofContacts;
+		private boolean connected;
+		private double lastUp = Double.NaN;
+		private double lastDown = 0;
+		/** epoch of each ring slot (-1 for an unused slot) */
+		private final long[] epochs;
+		/** number of contacts that started in the epoch of each ring slot */
+		private final int[] epochContacts;
+
+		private PeerStats(int nrofEpochs)
+		{
+			this.epochs = new long[nrofEpochs];
+			this.epochContacts = new int[nrofEpochs];
+			Arrays.fill(this.epochs, -1);
+		}
+
+		/** @return Number of contacts with the peer */
+		public int getNrofContacts() {return nrofContacts;}
+
+		/** @return True if the peer is connected at the moment */
+		public boolean isConnected() {return connected;}
+
+		/** @return Time of the last connection up (NaN if never connected) */
+		public double getLastUp() {return lastUp;}
+
+		/** @return Time of the last connection down (0 if never disconnected) */
+		public double getLastDown() {return lastDown;}
+
+		/** @return Statistics of the (finished) contact durations */
+		public RunningStats getContactTimes() {return contactTimes;}
+
+		/** @return Statistics of the times between the contacts */
+		public RunningStats getInterContactTimes() {return interContactTimes;}
+
+		/**
+		 * Returns the number of contacts that started in the given epoch.
+		 *
+		 * @param epoch The epoch
+		 * @return Number of contacts or 0 if the epoch is not kept (anymore)
+		 */
+		public int getNrofContacts(long epoch)
+		{
+			if (epochs.length == 0 || epoch < 0)
+				return 0;
+			int slot = (int)(epoch % epochs.length);
+			return epochs[slot] == epoch ? epochContacts[slot] : 0;
+		}
+
+		private void countContact(long epoch)
+		{
+			int slot = (int)(epoch % epochs.length);
+			if (epochs[slot] != epoch)
+			{
+				epochs[slot] = epoch;
+				epochContacts[slot] = 0;
+			}
+			epochContacts[slot]++;
+		}
+	}
+
+	/**
+	 * Running count, sum, sum of squares, mean and variance of a series of
+	 * values. The mean and variance are computed with Welford's method, which
+	 * does not suffer from the cancellation of the textbook formula.
+	 */
+	public static class RunningStats
+	{
+		private int count;
+		private double sum;
+		private double sumOfSquares;
+		private double mean;
+		private double m2;
+
+		/**
+		 * Adds a value to the series.
+		 *
+		 * @param x The value
+		 */
+		public void add(double x)
+		{
+			count++;
+			sum += x;
+			sumOfSquares += x * x;
+			double delta = x - mean;
+			mean += delta / count;
+			m2 += delta * (x - mean);
+		}
+
+		/** @return Number of values */
+		public int getCount() {return count;}
+
+		/** @return Sum of the values */
+		public double getSum() {return sum;}
+
+		/** @return Sum of the squared values */
+		public double getSumOfSquares() {return sumOfSquares;}
+
+		/** @return Mean of the values (NaN if there are none) */
+		public double getMean() {return count == 0 ? Double.NaN : mean;}
+
+		/** @return Population variance of the values (NaN if there are none) */
+		public double getVariance() {return count == 0 ? Double.NaN : m2 / count;}
+	}
+
+	/** Statistics of a peer that has never been met */
+	private static final PeerStats NO_CONTACTS = new PeerStats(0);
+
+	private final double epochLength;
+	private final int nrofEpochs;
+	private final Map<DTNHost, PeerStats> peers;
+
+	/**
+	 * Creates statistics without per-epoch counts.
+	 */
+	public ContactStats()
+	{
+		this(0, 0);
+	}
+
+	/**
+	 * Creates statistics that also count the contacts per epoch.
+	 *
+	 * @param epochLength Length of an epoch (seconds)
+	 * @param nrofEpochs How many of the latest epochs are kept (0 for no
+	 * per-epoch counts)
+	 */
+	public ContactStats(double epochLength, int nrofEpochs)
+	{
+		if (nrofEpochs < 0 || (nrofEpochs > 0 && epochLength <= 0))
+			throw new IllegalArgumentException("Invalid epochs " + nrofEpochs +
+					" x " + epochLength);
+		this.epochLength = epochLength;
+		this.nrofEpochs = nrofEpochs;
+		this.peers = new HashMap<DTNHost, PeerStats>();
+	}
+
+	/**
+	 * Creates empty statistics with the same configuration as the given ones.
+	 *
+	 * @param proto The statistics to copy the configuration from
+	 */
+	public ContactStats(ContactStats proto)
+	{
+		this(proto.epochLength, proto.nrofEpochs);
+	}
+
+	/**
+	 * Records that a connection to a peer came up.
+	 *
+	 * @param peer The peer
+	 * @param time Current time
+	 */
+	public void connectionUp(DTNHost peer, double time)
+	{
+		PeerStats s = peers.get(peer);
+		if (s == null)
+		{
+			s = new PeerStats(nrofEpochs);
+			peers.put(peer, s);
+		}
+		if (s.connected)
+			return;
+
+		if (time - s.lastDown > 0)
+			s.interContactTimes.add(time - s.lastDown);
+		s.connected = true;
+		s.lastUp = time;
+		s.nrofContacts++;
+		if (nrofEpochs > 0)
+			s.countContact(getEpoch(time));
+	}
+
+	/**
+	 * Records that a connection to a peer went down.
+	 *
+	 * @param peer The peer
+	 * @param time Current time
+	 */
+	public void connectionDown(DTNHost peer, double time)
+	{
+		PeerStats s = peers.get(peer);
+		if (s == null || !s.connected)
+			return;
+
+		if (time - s.lastUp > 0)
+			s.contactTimes.add(time - s.lastUp);
+		s.connected = false;
+		s.lastDown = time;
+	}
+
+	/**
+	 * Returns the statistics of a peer.
+	 *
+	 * @param peer The peer
+	 * @return The statistics (all zero counts if the peer has never been met)
+	 */
+	public PeerStats get(DTNHost peer)
+	{
+		PeerStats s = peers.get(peer);
+		return s != null ? s : NO_CONTACTS;
+	}
+
+	/**
+	 * Returns true if the peer has been met at least once.
+	 *
+	 * @param peer The peer
+	 * @return True if there are statistics of the peer
+	 */
+	public boolean hasMet(DTNHost peer)
+	{
+		return peers.containsKey(peer);
+	}
+
+	/**
+	 * Returns the peers that have been met at least once.
+	 *
+	 * @return The peers (a view, not to be modified)
+	 */
+	public Set<DTNHost> getPeers()
+	{
+		return Collections.unmodifiableSet(peers.keySet());
+	}
+
+	/**
+	 * Returns the epoch a time belongs to.
+	 *
+	 * @param time The time
+	 * @return The epoch or -1 if no per-epoch counts are kept
+	 */
+	public long getEpoch(double time)
+	{
+		return nrofEpochs > 0 ? (long)(time / epochLength) : -1;
+	}
+}
@@ -105,7 +105,11 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 		connHistory = new HashMap<DTNHost, List<Duration>>();
 	}
 
-	public void connectionUp(DTNHost thisHost, DTNHost peer){}
+	public void connectionUp(DTNHost thisHost, DTNHost peer)
+	{
+		if(centrality instanceof ContactCentrality)
+			((ContactCentrality) centrality).connectionUp(thisHost, peer);
+	}
 
 	/**
 	 * Starts timing the duration of this new connection and informs the community
@@ -126,6 +130,9 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 	
 	public void connectionDown(DTNHost thisHost, DTNHost peer)
 	{
+		if(centrality instanceof ContactCentrality)
+			((ContactCentrality) centrality).connectionDown(thisHost, peer);
+		
 //		double time = startTimestamps.get(peer);
 		double time = cek(thisHost, peer);
 		double etime = SimClock.getTime();
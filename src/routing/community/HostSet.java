@@ -0,0 +1,207 @@
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>A set of hosts stored as a bit set indexed by host address. Membership
+ * tests, additions and removals are O(1) and the size of the intersection
+ * with, or the union with, another HostSet is computed a word (64 hosts) at a
+ * time without allocating anything, which is what the community detection
+ * algorithms do on every contact. Iteration returns the hosts in the order of
+ * their addresses.</p>
+ */
+public class HostSet extends AbstractSet<DTNHost>
+{
+	private long[] words;
+	/** the member hosts by address (null for non-members) */
+	private DTNHost[] hosts;
+	private int size;
+
+	/**
+	 * Creates an empty set.
+	 */
+	public HostSet()
+	{
+		this.words = new long[1];
+		this.hosts = new DTNHost[64];
+	}
+
+	@Override
+	public boolean add(DTNHost h)
+	{
+		int address = h.getAddress();
+		ensureCapacity(address);
+		long mask = 1L << address;
+		if((words[address >> 6] & mask) != 0)
+			return false;
+		words[address >> 6] |= mask;
+		hosts[address] = h;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds all the hosts of another HostSet to this set.
+	 *
+	 * @param other The hosts to add
+	 * @return true if this set changed
+	 */
+	public boolean addAll(HostSet other)
+	{
+		if(other.words.length > this.words.length)
+			ensureCapacity((other.words.length << 6) - 1);
+		int oldSize = size;
+		for(int i = 0; i < other.words.length; i++)
+		{
+			long added = other.words[i] & ~words[i];
+			if(added == 0)
+				continue;
+			words[i] |= added;
+			size += Long.bitCount(added);
+			for(long w = added; w != 0; w &= w - 1)
+			{
+				int address = (i << 6) + Long.numberOfTrailingZeros(w);
+				hosts[address] = other.hosts[address];
+			}
+		}
+		return size != oldSize;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends DTNHost> c)
+	{
+		if(c instanceof HostSet)
+			return addAll((HostSet)c);
+		return super.addAll(c);
+	}
+
+	/**
+	 * Returns the number of hosts that are in both this and the other set.
+	 *
+	 * @param other The other set
+	 * @return Size of the intersection
+	 */
+	public int intersectionSize(HostSet other)
+	{
+		int count = 0;
+		for(int i = 0, n = Math.min(words.length, other.words.length); i < n; i++)
+			count += Long.bitCount(words[i] & other.words[i]);
+		return count;
+	}
+
+	/**
+	 * Returns the number of hosts that are in this or the other set.
+	 *
+	 * @param other The other set
+	 * @return Size of the union
+	 */
+	public int unionSize(HostSet other)
+	{
+		return size + other.size - intersectionSize(other);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if(!(o instanceof DTNHost))
+			return false;
+		int address = ((DTNHost)o).getAddress();
+		return address >= 0 && (address >> 6) < words.length &&
+			(words[address >> 6] & (1L << address)) != 0;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		if(!contains(o))
+			return false;
+		removeAddress(((DTNHost)o).getAddress());
+		return true;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(words, 0L);
+		Arrays.fill(hosts, null);
+		size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Iterator<DTNHost> iterator()
+	{
+		return new Iterator<DTNHost>() {
+			private int next = nextMember(0);
+			/** address of the host returned last, -1 if removed or none */
+			private int last = -1;
+
+			public boolean hasNext()
+			{
+				return next >= 0;
+			}
+
+			public DTNHost next()
+			{
+				if(next < 0)
+					throw new NoSuchElementException();
+				DTNHost h = hosts[next];
+				last = next;
+				next = nextMember(next + 1);
+				return h;
+			}
+
+			public void remove()
+			{
+				if(last < 0)
+					throw new IllegalStateException();
+				removeAddress(last);
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Returns the smallest member address that is at least <code>from</code>.
+	 */
+	private int nextMember(int from)
+	{
+		int i = from >> 6;
+		if(i >= words.length)
+			return -1;
+		long w = words[i] & (-1L << from);
+		while(w == 0)
+		{
+			if(++i >= words.length)
+				return -1;
+			w = words[i];
+		}
+		return (i << 6) + Long.numberOfTrailingZeros(w);
+	}
+
+	/**
+	 * Removes the member with the given address.
+	 */
+	private void removeAddress(int address)
+	{
+		words[address >> 6] &= ~(1L << address);
+		hosts[address] = null;
+		size--;
+	}
+
+	private void ensureCapacity(int address)
+	{
+		if((address >> 6) < words.length)
+			return;
+		int nrofWords = Math.max((address >> 6) + 1, 2 * words.length);
+		words = Arrays.copyOf(words, nrofWords);
+		hosts = Arrays.copyOf(hosts, nrofWords << 6);
+	}
+}
@@ -55,10 +55,10 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
     public static final String TRESHOLD_SETTING = "threshold";
 
     /**
-     * Map to store the PeopleRank values for each host along with the total number
-     * of friends
+     * PeopleRank values of each friend along with its total number of friends,
+     * and the running sums of both
      */
-    protected Map<DTNHost, TupleDe<Double, Integer>> per;
+    protected PeopleRankTable per;
     protected Map<DTNHost, List<Duration>> connHistory; // Store connection history for each host
     protected Map<DTNHost, Double> startTimestamps; // Store the start timestamps for each connection
     protected Set<DTNHost> thisHostSet; // Set to store friends of this host
@@ -84,7 +84,7 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
             this.treshold = 700;
         }
         connHistory = new HashMap<DTNHost, List<Duration>>();
-        per = new HashMap<>();
+        per = new PeopleRankTable(dumpingFactor);
         thisHostSet = new HashSet<DTNHost>();
     }
 
@@ -101,7 +101,7 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
         // Initialize a new connection history map
         this.connHistory = new HashMap<DTNHost, List<Duration>>();
         this.thisHostSet = new HashSet<DTNHost>();
-        this.per = new HashMap<>();
+        this.per = new PeopleRankTable(dumpingFactor);
     }
 
     @Override
@@ -158,24 +158,11 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
          * Update connHistory, Total FriendRank, and totalFriend and save it in per
          * every time connection Down
          */
-        for (Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet()) {
-            // Get the host for each entry
-            DTNHost host = entry.getKey();
-
-            // Calculate the friend rank for the host
-            double friendRank = calculatePer(host);
-
-            // Get the total number of friends for the host (total size of the connection
-            // history)
-            Set<DTNHost> Fj = new HashSet<>(connHistory.keySet());
-            Fj.add(peer); // Add the peer to the set of hosts
-            int totalFriends = Fj.size();
-
-            // Create a new tuple with the friend rank and total number of friends
-            TupleDe<Double, Integer> tuple = new TupleDe<>(friendRank, totalFriends);
-
-            // Update the tuple in the per map for the host
-            per.put(host, tuple);
+        // Total number of friends (the peer is already in the connection history)
+        int totalFriends = connHistory.size();
+        for (DTNHost host : connHistory.keySet()) {
+            // Calculate the friend rank for the host and update it in per
+            per.put(host, calculatePer(host), totalFriends);
         }
     }
 
@@ -302,35 +289,14 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
      * - PeR(Nj) is the ranking of other connected nodes (friends).
      * - |F(Nj)| is the total number of friends of other nodes.
      * 
+     * The sums are kept up to date by {@link PeopleRankTable}, so this is O(1).
+     * 
      * @param host The host for which to calculate the PeopleRank.
      * @return The PeopleRank for the specified host.
      */
     private double calculatePer(DTNHost host) {
-        // Get damping factor from settings
-        double dampingFactor = this.dumpingFactor;
-
-        double sum = 0.0; // Initialize sum
-
-        // Calculate total number of friends for other nodes
-        int totalFriends = 0;
-        for (TupleDe<Double, Integer> tuple : per.values()) {
-            totalFriends += tuple.getSecond(); // Accumulate total friends
-        }
-
-        // Iterate over the connection history
-        for (TupleDe<Double, Integer> tuple : per.values()) {
-            if (!tuple.getFirst().equals(host)) { // Exclude the host itself
-                // Calculate PeR(Nj) by summing up the rankings of its friends
-                double friendRanking = tuple.getFirst(); // Ranking of the friend
-                int friendsOfOtherHost = tuple.getSecond(); // Total friends of the friend
-                if (friendsOfOtherHost > 0) {
-                    sum += friendRanking / totalFriends; // Accumulate sum
-                }
-            }
-        }
-
-        // Calculate and return the PeopleRank value according to the formula
-        return (1 - dampingFactor) + dampingFactor * sum;
+        // the running sums of per hold Σ PeR(Nj) and Σ |F(Nj)|
+        return per.getRank();
     }
 
     private PeopleRank getOtherDecisionEngine(DTNHost h) {
@@ -347,22 +313,11 @@ public class PeopleRank implements RoutingDecisionEngine, RankingNodeValue {
 
     /**
      * its for reports
+     *
+     * @return Read-only view of the latest rankings (no recomputation)
      */
     public Map<DTNHost, Double> getAllRankings() {
-        Map<DTNHost, Double> rankings = new HashMap<>();
-
-        // Iterate over the per map to extract rankings
-        for (Map.Entry<DTNHost, TupleDe<Double, Integer>> entry : per.entrySet()) {
-            DTNHost currentHost = entry.getKey();
-            TupleDe<Double, Integer> tuple = entry.getValue();
-
-            // double getRank = entry.getValue();
-
-            // Add the host and its ranking to the map
-            rankings.put(currentHost, tuple.getFirst());
-        }
-
-        return rankings;
+        return per.getRankings();
     }
 
     @Override
@@ -0,0 +1,112 @@
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * Incrementally maintained PeopleRank state of one host: the latest known
+ * ranking and number of friends of each friend, plus the running sums
+ * <code>Σ PeR(Nj)</code> (over friends that have friends) and
+ * <code>Σ |F(Nj)|</code> that the rank formula
+ * <code>PeR(Ni) = (1 - d) + d * Σ PeR(Nj) / Σ |F(Nj)|</code> needs. Setting
+ * an entry only adjusts the sums by the difference to its previous value, so
+ * computing the rank is O(1) instead of a walk over all friends.
+ *
+ * The rankings are also published as a read-only map that reports can use
+ * without recomputing anything.
+ */
+public class PeopleRankTable {
+    /** Number of updates after which the running sums are recomputed */
+    private static final int RESUM_INTERVAL = 1 << 16;
+
+    private final double dampingFactor;
+    private final Map<DTNHost, Double> rankings;
+    private final Map<DTNHost, Double> rankingsView;
+    private final Map<DTNHost, Integer> friendCounts;
+    /** sum of the rankings of the entries that have friends */
+    private double rankSum;
+    /** sum of the friend counts of all entries */
+    private long friendSum;
+    /** updates since the sums were last recomputed */
+    private int nrofUpdates;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param dampingFactor The damping factor d of the rank formula
+     */
+    public PeopleRankTable(double dampingFactor) {
+        this.dampingFactor = dampingFactor;
+        this.rankings = new HashMap<>();
+        this.rankingsView = Collections.unmodifiableMap(rankings);
+        this.friendCounts = new HashMap<>();
+    }
+
+    /**
+     * Sets the ranking and friend count of a friend, replacing the previous
+     * values (if any).
+     *
+     * @param host    The friend
+     * @param rank    Ranking of the friend
+     * @param friends Number of friends of the friend
+     */
+    public void put(DTNHost host, double rank, int friends) {
+        Double oldRank = rankings.put(host, rank);
+        Integer oldFriends = friendCounts.put(host, friends);
+        if (oldRank != null) {
+            friendSum -= oldFriends;
+            if (oldFriends > 0) {
+                rankSum -= oldRank;
+            }
+        }
+        friendSum += friends;
+        if (friends > 0) {
+            rankSum += rank;
+        }
+
+        if (++nrofUpdates >= RESUM_INTERVAL) {
+            resum(); // don't let rounding errors accumulate
+        }
+    }
+
+    /**
+     * Returns the rank computed from the current entries.
+     *
+     * @return <code>(1 - d) + d * Σ PeR(Nj) / Σ |F(Nj)|</code>
+     */
+    public double getRank() {
+        double sum = friendSum > 0 ? rankSum / friendSum : 0;
+        return (1 - dampingFactor) + dampingFactor * sum;
+    }
+
+    /**
+     * Returns the rankings of all entries.
+     *
+     * @return Read-only view of the rankings (updated as the table changes)
+     */
+    public Map<DTNHost, Double> getRankings() {
+        return rankingsView;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The number of friends in the table
+     */
+    public int size() {
+        return rankings.size();
+    }
+
+    private void resum() {
+        rankSum = 0;
+        friendSum = 0;
+        for (Map.Entry<DTNHost, Integer> e : friendCounts.entrySet()) {
+            friendSum += e.getValue();
+            if (e.getValue() > 0) {
+                rankSum += rankings.get(e.getKey());
+            }
+        }
+        nrofUpdates = 0;
+    }
+}
@@ -6,6 +6,8 @@
  */
 package routing.community;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +39,15 @@ import core.*;
  * </ul>
  * </p>
  *
+ * <p>
+ * The encounters are recorded as connections come up and go down (see
+ * {@link ContactCentrality}). The time a peer was last seen is kept in an
+ * array indexed by host address and the encounters of the current window in
+ * a queue, so the number of peers seen within the window is maintained as
+ * encounters enter and leave the window, and computing the global centrality
+ * does not walk the connection history.
+ * </p>
+ *
  * <pre>
  * \@inproceedings{1374652,
  *	Address = {New York, NY, USA},
@@ -56,7 +67,7 @@ import core.*;
  *
  * @author PJ Dillon, University of Pittsburgh
  */
-public class SWindowCentrality implements Centrality {
+public class SWindowCentrality implements ContactCentrality {
 
     /**
      * length of time into the past to consider -setting id {@value}
@@ -95,10 +106,32 @@ public class SWindowCentrality implements Centrality {
      */
     protected int lastLocalComputationTime;
 
+    /**
+     * time each peer was last seen (by host address)
+     */
+    protected double[] lastSeen;
+    /**
+     * is each peer seen within the window (by host address)
+     */
+    protected boolean[] inWindow;
+    /**
+     * number of peers seen within the window
+     */
+    protected int nrofInWindow;
+    /**
+     * addresses of the peers of the encounters within the window, oldest first
+     */
+    protected ArrayDeque<Integer> encounterPeers;
+    /**
+     * times of the encounters within the window, oldest first
+     */
+    protected ArrayDeque<Double> encounterTimes;
+
     public SWindowCentrality(Settings s) {
         if (s.contains(CENTRALITY_WINDOW_SETTING)) {
             CENTRALITY_TIME_WINDOW = s.getInt(CENTRALITY_WINDOW_SETTING);
         }
+        initWindow();
     }
 
     public SWindowCentrality(SWindowCentrality proto) {
@@ -106,6 +139,66 @@ public class SWindowCentrality implements Centrality {
         // start of the sim
         this.lastGlobalComputationTime = this.lastLocalComputationTime
                 = -COMPUTE_INTERVAL;
+        initWindow();
+    }
+
+    /**
+     * Creates an empty window.
+     */
+    private void initWindow() {
+        this.lastSeen = new double[0];
+        this.inWindow = new boolean[0];
+        this.encounterPeers = new ArrayDeque<>();
+        this.encounterTimes = new ArrayDeque<>();
+    }
+
+    public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        recordEncounter(peer);
+    }
+
+    public void connectionDown(DTNHost thisHost, DTNHost peer) {
+        recordEncounter(peer);
+    }
+
+    /**
+     * Records that a peer was seen now.
+     *
+     * @param peer The peer
+     */
+    protected void recordEncounter(DTNHost peer) {
+        double now = SimClock.getTime();
+        expire(now);
+
+        int address = peer.getAddress();
+        if (address >= lastSeen.length) {
+            int size = Math.max(address + 1, 2 * lastSeen.length);
+            lastSeen = Arrays.copyOf(lastSeen, size);
+            inWindow = Arrays.copyOf(inWindow, size);
+        }
+        if (!inWindow[address]) {
+            inWindow[address] = true;
+            nrofInWindow++;
+        }
+        lastSeen[address] = now;
+        encounterPeers.addLast(address);
+        encounterTimes.addLast(now);
+    }
+
+    /**
+     * Drops the encounters that are no longer within the window.
+     *
+     * @param now Current time
+     */
+    protected void expire(double now) {
+        while (!encounterTimes.isEmpty()
+                && now - encounterTimes.peekFirst() >= CENTRALITY_TIME_WINDOW) {
+            double time = encounterTimes.pollFirst();
+            int address = encounterPeers.pollFirst();
+            if (inWindow[address] && lastSeen[address] == time) {
+                inWindow[address] = false; // no later encounter with the peer
+                nrofInWindow--;
+            }
+        }
     }
 
     public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory) {
@@ -113,20 +206,11 @@ public class SWindowCentrality implements Centrality {
             return globalCentrality;
         }
 
-        int centrality = 0;
-        int timeNow = SimClock.getIntTime();
-
-        // For each host, check whether its last contact time was within window
-        // no need to loop through the entire contact history
-        for (Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet()) {
-            List<Duration> l = entry.getValue();
-            if (timeNow - l.get(l.size() - 1).end < CENTRALITY_TIME_WINDOW) {
-                centrality++;
-            }
-        }
+        // the peers seen within the window are counted as they are seen
+        expire(SimClock.getTime());
 
         this.lastGlobalComputationTime = SimClock.getIntTime();
-        return this.globalCentrality = centrality;
+        return this.globalCentrality = nrofInWindow;
     }
 
     public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
@@ -135,17 +219,14 @@ public class SWindowCentrality implements Centrality {
             return localCentrality;
         }
 
+        expire(SimClock.getTime());
+
+        // same check as for global centrality, but only for the hosts in the
+        // local community
         int centrality = 0;
-        int timeNow = SimClock.getIntTime();
-
-        // same check as for global centrality, but must ensure host is in local
-        // community too
-        for (Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet()) {
-            List<Duration> l = entry.getValue();
-            if (timeNow - l.get(l.size() - 1).end > CENTRALITY_TIME_WINDOW) {
-                break;
-            }
-            if (cd.isHostInCommunity(entry.getKey())) {
+        for (DTNHost h : cd.getLocalCommunity()) {
+            int address = h.getAddress();
+            if (address < inWindow.length && inWindow[address]) {
                 centrality++;
             }
         }
@@ -64,8 +64,8 @@ public class SimpleCommunityDetection implements CommunityDetection {
      */
     public static final String FAMILIAR_SETTING = "familiarThreshold";
 
-    protected Set<DTNHost> familiarSet;
-    protected Set<DTNHost> localCommunity;
+    protected HostSet familiarSet;
+    protected HostSet localCommunity;
 
     protected double lambda;
     protected double gamma;
@@ -87,8 +87,8 @@ public class SimpleCommunityDetection implements CommunityDetection {
         this.lambda = proto.lambda;
         this.gamma = proto.gamma;
         this.familiarThreshold = proto.familiarThreshold;
-        familiarSet = new HashSet<DTNHost>();
-        localCommunity = new HashSet<DTNHost>();
+        familiarSet = new HostSet();
+        localCommunity = new HostSet();
     }
 
     public void newConnection(DTNHost myHost, DTNHost peer,
@@ -110,12 +110,8 @@ public class SimpleCommunityDetection implements CommunityDetection {
             System.out.println(peer +" has size com : " +localCommunity.size());
             
             // compute set intersection
-            int count = 0, peerFsize = scd.familiarSet.size();
-            for (DTNHost h : scd.familiarSet) {
-                if (this.localCommunity.contains(h)) {
-                    count++;
-                }
-            }
+            int count = scd.familiarSet.intersectionSize(this.localCommunity);
+            int peerFsize = scd.familiarSet.size();
 
             // add peer to local community if enough nodes in common
             if (addPeerToMyLocal = ((double) count) / peerFsize > this.lambda) {
@@ -128,12 +124,8 @@ public class SimpleCommunityDetection implements CommunityDetection {
          */
         if (!scd.localCommunity.contains(myHost)) {
             // compute set intersection
-            int count = 0, myFsize = this.familiarSet.size();
-            for (DTNHost h : this.familiarSet) {
-                if (scd.localCommunity.contains(h)) {
-                    count++;
-                }
-            }
+            int count = this.familiarSet.intersectionSize(scd.localCommunity);
+            int myFsize = this.familiarSet.size();
 
             // add this host to local community of peer if enough nodes in common
             if (addMeToPeerLocal = ((double) count) / myFsize > scd.lambda) {
@@ -143,26 +135,16 @@ public class SimpleCommunityDetection implements CommunityDetection {
 
         // Test for conditions when the local communities should be merged
         if (addPeerToMyLocal || addMeToPeerLocal) {
-            // Compute set union
-            Set<DTNHost> commUnion = new HashSet<DTNHost>(this.localCommunity.size()
-                    + scd.localCommunity.size() + 2);
-            commUnion.addAll(this.localCommunity);
-            commUnion.addAll(scd.localCommunity);
-
-            // compute intersection of the two local communities
+            // compute union and intersection of the two local communities
             // (the result is the same from both node's perspective)
-            int count = 0;
-            for (DTNHost h : this.localCommunity) {
-                if (scd.localCommunity.contains(h)) {
-                    count++;
-                }
-            }
+            int unionSize = this.localCommunity.unionSize(scd.localCommunity);
+            int count = this.localCommunity.intersectionSize(scd.localCommunity);
 
             // merge communities if enough nodes are common
-            if (addPeerToMyLocal && count > this.gamma * commUnion.size()) {
+            if (addPeerToMyLocal && count > this.gamma * unionSize) {
                 this.localCommunity.addAll(scd.localCommunity);
             }
-            if (addMeToPeerLocal && count > scd.gamma * commUnion.size()) {
+            if (addMeToPeerLocal && count > scd.gamma * unionSize) {
                 scd.localCommunity.addAll(this.localCommunity);
             }
         }
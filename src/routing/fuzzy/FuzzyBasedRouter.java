@@ -10,17 +10,12 @@ import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.SimClock;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import net.sourceforge.jFuzzyLogic.FIS;
 import net.sourceforge.jFuzzyLogic.FunctionBlock;
 import net.sourceforge.jFuzzyLogic.rule.Variable;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
-import routing.community.Duration;
+import routing.community.ContactStats;
 import routing.DecisionEngineRouter;
 
 /**
@@ -33,55 +28,49 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     public static final String CLOSENESS = "closeness";
     public static final String VARIANCE = "variance";
     public static final String TRANSFER_OF_UTILITY = "su";
+    /**
+     * Lookup table resolution -setting id ({@value}). Integer valued. If
+     * greater than zero, the fuzzy system is sampled on a grid with this
+     * many cells per input when the router is created and decisions
+     * interpolate in that grid instead of evaluating the rules. The largest
+     * difference to the rules is printed once when the table is built.
+     * 0 (default) evaluates the rules for every decision.
+     */
+    public static final String LOOKUP_RESOLUTION = "lookupResolution";
 
     private FIS fclSimilarity;
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** precomputed output surface (null if the rules are evaluated) */
+    private FuzzyLookupTable lookupTable;
+    /** separation (inter-contact) times to each peer */
+    protected ContactStats contactStats;
         
     public FuzzyBasedRouter(Settings s) {
         String fclString = s.getSetting(FCL_SIMILARITY);
         fclSimilarity = FIS.load(fclString);
+        int resolution = s.contains(LOOKUP_RESOLUTION) ? s.getInt(LOOKUP_RESOLUTION) : 0;
+        if (resolution > 0) {
+            lookupTable = new FuzzyLookupTable(fclSimilarity.getFunctionBlock(null),
+                    CLOSENESS, VARIANCE, TRANSFER_OF_UTILITY, resolution);
+            System.out.println("Fuzzy lookup table for " + fclString + ": " +
+                    resolution + "x" + resolution + " cells, max error " +
+                    lookupTable.getMaxError());
+        }
     }
 
     public FuzzyBasedRouter(FuzzyBasedRouter t) {
         this.fclSimilarity = t.fclSimilarity;
-        startTimestamps = new HashMap<>();
-        connHistory = new HashMap<>();
+        this.lookupTable = t.lookupTable;
+        contactStats = new ContactStats();
     }
 
     @Override
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
-        // Find or create the connection history list
-        double getLastDisconnect = 0;
-        if (startTimestamps.containsKey(peer)) {
-            getLastDisconnect = startTimestamps.get(peer);
-        }
-        double currentTime = SimClock.getTime();
-
-        List<Duration> history;
-        if (!connHistory.containsKey(peer)) {
-            history = new LinkedList<Duration>();
-//            connHistory.put(peer, history);
-
-        } else {
-            history = connHistory.get(peer);
-
-        }
-
-//         add this connection to the list
-        if (currentTime - getLastDisconnect > 0) {
-            history.add(new Duration(getLastDisconnect, currentTime));
-
-        }
-        connHistory.put(peer, history);
-        this.startTimestamps.remove(peer);
-        
-        
+        contactStats.connectionUp(peer, SimClock.getTime());
     }
 
     @Override
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
-        this.startTimestamps.put(peer, SimClock.getTime());
+        contactStats.connectionDown(peer, SimClock.getTime());
     }
 
     @Override
@@ -118,8 +107,12 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     
     
     private double Defuzzification(DTNHost nodes) {
-        double closenessValue = getClosenessOfNodes(nodes);
-        double varianceValue = getNormalizedVarianceOfNodes(nodes);
+        ContactStats.RunningStats separations = getSeparations(nodes);
+        double closenessValue = getCloseness(separations);
+        double varianceValue = getNormalizedVariance(separations);
+        if (lookupTable != null && lookupTable.covers(closenessValue, varianceValue)) {
+            return lookupTable.getValue(closenessValue, varianceValue);
+        }
         FunctionBlock functionBlock = fclSimilarity.getFunctionBlock(null);
 
         functionBlock.setVariable(CLOSENESS, closenessValue);
@@ -132,57 +125,35 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     }
 
     public double getVarianceOfNodes(DTNHost nodes) {
-        List<Duration> list = getList(nodes);
-        Iterator<Duration> duration = list.iterator();
-        double temp = 0;
-        double mean = getAverageShortestSeparationOfNodes(nodes);
-        while (duration.hasNext()) {
-            Duration d = duration.next();
-            temp += Math.pow((d.end - d.start) - mean, 2);
-        }
-        return temp / list.size();
+        return getSeparations(nodes).getVariance();
     }
 
     public double getNormalizedVarianceOfNodes(DTNHost nodes) {
-        double k = getList(nodes).size();
-        double N = 0;
-        double sigmf = 0;
-        Iterator<Duration> iterator = getList(nodes).iterator();
-        while (iterator.hasNext()) {
-            Duration duration = iterator.next();
-            double timeDuration = (duration.end - duration.start);
-            N += timeDuration;
-            sigmf += Math.pow(timeDuration, 2);
-        }
-        Double d = (k * (Math.pow(N, 2) - sigmf)) / (Math.pow(N, 2) * (k - 1));
-        return d;
+        return getNormalizedVariance(getSeparations(nodes));
     }
 
-    public List<Duration> getList(DTNHost nodes) {
-        if (connHistory.containsKey(nodes)) {
-            return connHistory.get(nodes);
-        } else {
-            List<Duration> d = new LinkedList<>();
-            return d;
-        }
+    /**
+     * Returns the statistics of the separation times to a node.
+     */
+    public ContactStats.RunningStats getSeparations(DTNHost nodes) {
+        return contactStats.get(nodes).getInterContactTimes();
     }
 
-    private double getClosenessOfNodes(DTNHost nodes) {
-        double rataShortestSeparation = getAverageShortestSeparationOfNodes(nodes);
-        double variansi = getVarianceOfNodes(nodes);
-        Double c = Math.exp(-(Math.pow(rataShortestSeparation, 2) / (2 * variansi)));
-        return c;
+    public double getAverageShortestSeparationOfNodes(DTNHost nodes) {
+        return getSeparations(nodes).getMean();
     }
 
-    public double getAverageShortestSeparationOfNodes(DTNHost nodes) {
-        List<Duration> list = getList(nodes);
-        Iterator<Duration> duration = list.iterator();
-        double hasil = 0;
-        while (duration.hasNext()) {
-            Duration d = duration.next();
-            hasil += (d.end - d.start);
-        }
-        return hasil / list.size();
+    private double getNormalizedVariance(ContactStats.RunningStats separations) {
+        double k = separations.getCount();
+        double N = separations.getSum();
+        double sigmf = separations.getSumOfSquares();
+        return (k * (Math.pow(N, 2) - sigmf)) / (Math.pow(N, 2) * (k - 1));
+    }
+
+    private double getCloseness(ContactStats.RunningStats separations) {
+        double rataShortestSeparation = separations.getMean();
+        double variansi = separations.getVariance();
+        return Math.exp(-(Math.pow(rataShortestSeparation, 2) / (2 * variansi)));
     }
 
     @Override
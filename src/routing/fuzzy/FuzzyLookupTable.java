@@ -0,0 +1,116 @@
+package routing.fuzzy;
+
+import net.sourceforge.jFuzzyLogic.FunctionBlock;
+
+/**
+ * Precomputed output surface of a fuzzy function block with two inputs in
+ * the range [0, 1]. The block is evaluated once on a regular grid when the
+ * table is built; a lookup is then a bilinear interpolation between the four
+ * surrounding grid points instead of a full rule evaluation. The largest
+ * difference to the exact block, sampled at the centre of every grid cell,
+ * is measured at build time (see {@link #getMaxError()}).
+ */
+public class FuzzyLookupTable {
+
+    private final int resolution;
+    /** output at grid point (i, j) is at i * (resolution + 1) + j */
+    private final double[] surface;
+    private final double maxError;
+
+    /**
+     * Builds the table.
+     *
+     * @param fb         The function block to sample
+     * @param xVar       Name of the first input variable
+     * @param yVar       Name of the second input variable
+     * @param outVar     Name of the output variable
+     * @param resolution Number of grid cells per input
+     */
+    public FuzzyLookupTable(FunctionBlock fb, String xVar, String yVar,
+            String outVar, int resolution) {
+        if (resolution < 1) {
+            throw new IllegalArgumentException("Invalid resolution " + resolution);
+        }
+        this.resolution = resolution;
+        int n = resolution + 1;
+        this.surface = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                surface[i * n + j] = evaluate(fb, xVar, yVar, outVar,
+                        (double) i / resolution, (double) j / resolution);
+            }
+        }
+
+        double max = 0;
+        for (int i = 0; i < resolution; i++) {
+            for (int j = 0; j < resolution; j++) {
+                double x = (i + 0.5) / resolution;
+                double y = (j + 0.5) / resolution;
+                double exact = evaluate(fb, xVar, yVar, outVar, x, y);
+                max = Math.max(max, Math.abs(exact - getValue(x, y)));
+            }
+        }
+        this.maxError = max;
+    }
+
+    /**
+     * Checks whether a point is inside the table. Points outside it (and
+     * NaN values) must be evaluated with the exact function block.
+     *
+     * @param x Value of the first input
+     * @param y Value of the second input
+     * @return true if {@link #getValue(double, double)} can be used
+     */
+    public boolean covers(double x, double y) {
+        return x >= 0 && x <= 1 && y >= 0 && y <= 1;
+    }
+
+    /**
+     * Returns the interpolated output for a point inside the table.
+     *
+     * @param x Value of the first input
+     * @param y Value of the second input
+     * @return The interpolated output
+     */
+    public double getValue(double x, double y) {
+        double fx = x * resolution;
+        double fy = y * resolution;
+        int i = Math.min((int) fx, resolution - 1);
+        int j = Math.min((int) fy, resolution - 1);
+        double tx = fx - i;
+        double ty = fy - j;
+
+        int n = resolution + 1;
+        int k = i * n + j;
+        double top = surface[k] + (surface[k + 1] - surface[k]) * ty;
+        double bottom = surface[k + n] + (surface[k + n + 1] - surface[k + n]) * ty;
+        return top + (bottom - top) * tx;
+    }
+
+    /**
+     * Returns the largest difference between the table and the exact
+     * function block found at the grid cell centres.
+     *
+     * @return The maximum interpolation error
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the number of grid cells per input.
+     *
+     * @return The resolution
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    private static double evaluate(FunctionBlock fb, String xVar, String yVar,
+            String outVar, double x, double y) {
+        fb.setVariable(xVar, x);
+        fb.setVariable(yVar, y);
+        fb.evaluate();
+        return fb.getVariable(outVar).getValue();
+    }
+}
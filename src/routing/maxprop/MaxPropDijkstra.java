@@ -1,39 +1,72 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * <P>
+ * The meeting probability sets are compiled to an array based graph indexed
+ * by the host addresses and full shortest path trees are kept for the
+ * latest {@value #MAX_TREES} source nodes. When {@link #update()} finds
+ * that some probability sets have changed, only the trees' subtrees below
+ * the nodes whose sets changed are repaired (the next time the tree is
+ * used) instead of running the whole search again.
+ * </P>
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Maximum number of shortest path trees kept ({@value}) */
+	public static final int MAX_TREES = 16;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+
+	/** the probability sets the graph's edges were compiled from */
+	private MeetingProbabilitySet[] compiledSets;
+	/** versions of the compiled probability sets */
+	private int[] compiledVersions;
+	/** number of nodes with a compiled probability set */
+	private int nrofCompiled;
+	/** out-edges of each node: target nodes and costs */
+	private int[][] outTargets;
+	private double[][] outCosts;
+	private int[] nrofOut;
+	/** in-edges of each node: source nodes and costs */
+	private int[][] inSources;
+	private double[][] inCosts;
+	private int[] nrofIn;
+	/** number of node slots in the arrays */
+	private int capacity;
+
+	/** the shortest path trees (null slots are free) */
+	private Tree[] trees;
+	/** counter for the trees' last use times */
+	private long useCounter;
+
+	/** binary heap of node ids, ordered by the distances of the heap tree */
+	private int[] heap;
+	/** position of each node in the heap or -1 if not in the heap */
+	private int[] heapPos;
+	private int heapSize;
+	/** distances of the tree whose search uses the heap */
+	private double[] heapDist;
+
+	/** nodes whose probability sets changed in the latest update */
+	private boolean[] changed;
+	/** marks of the repair: search number and result for each node */
+	private int[] markStamp;
+	private boolean[] marked;
+	private int markNumber;
+	private int[] work;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,184 +74,507 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.trees = new Tree[MAX_TREES];
+		ensureCapacity(0);
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
-	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
-	}
-	
-	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes. The probability sets are
+	 * checked for changes first (see {@link #update()}).
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-		
-		initWith(from);
-		Integer node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+
+		update();
+		for (Integer node : to) {
+			double cost = getCost(from, node);
+			if (cost != INFINITY) {
+				distMap.put(node, cost);
+			}
 		}
-			
+
 		return distMap;
 	}
-	
+
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Returns the total cost from a node to another node (see
+	 * {@link #getCosts(Integer, Set)}) based on the probability sets as they
+	 * were at the latest {@link #update()}.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost of the cheapest path or Double.MAX_VALUE if there is
+	 * no known path
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
-			}
-		}
-	}
-	
+	public double getCost(int from, int to) {
+		if (from < 0 || to < 0 || from >= capacity || to >= capacity) {
+			return from == to ? 0 : INFINITY;
+		}
+		return getTree(from).dist[to];
+	}
+
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Checks the probability sets for changes and schedules the repair of
+	 * the shortest path trees for the nodes whose sets have been replaced,
+	 * updated, added or removed.
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	public void update() {
+		int maxNode = -1;
+		for (Integer node : probs.keySet()) {
+			maxNode = Math.max(maxNode, node);
+		}
+		ensureCapacity(maxNode + 1);
+
+		int nrofOld = nrofCompiled;
+		int seen = 0;
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			int node = e.getKey();
+			MeetingProbabilitySet mps = e.getValue();
+			if (compiledSets[node] != null) {
+				seen++;
+			}
+			if (mps != compiledSets[node] ||
+					mps.getVersion() != compiledVersions[node]) {
+				compile(node, mps);
+				setChanged(node);
+			}
+		}
+
+		if (seen < nrofOld) { // some sets have been removed
+			for (int node = 0; node < capacity; node++) {
+				if (compiledSets[node] != null && !probs.containsKey(node)) {
+					compile(node, null);
+					setChanged(node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the out-edges of a node with the ones of a probability set.
+	 * @param node The node
+	 * @param mps The node's probability set or null if it has none
+	 */
+	private void compile(int node, MeetingProbabilitySet mps) {
+		for (int i = 0; i < nrofOut[node]; i++) {
+			removeInEdge(outTargets[node][i], node);
+		}
+		nrofOut[node] = 0;
+
+		if (compiledSets[node] != null) {
+			nrofCompiled--;
+		}
+		compiledSets[node] = mps;
+		if (mps == null) {
+			return;
+		}
+		nrofCompiled++;
+		compiledVersions[node] = mps.getVersion();
+
+		Map<Integer, Double> sets = mps.getAllProbs();
+		int maxTarget = -1;
+		for (Integer target : sets.keySet()) {
+			maxTarget = Math.max(maxTarget, target);
+		}
+		ensureCapacity(maxTarget + 1);
+		if (outTargets[node].length < sets.size()) {
+			outTargets[node] = new int[sets.size()];
+			outCosts[node] = new double[sets.size()];
+		}
+		for (Map.Entry<Integer, Double> e : sets.entrySet()) {
+			int target = e.getKey();
+			double cost = 1 - e.getValue();
+			outTargets[node][nrofOut[node]] = target;
+			outCosts[node][nrofOut[node]++] = cost;
+			addInEdge(target, node, cost);
+		}
+	}
+
+	private void addInEdge(int node, int source, double cost) {
+		int n = nrofIn[node];
+		if (inSources[node].length == n) {
+			inSources[node] = Arrays.copyOf(inSources[node], 2 * n + 2);
+			inCosts[node] = Arrays.copyOf(inCosts[node], 2 * n + 2);
+		}
+		inSources[node][n] = source;
+		inCosts[node][n] = cost;
+		nrofIn[node]++;
+	}
+
+	private void removeInEdge(int node, int source) {
+		int last = --nrofIn[node];
+		for (int i = 0; i <= last; i++) {
+			if (inSources[node][i] == source) {
+				inSources[node][i] = inSources[node][last];
+				inCosts[node][i] = inCosts[node][last];
+				return;
+			}
+		}
+		assert false : "No edge from " + source + " to " + node;
 	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Marks the out-edges of a node changed for all the trees.
+	 * @param node The node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void setChanged(int node) {
+		for (Tree t : trees) {
+			if (t != null) {
+				t.addPending(node);
+			}
+		}
 	}
-	
+
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Returns an up to date shortest path tree for a source node, computing
+	 * or repairing it if needed.
+	 * @param source The source node
+	 * @return The tree
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+	private Tree getTree(int source) {
+		Tree tree = null;
+		int free = -1;
+		for (int i = 0; i < trees.length; i++) {
+			if (trees[i] == null) {
+				free = i;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			else if (trees[i].source == source) {
+				tree = trees[i];
+				break;
 			}
-			else {
-				return node1.compareTo(node2);
+			else if (free < 0 || (trees[free] != null &&
+					trees[i].lastUse < trees[free].lastUse)) {
+				free = i; // least recently used so far
 			}
 		}
+
+		if (tree == null) { // evict the least recently used tree
+			tree = new Tree(source);
+			trees[free] = tree;
+			compute(tree);
+		}
+		else if (tree.nrofPending > capacity / 4) {
+			tree.clearPending();
+			compute(tree);
+		}
+		else if (tree.nrofPending > 0) {
+			repair(tree);
+		}
+		tree.lastUse = ++useCounter;
+		return tree;
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Computes a whole shortest path tree.
+	 * @param t The tree
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
+	private void compute(Tree t) {
+		t.ensureCapacity(capacity);
+		Arrays.fill(t.dist, INFINITY);
+		Arrays.fill(t.parent, -1);
+		t.dist[t.source] = 0;
+
+		startSearch(t);
+		push(t.source);
+		search(t);
+	}
+
+	/**
+	 * Repairs a shortest path tree after the out-edges of the tree's pending
+	 * nodes have changed. The nodes below the changed nodes in the tree are
+	 * detached and get their distances back through their in-edges from the
+	 * rest of the tree, and the changed nodes' new out-edges are relaxed.
+	 * @param t The tree
+	 */
+	private void repair(Tree t) {
+		t.ensureCapacity(capacity);
+		for (int i = 0; i < t.nrofPending; i++) {
+			changed[t.pending[i]] = true;
 		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+
+		/* find the nodes whose tree path goes through a changed node (all
+		 * the nodes get marked) */
+		markNumber++;
+		int nrofDetached = 0;
+		for (int v = 0; v < capacity; v++) {
+			if (isDetached(t, v)) {
+				work[nrofDetached++] = v;
+			}
+		}
+		for (int i = 0; i < nrofDetached; i++) {
+			t.dist[work[i]] = INFINITY;
+			t.parent[work[i]] = -1;
+		}
+
+		startSearch(t);
+		for (int i = 0; i < nrofDetached; i++) {
+			int v = work[i];
+			for (int j = 0; j < nrofIn[v]; j++) {
+				int w = inSources[v][j];
+				double d = t.dist[w] + inCosts[v][j];
+				if (t.dist[w] != INFINITY && !marked[w] && d < t.dist[v]) {
+					t.dist[v] = d;
+					t.parent[v] = w;
+				}
 			}
-			else {
-				return INFINITY;
+			if (t.dist[v] != INFINITY) {
+				push(v);
 			}
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		for (int i = 0; i < t.nrofPending; i++) {
+			int c = t.pending[i];
+			changed[c] = false;
+			if (t.dist[c] != INFINITY && heapPos[c] < 0) {
+				push(c); // relax the new out-edges
+			}
+		}
+		t.clearPending();
+		search(t);
+	}
+
+	/**
+	 * Returns true if the tree path to a node goes through a changed node
+	 * (the node is in a subtree of a changed node). The results are
+	 * memorized for the current mark number.
+	 * @param t The tree
+	 * @param v The node
+	 * @return true if the node is in a subtree of a changed node
+	 */
+	private boolean isDetached(Tree t, int v) {
+		int depth = 0;
+		int x = v;
+		boolean result;
+		while (true) {
+			if (markStamp[x] == markNumber) {
+				result = marked[x];
+				break;
+			}
+			int p = t.parent[x];
+			if (p < 0) {
+				result = false; // source or not reached
+				break;
+			}
+			if (changed[p]) {
+				result = true;
+				break;
+			}
+			heap[depth++] = x; // the heap is free for use as a stack here
+			x = p;
+		}
+		markStamp[x] = markNumber;
+		marked[x] = result;
+		while (depth > 0) {
+			int y = heap[--depth];
+			markStamp[y] = markNumber;
+			marked[y] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the search until the heap is empty
+	 * @param t The tree whose distances are searched
+	 */
+	private void search(Tree t) {
+		while (heapSize > 0) {
+			int node = pop();
+			double nodeDist = t.dist[node];
+			for (int i = 0; i < nrofOut[node]; i++) {
+				int n = outTargets[node][i];
+				double nDist = nodeDist + outCosts[node][i];
+				if (t.dist[n] > nDist) {
+					// stored distance > found dist -> update
+					t.dist[n] = nDist;
+					t.parent[n] = node;
+					if (heapPos[n] < 0) {
+						push(n);
+					}
+					else {
+						siftUp(heapPos[n]);
+					}
+				}
+			}
+		}
+	}
+
+	private void startSearch(Tree t) {
+		heapSize = 0;
+		heapDist = t.dist;
+	}
+
+	/**
+	 * Returns true if node a comes before node b in the heap (by distance
+	 * and then by index)
+	 */
+	private boolean before(int a, int b) {
+		return heapDist[a] < heapDist[b] ||
+			(heapDist[a] == heapDist[b] && a < b);
+	}
+
+	private void push(int node) {
+		heap[heapSize] = node;
+		heapPos[node] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private int pop() {
+		int top = heap[0];
+		heapPos[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPos[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(node, heap[parent])) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapPos[heap[i]] = i;
+			i = parent;
 		}
-		
+		heap[i] = node;
+		heapPos[node] = i;
+	}
+
+	private void siftDown(int i) {
+		int node = heap[i];
+		int half = heapSize >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], node)) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapPos[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = node;
+		heapPos[node] = i;
+	}
+
+	/**
+	 * Makes sure that the arrays have room for the given number of nodes.
+	 * New nodes are added as changed to the trees.
+	 * @param size The number of nodes
+	 */
+	private void ensureCapacity(int size) {
+		if (size <= capacity && compiledSets != null) {
+			return;
+		}
+		int old = capacity;
+		int n = Math.max(size, Math.max(2 * capacity, 16));
+
+		compiledSets = Arrays.copyOf(
+				compiledSets != null ? compiledSets :
+					new MeetingProbabilitySet[0], n);
+		compiledVersions = grow(compiledVersions, n);
+		nrofOut = grow(nrofOut, n);
+		nrofIn = grow(nrofIn, n);
+		outTargets = grow(outTargets, n);
+		outCosts = grow(outCosts, n);
+		inSources = grow(inSources, n);
+		inCosts = grow(inCosts, n);
+		for (int i = old; i < n; i++) {
+			outTargets[i] = new int[0];
+			outCosts[i] = new double[0];
+			inSources[i] = new int[0];
+			inCosts[i] = new double[0];
+		}
+
+		heap = new int[n];
+		heapPos = new int[n];
+		Arrays.fill(heapPos, -1);
+		changed = new boolean[n];
+		markStamp = new int[n];
+		marked = new boolean[n];
+		markNumber = 0;
+		work = new int[n];
+		capacity = n;
+	}
+
+	private static int[] grow(int[] a, int n) {
+		return a == null ? new int[n] : Arrays.copyOf(a, n);
+	}
+
+	private static int[][] grow(int[][] a, int n) {
+		return a == null ? new int[n][] : Arrays.copyOf(a, n);
+	}
+
+	private static double[][] grow(double[][] a, int n) {
+		return a == null ? new double[n][] : Arrays.copyOf(a, n);
+	}
+
+	/**
+	 * Shortest path tree from one source node
+	 */
+	private static class Tree {
+		private final int source;
+		private double[] dist;
+		private int[] parent;
+		/** nodes whose out-edges have changed since the last repair */
+		private int[] pending;
+		private boolean[] isPending;
+		private int nrofPending;
+		private long lastUse;
+
+		public Tree(int source) {
+			this.source = source;
+			this.dist = new double[0];
+			this.parent = new int[0];
+			this.pending = new int[0];
+			this.isPending = new boolean[0];
+		}
+
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Makes sure that the tree has room for the given number of nodes.
+		 * The new nodes are not reached.
 		 */
-		public String toString() {
-			return map.toString();
+		public void ensureCapacity(int n) {
+			int old = dist.length;
+			if (n <= old) {
+				return;
+			}
+			dist = Arrays.copyOf(dist, n);
+			parent = Arrays.copyOf(parent, n);
+			Arrays.fill(dist, old, n, INFINITY);
+			Arrays.fill(parent, old, n, -1);
+			if (source >= old && source < n) {
+				dist[source] = 0;
+			}
+		}
+
+		public void addPending(int node) {
+			if (node >= isPending.length) {
+				int n = Math.max(node + 1, 2 * isPending.length);
+				isPending = Arrays.copyOf(isPending, n);
+				pending = Arrays.copyOf(pending, n);
+			}
+			if (!isPending[node]) {
+				isPending[node] = true;
+				pending[nrofPending++] = node;
+			}
+		}
+
+		public void clearPending() {
+			for (int i = 0; i < nrofPending; i++) {
+				isPending[pending[i]] = false;
+			}
+			nrofPending = 0;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -23,6 +23,8 @@ public class MeetingProbabilitySet {
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
+	/** number of changes made to the probabilities */
+	private int version;
 	
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -77,6 +79,7 @@ public class MeetingProbabilitySet {
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
+		this.version++;
 		
 		if (probs.size() == 0) { // first entry
 			probs.put(index, 1.0);
@@ -105,6 +108,7 @@ public class MeetingProbabilitySet {
 	
 	public void updateMeetingProbFor(Integer index, double iet)	{
 		probs.put(index, iet);
+		this.version++;
 	}
 	
 	/**
@@ -138,6 +142,15 @@ public class MeetingProbabilitySet {
 		return this.lastUpdateTime;
 	}
 	
+	/**
+	 * Returns the number of times the probabilities of this set have been
+	 * updated. Can be used for detecting changes to the set.
+	 * @return the number of updates
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+	
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
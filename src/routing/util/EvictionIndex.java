@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Index of the messages of a buffer in the order an {@link EvictionPolicy}
+ * drops them. Adding and removing a message takes logarithmic time and
+ * finding the next message to drop only looks at the entries that the
+ * filter skips before it.
+ * <P>
+ * Every entry carries a sequence number that grows with each addition, so
+ * of several messages with equal keys the one that was added to the index
+ * first is dropped first.
+ * </P>
+ */
+public class EvictionIndex {
+    /** filter of messages that must not be dropped */
+    public interface MessageFilter {
+        /**
+         * Returns true if the message must be skipped
+         *
+         * @param m The message
+         * @return true if the message can't be dropped now
+         */
+        public boolean skip(Message m);
+    }
+
+    private final EvictionPolicy policy;
+    private final TreeSet<Entry> entries;
+    private final Map<String, Entry> entryOf;
+    private long nextSeq;
+
+    /**
+     * Creates an index of the given messages
+     *
+     * @param policy   The policy that gives the keys
+     * @param messages The messages in the buffer
+     */
+    public EvictionIndex(EvictionPolicy policy, Collection<Message> messages) {
+        this.policy = policy;
+        this.entries = new TreeSet<Entry>(new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                int c = Double.compare(e1.primary, e2.primary);
+                if (c == 0) {
+                    c = Double.compare(e1.secondary, e2.secondary);
+                }
+                if (c == 0) {
+                    c = e1.seq < e2.seq ? -1 : (e1.seq > e2.seq ? 1 : 0);
+                }
+                return c;
+            }
+        });
+        this.entryOf = new HashMap<String, Entry>();
+        for (Message m : messages) {
+            add(m);
+        }
+    }
+
+    /**
+     * Adds a message to the index (replacing a message with the same ID)
+     *
+     * @param m The message
+     */
+    public void add(Message m) {
+        Entry e = new Entry(m, policy.getPrimaryKey(m),
+                policy.getSecondaryKey(m), nextSeq++);
+        Entry old = entryOf.put(m.getId(), e);
+        if (old != null) {
+            entries.remove(old);
+        }
+        entries.add(e);
+    }
+
+    /**
+     * Removes a message from the index
+     *
+     * @param id ID of the message
+     */
+    public void remove(String id) {
+        Entry e = entryOf.remove(id);
+        if (e != null) {
+            entries.remove(e);
+        }
+    }
+
+    /**
+     * Returns the message to drop next
+     *
+     * @param filter Filter of messages to skip or null to skip none
+     * @return The message or null if all messages were skipped
+     */
+    public Message next(MessageFilter filter) {
+        for (Entry e : entries) {
+            if (filter == null || !filter.skip(e.message)) {
+                return e.message;
+            }
+        }
+        return null;
+    }
+
+    private static class Entry {
+        private final Message message;
+        private final double primary;
+        private final double secondary;
+        private final long seq;
+
+        private Entry(Message message, double primary, double secondary,
+                      long seq) {
+            this.message = message;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.seq = seq;
+        }
+    }
+}
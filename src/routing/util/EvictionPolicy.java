@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * Order in which messages are dropped from a full buffer. A policy gives
+ * every message a primary and a secondary key; the message with the
+ * smallest keys is dropped first. Ties are broken in the order the messages
+ * were added to the {@link EvictionIndex}. The keys are read when the
+ * message is added to the buffer.
+ *
+ * @see EvictionIndex
+ */
+public abstract class EvictionPolicy {
+    /**
+     * Eviction policy -setting id ({@value}). One of {@value #FIFO}
+     * (default, oldest received first), {@value #TTL} (soonest expiring
+     * first), {@value #LARGEST} (largest first) or {@value #TOPIC} (lowest
+     * topic priority first, see {@link #TOPIC_PRIORITIES_S}).
+     */
+    public static final String EVICTION_POLICY_S = "evictionPolicy";
+    /**
+     * Topic priorities -setting id ({@value}). Comma separated priorities of
+     * the publication topics 0, 1, ... for the {@value #TOPIC} policy.
+     * Topics that are not listed get priority 0. Messages that are not
+     * publications (keys, subscriptions) are dropped only after all
+     * publications.
+     */
+    public static final String TOPIC_PRIORITIES_S = "topicPriorities";
+
+    /** {@link #EVICTION_POLICY_S} value for oldest first ({@value}) */
+    public static final String FIFO = "fifo";
+    /** {@link #EVICTION_POLICY_S} value for soonest expiring first
+     * ({@value}) */
+    public static final String TTL = "ttl";
+    /** {@link #EVICTION_POLICY_S} value for largest first ({@value}) */
+    public static final String LARGEST = "largest";
+    /** {@link #EVICTION_POLICY_S} value for lowest topic priority first
+     * ({@value}) */
+    public static final String TOPIC = "topic";
+
+    /** the default policy: oldest (by receive time) first */
+    public static final EvictionPolicy OLDEST_FIRST = new EvictionPolicy() {
+        public double getPrimaryKey(Message m) {
+            return m.getReceiveTime();
+        }
+    };
+
+    /**
+     * Returns the primary key of a message
+     *
+     * @param m The message
+     * @return The key; messages with smaller keys are dropped first
+     */
+    public abstract double getPrimaryKey(Message m);
+
+    /**
+     * Returns the secondary key of a message, used between messages with
+     * equal primary keys. Defaults to the receive time.
+     *
+     * @param m The message
+     * @return The key; messages with smaller keys are dropped first
+     */
+    public double getSecondaryKey(Message m) {
+        return m.getReceiveTime();
+    }
+
+    /**
+     * Returns the eviction policy the settings define
+     *
+     * @param s The settings to read {@link #EVICTION_POLICY_S} and
+     *          {@link #TOPIC_PRIORITIES_S} from
+     * @return The policy ({@link #OLDEST_FIRST} if none is defined)
+     * @throws SettingsError if the policy is unknown
+     */
+    public static EvictionPolicy getPolicy(Settings s) {
+        if (!s.contains(EVICTION_POLICY_S)) {
+            return OLDEST_FIRST;
+        }
+
+        String name = s.getSetting(EVICTION_POLICY_S);
+        if (name.equals(FIFO)) {
+            return OLDEST_FIRST;
+        } else if (name.equals(TTL)) {
+            return new EvictionPolicy() {
+                public double getPrimaryKey(Message m) {
+                    return ExpiryQueue.getExpiryTime(m);
+                }
+            };
+        } else if (name.equals(LARGEST)) {
+            return new EvictionPolicy() {
+                public double getPrimaryKey(Message m) {
+                    return -m.getSize();
+                }
+            };
+        } else if (name.equals(TOPIC)) {
+            final int[] priorities = s.contains(TOPIC_PRIORITIES_S) ?
+                    s.getCsvInts(TOPIC_PRIORITIES_S) : new int[0];
+            return new EvictionPolicy() {
+                public double getPrimaryKey(Message m) {
+                    if (!m.isPublication()) {
+                        return Double.MAX_VALUE;
+                    }
+                    int topic = m.getTopic();
+                    return topic >= 0 && topic < priorities.length ?
+                            priorities[topic] : 0;
+                }
+            };
+        }
+
+        throw new SettingsError("Unknown eviction policy '" + name +
+                "' for setting " + s.getFullPropertyName(EVICTION_POLICY_S));
+    }
+}
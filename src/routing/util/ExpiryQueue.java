@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.Message;
+
+/**
+ * Min-heap of messages keyed by the absolute time their TTL runs out
+ * (creation time + initial TTL). Messages with an infinite TTL are not
+ * added. Removing a message from the buffer does not remove it from the
+ * queue; the caller must check that an expired message is still buffered
+ * and may rebuild the queue with {@link #clear()} when too many removed
+ * messages have piled up.
+ */
+public class ExpiryQueue {
+    private double[] times;
+    private Message[] messages;
+    private int size;
+
+    /**
+     * Creates an empty queue.
+     */
+    public ExpiryQueue() {
+        this.times = new double[16];
+        this.messages = new Message[16];
+    }
+
+    /**
+     * Returns the time a message's TTL runs out
+     *
+     * @param m The message
+     * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+     */
+    public static double getExpiryTime(Message m) {
+        int ttl = m.getInitialTtl();
+        return ttl == Message.INFINITE_TTL ? Double.MAX_VALUE :
+                m.getCreationTime() + ttl * 60.0;
+    }
+
+    /**
+     * Adds a message to the queue (unless its TTL is infinite)
+     *
+     * @param m The message
+     */
+    public void add(Message m) {
+        double time = getExpiryTime(m);
+        if (time == Double.MAX_VALUE) {
+            return;
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            messages = Arrays.copyOf(messages, 2 * size);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (times[parent] <= time) {
+                break;
+            }
+            times[i] = times[parent];
+            messages[i] = messages[parent];
+            i = parent;
+        }
+        times[i] = time;
+        messages[i] = m;
+    }
+
+    /**
+     * Returns the earliest expiry time in the queue
+     *
+     * @return The time or Double.MAX_VALUE if the queue is empty
+     */
+    public double nextExpiryTime() {
+        return size == 0 ? Double.MAX_VALUE : times[0];
+    }
+
+    /**
+     * Removes and returns the message that expires first if it has expired
+     *
+     * @param now The current time
+     * @return The message or null if no message has expired by now
+     */
+    public Message pollExpired(double now) {
+        if (size == 0 || times[0] > now) {
+            return null;
+        }
+        Message first = messages[0];
+        size--;
+        double time = times[size];
+        Message m = messages[size];
+        messages[size] = null;
+
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && times[child + 1] < times[child]) {
+                child++;
+            }
+            if (time <= times[child]) {
+                break;
+            }
+            times[i] = times[child];
+            messages[i] = messages[child];
+            i = child;
+        }
+        if (size > 0) {
+            times[i] = time;
+            messages[i] = m;
+        }
+        return first;
+    }
+
+    /**
+     * Removes all messages from the queue
+     */
+    public void clear() {
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of messages in the queue (including ones that have
+     * been removed from the buffer)
+     *
+     * @return The size of the queue
+     */
+    public int size() {
+        return size;
+    }
+}